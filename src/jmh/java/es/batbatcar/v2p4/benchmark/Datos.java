@@ -0,0 +1,45 @@
+package es.batbatcar.v2p4.benchmark;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.ThreadLocalRandom;
+
+import es.batbatcar.v2p4.modelo.dto.Reserva;
+import es.batbatcar.v2p4.modelo.dto.viaje.Viaje;
+
+/**
+ * Datos sintéticos de los benchmarks. El viaje i tiene i % 3 reservas y su ruta recorre
+ * un conjunto fijo de ciudades, de modo que cada destino reúne 1/8 de los viajes.
+ */
+final class Datos {
+
+	static final int PRIMER_CODIGO = 100;
+	static final String CIUDAD_BUSCADA = "Val";
+
+	private static final String[] CIUDADES = {
+			"Alcoi", "Alicante", "Castellon", "Gandia", "Ibi", "Madrid", "Murcia", "Valencia" };
+	private static final LocalDateTime SALIDA = LocalDateTime.of(2100, 1, 1, 8, 0);
+
+	private Datos() {
+	}
+
+	static int codViaje(int i) {
+		return PRIMER_CODIGO + i;
+	}
+
+	static Viaje viaje(int i) {
+		String ruta = CIUDADES[i % CIUDADES.length] + "-" + CIUDADES[(i + 1 + (i / CIUDADES.length) % 7) % CIUDADES.length];
+		return new Viaje(codViaje(i), "Propietario " + (i % 1000), ruta, SALIDA.plusMinutes(i), 60, 10f, 6);
+	}
+
+	static int numReservas(int i) {
+		return i % 3;
+	}
+
+	static Reserva reserva(Viaje viaje, int numReserva) {
+		return new Reserva(viaje.getCodViaje(), numReserva, "Usuario " + numReserva, 1, viaje);
+	}
+
+	static int codViajeAleatorio(int filas) {
+		return codViaje(ThreadLocalRandom.current().nextInt(filas));
+	}
+}
@@ -0,0 +1,54 @@
+package es.batbatcar.v2p4.benchmark;
+
+import java.lang.reflect.Field;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.util.ReflectionUtils;
+
+import es.batbatcar.v2p4.modelo.dao.inmemorydao.InMemoryGeneradorCodViaje;
+import es.batbatcar.v2p4.modelo.dao.inmemorydao.InMemoryReservaDAO;
+import es.batbatcar.v2p4.modelo.dao.inmemorydao.InMemoryViajeDAO;
+import es.batbatcar.v2p4.modelo.dto.viaje.Viaje;
+import es.batbatcar.v2p4.modelo.repositories.ViajesRepository;
+import es.batbatcar.v2p4.modelo.services.VersionesDatos;
+
+/**
+ * DAO en memoria (y repositorio sobre ellos) cargados con @filas viajes
+ */
+@State(Scope.Benchmark)
+public class DatosEnMemoria {
+
+	@Param({ "1000", "100000", "1000000" })
+	public int filas;
+
+	InMemoryViajeDAO viajeDAO;
+	InMemoryReservaDAO reservaDAO;
+	ViajesRepository repository;
+
+	@Setup(Level.Trial)
+	public void cargar() throws Exception {
+		reservaDAO = new InMemoryReservaDAO();
+		viajeDAO = new InMemoryViajeDAO();
+		inyectar(viajeDAO, "reservaDAO", reservaDAO);
+
+		for (int i = 0; i < filas; i++) {
+			Viaje viaje = Datos.viaje(i);
+			viajeDAO.add(viaje);
+			for (int numReserva = 1; numReserva <= Datos.numReservas(i); numReserva++) {
+				reservaDAO.add(Datos.reserva(viaje, numReserva));
+			}
+		}
+
+		repository = new ViajesRepository(viajeDAO, reservaDAO, new InMemoryGeneradorCodViaje(viajeDAO), new VersionesDatos());
+	}
+
+	static void inyectar(Object destino, String campo, Object valor) {
+		Field field = ReflectionUtils.findField(destino.getClass(), campo);
+		ReflectionUtils.makeAccessible(field);
+		ReflectionUtils.setField(field, destino, valor);
+	}
+}
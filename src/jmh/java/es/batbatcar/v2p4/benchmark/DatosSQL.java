@@ -0,0 +1,133 @@
+package es.batbatcar.v2p4.benchmark;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.Clock;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import es.batbatcar.v2p4.modelo.dao.sqldao.SQLReservaDAO;
+import es.batbatcar.v2p4.modelo.dao.sqldao.SQLViajeDAO;
+import es.batbatcar.v2p4.modelo.dto.Reserva;
+import es.batbatcar.v2p4.modelo.dto.viaje.Viaje;
+import es.batbatcar.v2p4.modelo.services.MariaDBConnection;
+
+/**
+ * DAO SQL sobre una base de datos H2 en memoria (modo MySQL) cargada con @filas viajes.
+ * El esquema reproduce los índices de import.sql; la columna destino, que en MariaDB es
+ * generada, se rellena al insertar.
+ */
+@State(Scope.Benchmark)
+public class DatosSQL {
+
+	private static final int TAM_LOTE = 1000;
+
+	@Param({ "1000", "100000", "1000000" })
+	public int filas;
+
+	MariaDBConnection mariaDBConnection;
+	SQLViajeDAO viajeDAO;
+	SQLReservaDAO reservaDAO;
+
+	@Setup(Level.Trial)
+	public void cargar() throws SQLException {
+		String url = "jdbc:h2:mem:batbatcar" + filas + ";MODE=MySQL;DB_CLOSE_DELAY=-1";
+		mariaDBConnection = new MariaDBConnection(url, "sa", "", 1, 4, 5000, 2000, 300000, 1800000, 120000, true, 250);
+		viajeDAO = new SQLViajeDAO();
+		reservaDAO = new SQLReservaDAO();
+		DatosEnMemoria.inyectar(viajeDAO, "mariaDBConnection", mariaDBConnection);
+		DatosEnMemoria.inyectar(reservaDAO, "mariaDBConnection", mariaDBConnection);
+		DatosEnMemoria.inyectar(reservaDAO, "reloj", Clock.systemDefaultZone());
+
+		try (Connection connection = mariaDBConnection.getConnection()) {
+			crearEsquema(connection);
+			insertar(connection);
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void cerrar() throws SQLException {
+		try (Connection connection = mariaDBConnection.getConnection(); Statement statement = connection.createStatement()) {
+			statement.execute("DROP ALL OBJECTS");
+		}
+		mariaDBConnection.close();
+	}
+
+	private void crearEsquema(Connection connection) throws SQLException {
+		try (Statement statement = connection.createStatement()) {
+			statement.execute("DROP ALL OBJECTS");
+			statement.execute("CREATE TABLE viajes ("
+					+ " codViaje int NOT NULL PRIMARY KEY,"
+					+ " propietario varchar(100), ruta varchar(100), fechaSalida datetime, duracion int,"
+					+ " precio decimal(10,0), plazasOfertadas int, estadoViaje varchar(10),"
+					+ " ultimaReserva int NOT NULL DEFAULT 0, destino varchar(100))");
+			statement.execute("CREATE INDEX viajes_destino_IDX ON viajes (destino)");
+			statement.execute("CREATE INDEX viajes_estadoViaje_IDX ON viajes (estadoViaje)");
+			statement.execute("CREATE TABLE reservas ("
+					+ " codigoReserva varchar(10) NOT NULL PRIMARY KEY,"
+					+ " usuario varchar(100), plazasSolicitadas int, fechaRealizacion datetime, viaje int NOT NULL,"
+					+ " numReserva int AS CAST(SUBSTRING(codigoReserva, LOCATE('-', codigoReserva) + 1) AS INT))");
+			statement.execute("CREATE INDEX reservas_viaje_num_IDX ON reservas (viaje, numReserva)");
+			statement.execute("CREATE INDEX reservas_viaje_usuario_IDX ON reservas (viaje, usuario)");
+			statement.execute("CREATE INDEX reservas_usuario_IDX ON reservas (usuario)");
+		}
+	}
+
+	private void insertar(Connection connection) throws SQLException {
+		String sqlViaje = "INSERT INTO viajes"
+				+ " (codViaje, propietario, ruta, fechaSalida, duracion, precio, plazasOfertadas, estadoViaje, ultimaReserva, destino)"
+				+ " VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+		String sqlReserva = "INSERT INTO reservas"
+				+ " (codigoReserva, usuario, plazasSolicitadas, fechaRealizacion, viaje)"
+				+ " VALUES (?, ?, ?, ?, ?)";
+
+		connection.setAutoCommit(false);
+		try (
+				PreparedStatement viajes = connection.prepareStatement(sqlViaje);
+				PreparedStatement reservas = connection.prepareStatement(sqlReserva);
+			) {
+			for (int i = 0; i < filas; i++) {
+				Viaje viaje = Datos.viaje(i);
+				viajes.setInt(1, viaje.getCodViaje());
+				viajes.setString(2, viaje.getPropietario());
+				viajes.setString(3, viaje.getRuta());
+				viajes.setTimestamp(4, Timestamp.valueOf(viaje.getFechaSalida()));
+				viajes.setLong(5, viaje.getDuracion());
+				viajes.setFloat(6, viaje.getPrecio());
+				viajes.setInt(7, viaje.getPlazasOfertadas());
+				viajes.setString(8, viaje.getEstado().name());
+				viajes.setInt(9, Datos.numReservas(i));
+				viajes.setString(10, viaje.getDestino());
+				viajes.addBatch();
+
+				for (int numReserva = 1; numReserva <= Datos.numReservas(i); numReserva++) {
+					Reserva reserva = Datos.reserva(viaje, numReserva);
+					reservas.setString(1, reserva.getCodigoReserva());
+					reservas.setString(2, reserva.getUsuario());
+					reservas.setInt(3, reserva.getPlazasSolicitadas());
+					reservas.setTimestamp(4, Timestamp.valueOf(reserva.getFechaRealizacion()));
+					reservas.setInt(5, reserva.getCodigoViaje());
+					reservas.addBatch();
+				}
+
+				if ((i + 1) % TAM_LOTE == 0) {
+					viajes.executeBatch();
+					reservas.executeBatch();
+				}
+			}
+			viajes.executeBatch();
+			reservas.executeBatch();
+			connection.commit();
+		} finally {
+			connection.setAutoCommit(true);
+		}
+	}
+}
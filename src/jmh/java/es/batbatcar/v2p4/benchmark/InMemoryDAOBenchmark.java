@@ -0,0 +1,67 @@
+package es.batbatcar.v2p4.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import es.batbatcar.v2p4.exceptions.ReservaNoValidaException;
+import es.batbatcar.v2p4.exceptions.ReservaNotFoundException;
+import es.batbatcar.v2p4.modelo.dto.Reserva;
+import es.batbatcar.v2p4.modelo.dto.viaje.Viaje;
+
+/**
+ * Operaciones de InMemoryViajeDAO e InMemoryReservaDAO
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xms2g", "-Xmx4g" })
+public class InMemoryDAOBenchmark {
+
+	@Benchmark
+	public void findAll(DatosEnMemoria datos, Blackhole bh) {
+		bh.consume(datos.viajeDAO.findAll());
+	}
+
+	@Benchmark
+	public void findAllCity(DatosEnMemoria datos, Blackhole bh) {
+		bh.consume(datos.viajeDAO.findAll(Datos.CIUDAD_BUSCADA));
+	}
+
+	@Benchmark
+	public void findById(DatosEnMemoria datos, Blackhole bh) {
+		bh.consume(datos.viajeDAO.findById(Datos.codViajeAleatorio(datos.filas)));
+	}
+
+	@Benchmark
+	public void findAllByTravel(DatosEnMemoria datos, Blackhole bh) {
+		Viaje viaje = datos.viajeDAO.findById(Datos.codViajeAleatorio(datos.filas));
+		bh.consume(datos.reservaDAO.findAllByTravel(viaje));
+	}
+
+	@Benchmark
+	public void getNumPlazasReservadasEnViaje(DatosEnMemoria datos, Blackhole bh) {
+		Viaje viaje = datos.viajeDAO.findById(Datos.codViajeAleatorio(datos.filas));
+		bh.consume(datos.reservaDAO.getNumPlazasReservadasEnViaje(viaje));
+	}
+
+	/**
+	 * Asignación del código de reserva (antes getNextCodReserva) dentro de la reserva atómica.
+	 * Se cancela a continuación para que el viaje no se quede sin plazas
+	 */
+	@Benchmark
+	public void reservarYCancelar(DatosEnMemoria datos, Blackhole bh) throws ReservaNoValidaException, ReservaNotFoundException {
+		Viaje viaje = datos.viajeDAO.findById(Datos.codViajeAleatorio(datos.filas));
+		Reserva reserva = datos.reservaDAO.reservar(viaje, "Usuario Benchmark" + Thread.currentThread().getId(), 1);
+		datos.reservaDAO.remove(reserva);
+		bh.consume(reserva);
+	}
+}
@@ -0,0 +1,46 @@
+package es.batbatcar.v2p4.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import es.batbatcar.v2p4.modelo.dto.SliceRequest;
+
+/**
+ * Montaje del listado de /viajes a través de ViajesRepository: la página que pinta el
+ * controlador (con y sin filtro de destino) y el listado completo con sus reservas
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xms2g", "-Xmx4g" })
+public class ListadoBenchmark {
+
+	@Benchmark
+	public void primeraPagina(DatosEnMemoria datos, Blackhole bh) {
+		bh.consume(datos.repository.findResumenes(null, SliceRequest.first(SliceRequest.DEFAULT_SIZE)));
+	}
+
+	@Benchmark
+	public void primeraPaginaPorDestino(DatosEnMemoria datos, Blackhole bh) {
+		bh.consume(datos.repository.findResumenes(Datos.CIUDAD_BUSCADA, SliceRequest.first(SliceRequest.DEFAULT_SIZE)));
+	}
+
+	@Benchmark
+	public void listadoCompleto(DatosEnMemoria datos, Blackhole bh) {
+		bh.consume(datos.repository.findAllResumenes());
+	}
+
+	@Benchmark
+	public void getNextCodViaje(DatosEnMemoria datos, Blackhole bh) {
+		bh.consume(datos.repository.getNextCodViaje());
+	}
+}
@@ -0,0 +1,41 @@
+package es.batbatcar.v2p4.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Recorridos completos de las tablas, en los que domina el mapeo de filas a objetos. Para ver
+ * la memoria reservada por fila y la presión sobre el GC se lanza con el perfilador gc:
+ * mvn -Pjmh compile exec:exec -Djmh.args="MapeoFilasBenchmark -p filas=100000,1000000 -prof gc"
+ * (gc.alloc.rate.norm es lo reservado por llamada)
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xms2g", "-Xmx4g" })
+public class MapeoFilasBenchmark {
+
+	@Benchmark
+	public void findAllViajes(DatosSQL datos, Blackhole bh) {
+		bh.consume(datos.viajeDAO.findAll());
+	}
+
+	@Benchmark
+	public void findAllResumenes(DatosSQL datos, Blackhole bh) {
+		bh.consume(datos.viajeDAO.findAllResumenes());
+	}
+
+	@Benchmark
+	public void findAllReservas(DatosSQL datos, Blackhole bh) {
+		bh.consume(datos.reservaDAO.findAll());
+	}
+}
@@ -0,0 +1,51 @@
+package es.batbatcar.v2p4.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import es.batbatcar.v2p4.modelo.dto.viaje.Viaje;
+
+/**
+ * Consultas de SQLViajeDAO y SQLReservaDAO contra la base de datos embebida. Miden el coste
+ * de las sentencias preparadas, el pool y el mapeo de filas, no el de una red real
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xms2g", "-Xmx4g" })
+public class SQLDAOBenchmark {
+
+	@Benchmark
+	public void findAll(DatosSQL datos, Blackhole bh) {
+		bh.consume(datos.viajeDAO.findAll());
+	}
+
+	@Benchmark
+	public void findAllCity(DatosSQL datos, Blackhole bh) {
+		bh.consume(datos.viajeDAO.findAll(Datos.CIUDAD_BUSCADA));
+	}
+
+	@Benchmark
+	public void findById(DatosSQL datos, Blackhole bh) {
+		bh.consume(datos.viajeDAO.findById(Datos.codViajeAleatorio(datos.filas)));
+	}
+
+	@Benchmark
+	public void findAllByTravel(DatosSQL datos, Blackhole bh) {
+		bh.consume(datos.reservaDAO.findAllByTravel(new Viaje(Datos.codViajeAleatorio(datos.filas))));
+	}
+
+	@Benchmark
+	public void getNumPlazasReservadasEnViaje(DatosSQL datos, Blackhole bh) {
+		bh.consume(datos.reservaDAO.getNumPlazasReservadasEnViaje(new Viaje(Datos.codViajeAleatorio(datos.filas))));
+	}
+}
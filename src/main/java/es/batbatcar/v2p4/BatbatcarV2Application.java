@@ -3,8 +3,11 @@ package es.batbatcar.v2p4;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
 
+import java.time.Clock;
+
 @SpringBootApplication
 public class BatbatcarV2Application {
 
@@ -12,4 +15,12 @@ public class BatbatcarV2Application {
         SpringApplication.run(BatbatcarV2Application.class, args);
     }
 
+    /**
+     * Reloj con el que se decide cuándo ha salido un viaje (se sustituye por uno fijo en las pruebas)
+     */
+    @Bean
+    public Clock reloj() {
+        return Clock.systemDefaultZone();
+    }
+
 }
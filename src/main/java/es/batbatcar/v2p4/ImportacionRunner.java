@@ -0,0 +1,69 @@
+package es.batbatcar.v2p4;
+
+import es.batbatcar.v2p4.modelo.services.ImportacionService;
+import es.batbatcar.v2p4.modelo.services.InformeImportacion;
+import es.batbatcar.v2p4.utils.FormatoFilas;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ApplicationContext;
+import org.springframework.stereotype.Component;
+
+/**
+ * Importación desde la línea de comandos. Si se arranca con
+ * --importar.viajes=fichero y/o --importar.reservas=fichero (.csv o .json) se importan
+ * los ficheros (primero los viajes), se muestra el informe y la aplicación termina.
+ */
+@Component
+public class ImportacionRunner implements ApplicationRunner {
+
+	private static final String VIAJES = "importar.viajes";
+	private static final String RESERVAS = "importar.reservas";
+
+	@Autowired
+	private ImportacionService importacionService;
+
+	@Autowired
+	private ApplicationContext context;
+
+	@Override
+	public void run(ApplicationArguments args) throws IOException {
+		if (!args.containsOption(VIAJES) && !args.containsOption(RESERVAS)) {
+			return;
+		}
+
+		if (args.containsOption(VIAJES)) {
+			for (String fichero : args.getOptionValues(VIAJES)) {
+				Path path = Paths.get(fichero);
+				try (InputStream in = Files.newInputStream(path)) {
+					mostrar(importacionService.importarViajes(in, FormatoFilas.of(fichero)));
+				}
+			}
+		}
+		if (args.containsOption(RESERVAS)) {
+			for (String fichero : args.getOptionValues(RESERVAS)) {
+				Path path = Paths.get(fichero);
+				try (InputStream in = Files.newInputStream(path)) {
+					mostrar(importacionService.importarReservas(in, FormatoFilas.of(fichero)));
+				}
+			}
+		}
+
+		System.exit(SpringApplication.exit(context));
+	}
+
+	private void mostrar(InformeImportacion informe) {
+		System.out.println(informe);
+		for (InformeImportacion.Rechazo rechazo : informe.getRechazos()) {
+			System.out.println("  fila " + rechazo.getFila() + ": " + rechazo.getMotivo());
+		}
+	}
+}
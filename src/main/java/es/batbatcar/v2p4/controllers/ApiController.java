@@ -0,0 +1,246 @@
+package es.batbatcar.v2p4.controllers;
+
+import es.batbatcar.v2p4.exceptions.ReservaNoGuardadaException;
+import es.batbatcar.v2p4.exceptions.ReservaNoValidaException;
+import es.batbatcar.v2p4.exceptions.ReservaNotFoundException;
+import es.batbatcar.v2p4.exceptions.ViajeAlreadyExistsException;
+import es.batbatcar.v2p4.exceptions.ViajeNotCancelableException;
+import es.batbatcar.v2p4.exceptions.ViajeNotFoundException;
+import es.batbatcar.v2p4.modelo.dto.Reserva;
+import es.batbatcar.v2p4.modelo.dto.Slice;
+import es.batbatcar.v2p4.modelo.dto.SliceRequest;
+import es.batbatcar.v2p4.modelo.dto.viaje.Viaje;
+import es.batbatcar.v2p4.modelo.dto.viaje.ViajeResumen;
+import es.batbatcar.v2p4.modelo.repositories.ViajesRepository;
+
+import java.net.URI;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * API JSON de viajes y reservas. Hace lo mismo que las vistas, pero cada operación es una sola
+ * petición sin sesión ni redirecciones. El trabajo con la base de datos se hace en el
+ * {@link EjecutorApi} y el hilo de Tomcat queda libre mientras tanto.
+ */
+@RestController
+@RequestMapping("/api")
+public class ApiController {
+
+    @Autowired
+    private ViajesRepository viajesRepository;
+
+    @Autowired
+    private EjecutorApi ejecutorApi;
+
+    /**
+     * Endpoint que devuelve una página de viajes (filtrados por el parámetro "destino" si se indica)
+     * con su número de reservas y plazas disponibles
+     *
+     * */
+    @GetMapping("/viajes")
+    public CompletableFuture<Map<String, Object>> getViajesAction(@RequestParam Map<String, String> params) {
+    	String destino = params.getOrDefault("destino", "").trim();
+    	SliceRequest request = SliceRequest.of(params);
+    	return ejecutorApi.ejecutar(() -> {
+    		Slice<ViajeResumen> pagina = viajesRepository.findResumenes(destino.isEmpty() ? null : destino, request);
+    		List<Map<String, Object>> viajes = new ArrayList<>(pagina.getContenido().size());
+    		for (ViajeResumen resumen : pagina.getContenido()) {
+    			viajes.add(toJson(resumen.getViaje(), resumen.getNumReservas(), resumen.getPlazasDisponibles()));
+    		}
+    		Map<String, Object> json = new LinkedHashMap<>();
+    		json.put("viajes", viajes);
+    		json.put("size", pagina.getSize());
+    		json.put("anterior", pagina.getCursorAnterior());
+    		json.put("siguiente", pagina.getCursorSiguiente());
+    		return json;
+    	});
+    }
+
+    /**
+     * Endpoint que devuelve un viaje con su número de reservas, sus plazas disponibles y si admite reservas
+     *
+     * */
+    @GetMapping("/viajes/{codViaje}")
+    public CompletableFuture<Map<String, Object>> getViajeAction(@PathVariable int codViaje) {
+    	return ejecutorApi.ejecutar(() -> {
+    		Viaje viaje = viajesRepository.findViajeById(codViaje);
+    		return toJson(viaje, viajesRepository.getNumReservasEnViaje(viaje), viajesRepository.getNumPlazasDisponiblesEnViaje(viaje));
+    	});
+    }
+
+    /**
+     * Endpoint que da de alta un viaje con los mismos campos que el formulario
+     *
+     * */
+    @PostMapping("/viajes")
+    public CompletableFuture<ResponseEntity<Object>> postViajeAction(@RequestBody Map<String, String> datos) {
+    	Map<String, String> errors = Formularios.validarViaje(datos);
+    	if (errors.size() > 0) {
+    		return CompletableFuture.completedFuture(ResponseEntity.badRequest().body(errors));
+    	}
+    	
+    	return ejecutorApi.ejecutar(() -> {
+    		LocalDateTime fechaSalida = LocalDateTime.of(LocalDate.parse(datos.get("diaSalida")), LocalTime.parse(datos.get("horaSalida")));
+    		Viaje viaje = new Viaje(viajesRepository.getNextCodViaje(), datos.get("propietario"), datos.get("ruta"), fechaSalida,
+    				Long.parseLong(datos.get("duracion")), Float.parseFloat(datos.get("precio")), Integer.parseInt(datos.get("plazasOfertadas")));
+    		viajesRepository.save(viaje);
+    		return ResponseEntity.created(URI.create("/api/viajes/" + viaje.getCodViaje()))
+    				.body(toJson(viaje, 0, viaje.getPlazasOfertadas()));
+    	});
+    }
+
+    /**
+     * Endpoint que cancela un viaje
+     *
+     * */
+    @PostMapping("/viajes/{codViaje}/cancelar")
+    public CompletableFuture<Map<String, Object>> postCancelViajeAction(@PathVariable int codViaje) {
+    	return ejecutorApi.ejecutar(() -> {
+    		viajesRepository.cancel(codViaje);
+    		Viaje viaje = viajesRepository.findViajeById(codViaje);
+    		return toJson(viaje, viajesRepository.getNumReservasEnViaje(viaje), viajesRepository.getNumPlazasDisponiblesEnViaje(viaje));
+    	});
+    }
+
+    /**
+     * Endpoint que devuelve las reservas de un viaje
+     *
+     * */
+    @GetMapping("/viajes/{codViaje}/reservas")
+    public CompletableFuture<List<Map<String, Object>>> getReservasAction(@PathVariable int codViaje) {
+    	return ejecutorApi.ejecutar(() -> {
+    		List<Reserva> reservas = viajesRepository.findReservasByViaje(viajesRepository.findViajeById(codViaje));
+    		List<Map<String, Object>> json = new ArrayList<>(reservas.size());
+    		for (Reserva reserva : reservas) {
+    			json.add(toJson(reserva));
+    		}
+    		return json;
+    	});
+    }
+
+    /**
+     * Endpoint que reserva plazas en un viaje ("usuario" y "plazasSolicitadas" en el cuerpo)
+     *
+     * */
+    @PostMapping("/viajes/{codViaje}/reservas")
+    public CompletableFuture<ResponseEntity<Object>> postReservaAction(@PathVariable int codViaje, @RequestBody Map<String, String> datos) {
+    	Map<String, String> errors = Formularios.validarReserva(datos);
+    	if (errors.size() > 0) {
+    		return CompletableFuture.completedFuture(ResponseEntity.badRequest().body(errors));
+    	}
+    	
+    	return ejecutorApi.ejecutar(() -> {
+    		Reserva reserva = viajesRepository.reservar(codViaje, datos.get("usuario"), Integer.parseInt(datos.get("plazasSolicitadas")));
+    		return ResponseEntity.created(URI.create("/api/reservas/" + reserva.getCodigoReserva())).body(toJson(reserva));
+    	});
+    }
+
+    /**
+     * Endpoint que devuelve una reserva
+     *
+     * */
+    @GetMapping("/reservas/{codReserva}")
+    public CompletableFuture<Map<String, Object>> getReservaAction(@PathVariable String codReserva) {
+    	return ejecutorApi.ejecutar(() -> toJson(viajesRepository.findReservaById(codReserva)));
+    }
+
+    /**
+     * Endpoint que cancela (borra) una reserva
+     *
+     * */
+    @DeleteMapping("/reservas/{codReserva}")
+    public CompletableFuture<ResponseEntity<Void>> deleteReservaAction(@PathVariable String codReserva) {
+    	return ejecutorApi.ejecutar(() -> {
+    		viajesRepository.remove(viajesRepository.findReservaById(codReserva));
+    		return ResponseEntity.noContent().build();
+    	});
+    }
+
+    @ExceptionHandler({ViajeNotFoundException.class, ReservaNotFoundException.class})
+    @ResponseStatus(HttpStatus.NOT_FOUND)
+    public Map<String, String> handleNotFound(Exception e) {
+    	return Collections.singletonMap("error", e.getMessage());
+    }
+
+    @ExceptionHandler(ReservaNoValidaException.class)
+    @ResponseStatus(HttpStatus.CONFLICT)
+    public Map<String, String> handleReservaNoValida(ReservaNoValidaException e) {
+    	return toJson(e);
+    }
+
+    /**
+     * La reserva no ha fallado por sus datos sino al guardarla: se puede reintentar
+     */
+    @ExceptionHandler(ReservaNoGuardadaException.class)
+    @ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+    public Map<String, String> handleReservaNoGuardada(ReservaNoGuardadaException e) {
+    	return toJson(e);
+    }
+
+    @ExceptionHandler({ViajeNotCancelableException.class, ViajeAlreadyExistsException.class})
+    @ResponseStatus(HttpStatus.CONFLICT)
+    public Map<String, String> handleConflicto(Exception e) {
+    	return Collections.singletonMap("error", e.getMessage());
+    }
+
+    @ExceptionHandler(RejectedExecutionException.class)
+    @ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+    public Map<String, String> handleSaturado(RejectedExecutionException e) {
+    	return Collections.singletonMap("error", "Servidor saturado, inténtalo de nuevo más tarde");
+    }
+
+    private static Map<String, String> toJson(ReservaNoValidaException e) {
+    	Map<String, String> json = new LinkedHashMap<>();
+    	json.put("error", e.getMessage());
+    	json.put("motivo", e.getMotivo());
+    	return json;
+    }
+
+    private static Map<String, Object> toJson(Viaje viaje, int numReservas, int plazasDisponibles) {
+    	Map<String, Object> json = new LinkedHashMap<>();
+    	json.put("codViaje", viaje.getCodViaje());
+    	json.put("ruta", viaje.getRuta());
+    	json.put("propietario", viaje.getPropietario());
+    	json.put("fechaSalida", viaje.getFechaSalida().toString());
+    	json.put("duracion", viaje.getDuracion());
+    	json.put("precio", viaje.getPrecio());
+    	json.put("plazasOfertadas", viaje.getPlazasOfertadas());
+    	json.put("estado", viaje.getEstado().name());
+    	json.put("disponible", viaje.estaDisponible() && plazasDisponibles > 0);
+    	json.put("numReservas", numReservas);
+    	json.put("plazasDisponibles", plazasDisponibles);
+    	return json;
+    }
+
+    private static Map<String, Object> toJson(Reserva reserva) {
+    	Map<String, Object> json = new LinkedHashMap<>();
+    	json.put("codigoReserva", reserva.getCodigoReserva());
+    	json.put("codViaje", reserva.getCodigoViaje());
+    	json.put("usuario", reserva.getUsuario());
+    	json.put("plazasSolicitadas", reserva.getPlazasSolicitadas());
+    	json.put("fechaRealizacion", reserva.getFechaRealizacion().toString());
+    	return json;
+    }
+}
@@ -0,0 +1,42 @@
+package es.batbatcar.v2p4.controllers;
+
+import es.batbatcar.v2p4.modelo.repositories.ViajesRepository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+public class DestinosController {
+
+	private static final int MAX_SUGERENCIAS = 10;
+
+    @Autowired
+    private ViajesRepository viajesRepository;
+
+    /**
+     * Endpoint de autocompletado: devuelve en formato JSON las ciudades de destino que empiezan
+     * por el parámetro "prefijo" (sin distinguir mayúsculas ni acentos y teniendo en cuenta los alias)
+     *
+     * */
+    @GetMapping("/viajes/destinos")
+    public List<String> getDestinosAction(@RequestParam Map<String, String> params) {
+    	String prefijo = params.getOrDefault("prefijo", "").trim();
+    	if (prefijo.isEmpty()) {
+    		return new ArrayList<>();
+    	}
+    	
+    	int max = MAX_SUGERENCIAS;
+    	try {
+    		max = Math.min(Integer.parseInt(params.getOrDefault("max", String.valueOf(MAX_SUGERENCIAS))), MAX_SUGERENCIAS);
+    	} catch (NumberFormatException e) {
+    		// Se usa el máximo por defecto
+    	}
+    	return viajesRepository.findDestinos(prefijo, Math.max(max, 1));
+    }
+}
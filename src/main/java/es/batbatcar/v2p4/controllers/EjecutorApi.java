@@ -0,0 +1,144 @@
+package es.batbatcar.v2p4.controllers;
+
+import org.apache.coyote.ProtocolHandler;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PreDestroy;
+
+/**
+ * Ejecutor en el que la API JSON hace el trabajo bloqueante (JDBC).
+ *
+ * Si la JVM tiene hilos virtuales (Java 21 o posterior) se usa un hilo virtual por tarea; se
+ * obtienen por reflexión porque el proyecto compila para Java 11. Si no, se usa un pool de
+ * @hilos hilos con una cola de @cola tareas. En ambos casos se admiten como mucho @hilos + @cola
+ * tareas a la vez (con hilos virtuales lo controla un semáforo): las demás peticiones se rechazan
+ * (503) en lugar de acumularse. La concurrencia real contra la base de datos la limita el pool
+ * de conexiones.
+ *
+ * Con batbatcar.api.tomcat-hilos-virtuales=true Tomcat atiende además todas las peticiones en
+ * hilos virtuales; si la JVM no los tiene, la aplicación no arranca.
+ */
+@Configuration
+public class EjecutorApi {
+
+	private final ExecutorService ejecutor;
+	// Tareas admitidas en el ejecutor virtual, que no tiene cola que se llene; null con el pool
+	private final Semaphore admitidas;
+
+	@Autowired
+	public EjecutorApi(
+			@Value("${batbatcar.api.hilos-virtuales:true}") boolean hilosVirtuales,
+			@Value("${batbatcar.api.hilos:50}") int hilos,
+			@Value("${batbatcar.api.cola:1000}") int cola) {
+		this(hilosVirtuales ? crearEjecutorVirtual() : null, hilos, cola);
+	}
+
+	/**
+	 * @param virtuales ejecutor de un hilo por tarea, o null para usar el pool
+	 */
+	EjecutorApi(ExecutorService virtuales, int hilos, int cola) {
+		this.ejecutor = virtuales != null ? virtuales
+				: new ThreadPoolExecutor(hilos, hilos, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(cola),
+						hilosConNombre("api-"), new ThreadPoolExecutor.AbortPolicy());
+		this.admitidas = virtuales != null ? new Semaphore(hilos + cola) : null;
+	}
+
+	/**
+	 * Ejecuta @tarea en el ejecutor. Las excepciones de la tarea completan el resultado con una
+	 * CompletionException que Spring MVC desenvuelve antes de buscar su @ExceptionHandler
+	 * @param tarea
+	 * @return
+	 * @throws RejectedExecutionException si ya hay @hilos + @cola tareas admitidas
+	 */
+	public <T> CompletableFuture<T> ejecutar(Tarea<T> tarea) {
+		if (admitidas == null) {
+			return CompletableFuture.supplyAsync(() -> ejecutarTarea(tarea), ejecutor);
+		}
+		if (!admitidas.tryAcquire()) {
+			throw new RejectedExecutionException("Demasiadas tareas en curso");
+		}
+		try {
+			return CompletableFuture.supplyAsync(() -> {
+				try {
+					return ejecutarTarea(tarea);
+				} finally {
+					admitidas.release();
+				}
+			}, ejecutor);
+		} catch (RejectedExecutionException e) {
+			// El ejecutor está cerrado: la tarea no llega a ejecutarse
+			admitidas.release();
+			throw e;
+		}
+	}
+
+	private static <T> T ejecutarTarea(Tarea<T> tarea) {
+		try {
+			return tarea.ejecutar();
+		} catch (RuntimeException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new CompletionException(e);
+		}
+	}
+
+	@PreDestroy
+	public void cerrar() {
+		ejecutor.shutdown();
+	}
+
+	@FunctionalInterface
+	public interface Tarea<T> {
+		T ejecutar() throws Exception;
+	}
+
+	@Bean
+	@ConditionalOnProperty(name = "batbatcar.api.tomcat-hilos-virtuales", havingValue = "true")
+	public TomcatProtocolHandlerCustomizer<ProtocolHandler> tomcatHilosVirtuales() {
+		// Se han pedido expresamente: seguir con el pool de Tomcat ocultaría el error de configuración
+		ExecutorService virtuales = crearEjecutorVirtual();
+		if (virtuales == null) {
+			throw new IllegalStateException("batbatcar.api.tomcat-hilos-virtuales=true pero esta JVM no tiene hilos virtuales");
+		}
+		return protocolHandler -> protocolHandler.setExecutor(virtuales);
+	}
+
+	/**
+	 * Executors.newVirtualThreadPerTaskExecutor() si existe y está habilitado en esta JVM
+	 * @return el ejecutor o null
+	 */
+	static ExecutorService crearEjecutorVirtual() {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			// Antes de Java 19 no existe; en Java 19 y 20 es una preview que puede no estar habilitada
+			return null;
+		}
+	}
+
+	private static ThreadFactory hilosConNombre(String prefijo) {
+		AtomicInteger contador = new AtomicInteger();
+		return tarea -> {
+			Thread hilo = new Thread(tarea, prefijo + contador.incrementAndGet());
+			hilo.setDaemon(true);
+			return hilo;
+		};
+	}
+}
@@ -0,0 +1,66 @@
+package es.batbatcar.v2p4.controllers;
+
+import es.batbatcar.v2p4.modelo.dao.sqldao.SQLExportacionDAO;
+import es.batbatcar.v2p4.utils.EscritorFilas;
+import es.batbatcar.v2p4.utils.FormatoFilas;
+
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+@RestController
+public class ExportacionController {
+
+    private static final MediaType CSV = MediaType.parseMediaType("text/csv;charset=UTF-8");
+    private static final MediaType NDJSON = MediaType.parseMediaType("application/x-ndjson");
+
+    @Autowired
+    private SQLExportacionDAO exportacionDAO;
+
+    /**
+     * Endpoint que descarga todos los viajes en CSV o, con formato=ndjson, en NDJSON.
+     * Las filas se escriben en la respuesta a medida que se leen de la base de datos
+     *
+     * */
+    @GetMapping("/exportacion/viajes")
+    public ResponseEntity<StreamingResponseBody> getViajesAction(@RequestParam Map<String, String> params) {
+    	FormatoFilas formato = FormatoFilas.of(params.get("formato"));
+    	StreamingResponseBody cuerpo = out -> {
+    		try (EscritorFilas escritor = EscritorFilas.abrir(out, formato, SQLExportacionDAO.COLUMNAS_VIAJES)) {
+    			exportacionDAO.exportarViajes(escritor);
+    		}
+    	};
+    	return respuesta("viajes", formato, cuerpo);
+    }
+
+    /**
+     * Endpoint que descarga todas las reservas en CSV o, con formato=ndjson, en NDJSON.
+     * Las filas se escriben en la respuesta a medida que se leen de la base de datos
+     *
+     * */
+    @GetMapping("/exportacion/reservas")
+    public ResponseEntity<StreamingResponseBody> getReservasAction(@RequestParam Map<String, String> params) {
+    	FormatoFilas formato = FormatoFilas.of(params.get("formato"));
+    	StreamingResponseBody cuerpo = out -> {
+    		try (EscritorFilas escritor = EscritorFilas.abrir(out, formato, SQLExportacionDAO.COLUMNAS_RESERVAS)) {
+    			exportacionDAO.exportarReservas(escritor);
+    		}
+    	};
+    	return respuesta("reservas", formato, cuerpo);
+    }
+
+    private ResponseEntity<StreamingResponseBody> respuesta(String tabla, FormatoFilas formato, StreamingResponseBody cuerpo) {
+    	boolean json = formato == FormatoFilas.JSON;
+    	return ResponseEntity.ok()
+    			.contentType(json ? NDJSON : CSV)
+    			.header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + tabla + (json ? ".ndjson" : ".csv") + "\"")
+    			.body(cuerpo);
+    }
+}
@@ -0,0 +1,101 @@
+package es.batbatcar.v2p4.controllers;
+
+import es.batbatcar.v2p4.utils.Validator;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Validación de los datos de alta de viajes y reservas, común a los formularios y a la API JSON
+ */
+class Formularios {
+
+	private static final List<String> CAMPOS_VIAJE =
+			List.of("ruta", "plazasOfertadas", "propietario", "precio", "duracion", "diaSalida", "horaSalida");
+	private static final List<String> CAMPOS_RESERVA = List.of("usuario", "plazasSolicitadas");
+	// Longitud de la columna reservas.usuario: con la escritura diferida, un usuario más largo se
+	// confirmaría y la base de datos lo rechazaría después
+	static final int MAX_USUARIO = 100;
+
+	/**
+	 * Valida los datos de un viaje nuevo
+	 * @param params
+	 * @return los errores por campo (vacío si son válidos)
+	 */
+	static Map<String, String> validarViaje(Map<String, String> params) {
+		Map<String, String> errors = new HashMap<>();
+		if (!rellenados(params, CAMPOS_VIAJE, errors)) {
+			return errors;
+		}
+
+		try {
+			if (!Validator.isValidNumber(Integer.parseInt(params.get("plazasOfertadas")))) {
+				errors.put("plazas", "Las plazas ofertadas deben ser un valor entre 1 y 6");
+			}
+			if (!Validator.isValidNumber(Float.parseFloat(params.get("precio")))) {
+				errors.put("precio", "El precio debe ser un valor mayor a 0");
+			}
+			if (!Validator.isValidNumber(Long.parseLong(params.get("duracion")))) {
+				errors.put("duracion", "La duración debe ser un valor mayor a 0");
+			}
+		} catch (NumberFormatException e) {
+			errors.clear();
+			errors.put("error", "Los campos numéricos sólo puede contener números");
+			return errors;
+		}
+
+		if (!Validator.isValidText(params.get("ruta"), '-')) {
+			errors.put("ruta", "La ruta debe cumplir el formato Origen-Destino");
+		}
+		if (!Validator.isValidText(params.get("propietario"), ' ')) {
+			errors.put("propietario", "El propietario debe contener al menos dos cadenas separadas por espacio en blanco y comiencen por mayúsculas");
+		}
+		if (!Validator.isValidDate(params.get("diaSalida"))) {
+			errors.put("fecha", "La fecha indicada no es válida");
+		}
+		if (!Validator.isValidTime(params.get("horaSalida"))) {
+			errors.put("hora", "La hora indicada no es válida");
+		}
+		return errors;
+	}
+
+	/**
+	 * Valida los datos de una reserva nueva
+	 * @param params
+	 * @return los errores por campo (vacío si son válidos)
+	 */
+	static Map<String, String> validarReserva(Map<String, String> params) {
+		Map<String, String> errors = new HashMap<>();
+		if (!rellenados(params, CAMPOS_RESERVA, errors)) {
+			return errors;
+		}
+
+		try {
+			if (!Validator.isValidNumber(Integer.parseInt(params.get("plazasSolicitadas")))) {
+				errors.put("plazas", "Las plazas solicitadas deben ser un valor entre 1 y 6");
+			}
+		} catch (NumberFormatException e) {
+			errors.put("error", "Los campos numéricos sólo puede contener números");
+			return errors;
+		}
+
+		if (!Validator.isValidText(params.get("usuario"), ' ')) {
+			errors.put("usuario", "El propietario debe contener al menos dos cadenas separadas por espacio en blanco y comiencen por mayúsculas");
+		} else if (params.get("usuario").length() > MAX_USUARIO) {
+			errors.put("usuario", "El usuario no puede tener más de " + MAX_USUARIO + " caracteres");
+		}
+		return errors;
+	}
+
+	private static boolean rellenados(Map<String, String> params, List<String> campos, Map<String, String> errors) {
+		for (String campo : campos) {
+			String valor = params.get(campo);
+			if (valor == null || valor.isEmpty()) {
+				errors.put("error", "Todos los campos tienen que estar rellenados");
+				return false;
+			}
+		}
+		return true;
+	}
+}
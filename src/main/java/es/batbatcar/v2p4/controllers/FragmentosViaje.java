@@ -0,0 +1,172 @@
+package es.batbatcar.v2p4.controllers;
+
+import es.batbatcar.v2p4.modelo.dao.cachedao.EstadisticasCache;
+import es.batbatcar.v2p4.modelo.dto.Reserva;
+import es.batbatcar.v2p4.modelo.dto.viaje.DetalleViaje;
+import es.batbatcar.v2p4.modelo.dto.viaje.FilaViaje;
+import es.batbatcar.v2p4.modelo.dto.viaje.Viaje;
+import es.batbatcar.v2p4.modelo.dto.viaje.ViajeResumen;
+import es.batbatcar.v2p4.modelo.services.VersionesDatos;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.thymeleaf.ITemplateEngine;
+import org.thymeleaf.context.WebContext;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+/**
+ * Caché del HTML ya renderizado de las filas del listado de viajes y del detalle de cada viaje
+ * (plantilla viaje/fragmentos).
+ *
+ * La clave de cada fragmento lleva la versión del viaje (ver {@link VersionesDatos}) y si el viaje
+ * está disponible: cualquier cambio en el viaje o sus reservas hace que deje de encontrarse y las
+ * entradas antiguas acaban desalojadas. Un fragmento sólo se guarda si no ha habido escrituras
+ * desde que se empezaron a leer sus datos. Sólo en los fallos se construyen las vistas
+ * ({@link FilaViaje}, {@link DetalleViaje}) y se evalúa la plantilla.
+ *
+ * Nunca se guarda HTML de datos antiguos con la versión nueva: las cachés de los DAO no pueden
+ * devolver un viaje leído antes de una escritura que ya las ha invalidado, y las escrituras
+ * cambian la versión global antes que la del viaje, así que si la clave lleva la versión nueva
+ * la comprobación de la global falla.
+ */
+@Component
+public class FragmentosViaje {
+
+	private final ITemplateEngine templateEngine;
+	private final VersionesDatos versiones;
+	private final Cache<String, String> filas;
+	private final Cache<String, String> detalles;
+
+	public FragmentosViaje(
+			ITemplateEngine templateEngine,
+			VersionesDatos versiones,
+			@Value("${batbatcar.fragmentos.max-size:10000}") long maxSize) {
+		this.templateEngine = templateEngine;
+		this.versiones = versiones;
+		this.filas = crearCache(maxSize);
+		this.detalles = crearCache(maxSize);
+	}
+
+	private static Cache<String, String> crearCache(long maxSize) {
+		return Caffeine.newBuilder()
+				.maximumSize(maxSize)
+				.expireAfterAccess(Duration.ofHours(1))
+				.recordStats()
+				.build();
+	}
+
+	/**
+	 * Versión de los datos que hay que tomar antes de leerlos de los DAO
+	 * @return
+	 */
+	public long getVersion() {
+		return versiones.getVersionGlobal();
+	}
+
+	/**
+	 * Obtiene el HTML de la fila de cada viaje, de la caché o renderizándola
+	 * @param resumenes
+	 * @param version tomada con {@link #getVersion()} antes de obtener @resumenes
+	 * @param request
+	 * @param response
+	 * @return
+	 */
+	public List<String> getFilas(List<ViajeResumen> resumenes, long version, HttpServletRequest request, HttpServletResponse response) {
+		List<String> html = new ArrayList<>(resumenes.size());
+		for (ViajeResumen resumen : resumenes) {
+			String clave = clave(resumen.getViaje());
+			String fila = filas.getIfPresent(clave);
+			if (fila == null) {
+				fila = renderizar("fila", Map.of("viaje", new FilaViaje(resumen)), request, response);
+				guardar(filas, clave, fila, version);
+			}
+			html.add(fila);
+		}
+		return html;
+	}
+
+	/**
+	 * Obtiene el HTML del detalle de @viaje, de la caché o renderizándolo (sólo entonces se piden las reservas)
+	 * @param viaje
+	 * @param reservas
+	 * @param version tomada con {@link #getVersion()} antes de obtener @viaje
+	 * @param request
+	 * @param response
+	 * @return
+	 */
+	public String getDetalle(Viaje viaje, Supplier<List<Reserva>> reservas, long version,
+			HttpServletRequest request, HttpServletResponse response) {
+		String clave = clave(viaje);
+		String detalle = detalles.getIfPresent(clave);
+		if (detalle == null) {
+			detalle = renderizar("detalle", Map.of("viaje", new DetalleViaje(viaje, reservas.get())), request, response);
+			guardar(detalles, clave, detalle, version);
+		}
+		return detalle;
+	}
+
+	private String clave(Viaje viaje) {
+		return versiones.etiquetaViaje(viaje.getCodViaje()) + (viaje.estaDisponible() ? "A" : "C");
+	}
+
+	private void guardar(Cache<String, String> cache, String clave, String html, long version) {
+		// Si ha habido escrituras, los datos renderizados pueden ser anteriores a la versión de la clave.
+		// La clave se ha calculado antes: si lleva la versión nueva del viaje, la global ya ha cambiado
+		if (versiones.getVersionGlobal() == version) {
+			cache.put(clave, html);
+		}
+	}
+
+	private String renderizar(String fragmento, Map<String, Object> variables, HttpServletRequest request, HttpServletResponse response) {
+		// El HTML se comparte entre clientes: los enlaces no deben llevar el identificador de sesión
+		HttpServletResponse sinSesion = new HttpServletResponseWrapper(response) {
+			@Override
+			public String encodeURL(String url) {
+				return url;
+			}
+		};
+		// WebContext guarda las variables como atributos de la petición: se dejan en una copia local
+		HttpServletRequest aislada = new HttpServletRequestWrapper(request) {
+			private final Map<String, Object> atributos = new HashMap<>();
+
+			@Override
+			public Object getAttribute(String nombre) {
+				return atributos.containsKey(nombre) ? atributos.get(nombre) : super.getAttribute(nombre);
+			}
+
+			@Override
+			public void setAttribute(String nombre, Object valor) {
+				atributos.put(nombre, valor);
+			}
+
+			@Override
+			public void removeAttribute(String nombre) {
+				atributos.put(nombre, null);
+			}
+		};
+		WebContext context = new WebContext(aislada, sinSesion, request.getServletContext(), request.getLocale(), variables);
+		return templateEngine.process("viaje/fragmentos", Set.of(fragmento), context);
+	}
+
+	public List<EstadisticasCache> getEstadisticas() {
+		return Arrays.asList(
+				new EstadisticasCache("fragmentosFila", filas),
+				new EstadisticasCache("fragmentosDetalle", detalles));
+	}
+}
@@ -0,0 +1,57 @@
+package es.batbatcar.v2p4.controllers;
+
+import es.batbatcar.v2p4.modelo.services.ImportacionService;
+import es.batbatcar.v2p4.modelo.services.InformeImportacion;
+import es.batbatcar.v2p4.utils.FormatoFilas;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+public class ImportacionController {
+
+    @Autowired
+    private ImportacionService importacionService;
+
+    /**
+     * Endpoint que importa los viajes enviados en el cuerpo de la petición (CSV o JSON según
+     * el parámetro formato o, si no se indica, el Content-Type) y devuelve el informe
+     *
+     * */
+    @PostMapping("/importacion/viajes")
+    public InformeImportacion postViajesAction(@RequestParam Map<String, String> params, HttpServletRequest request) throws IOException {
+    	return importacionService.importarViajes(request.getInputStream(), getFormato(params, request));
+    }
+
+    /**
+     * Endpoint que importa las reservas enviadas en el cuerpo de la petición (CSV o JSON según
+     * el parámetro formato o, si no se indica, el Content-Type) y devuelve el informe
+     *
+     * */
+    @PostMapping("/importacion/reservas")
+    public InformeImportacion postReservasAction(@RequestParam Map<String, String> params, HttpServletRequest request) throws IOException {
+    	return importacionService.importarReservas(request.getInputStream(), getFormato(params, request));
+    }
+
+    @ExceptionHandler(IOException.class)
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
+    public Map<String, String> handleIOException(IOException e) {
+    	return Collections.singletonMap("error", e.getMessage());
+    }
+
+    private FormatoFilas getFormato(Map<String, String> params, HttpServletRequest request) {
+    	String formato = params.get("formato");
+    	return FormatoFilas.of(formato != null ? formato : request.getContentType());
+    }
+}
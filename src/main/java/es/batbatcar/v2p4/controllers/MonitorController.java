@@ -0,0 +1,52 @@
+package es.batbatcar.v2p4.controllers;
+
+import es.batbatcar.v2p4.modelo.dao.cachedao.CachedReservaDAO;
+import es.batbatcar.v2p4.modelo.dao.cachedao.CachedViajeDAO;
+import es.batbatcar.v2p4.modelo.dao.cachedao.EstadisticasCache;
+import es.batbatcar.v2p4.modelo.services.EstadisticasPool;
+import es.batbatcar.v2p4.modelo.services.MariaDBConnection;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+public class MonitorController {
+
+    @Autowired
+    private MariaDBConnection mariaDBConnection;
+    
+    @Autowired
+    private CachedViajeDAO cachedViajeDAO;
+    
+    @Autowired
+    private CachedReservaDAO cachedReservaDAO;
+    
+    @Autowired
+    private FragmentosViaje fragmentosViaje;
+
+    /**
+     * Endpoint que devuelve el estado del pool de conexiones en formato JSON
+     *
+     * */
+    @GetMapping("/monitor/pool")
+    public EstadisticasPool getPoolAction() {
+    	return mariaDBConnection.getEstadisticas();
+    }
+    
+    /**
+     * Endpoint que devuelve los aciertos, fallos y desalojos de las cachés de los DAO y de los fragmentos renderizados
+     *
+     * */
+    @GetMapping("/monitor/caches")
+    public List<EstadisticasCache> getCachesAction() {
+    	List<EstadisticasCache> estadisticas = new ArrayList<>();
+    	estadisticas.add(cachedViajeDAO.getEstadisticas());
+    	estadisticas.addAll(cachedReservaDAO.getEstadisticas());
+    	estadisticas.addAll(fragmentosViaje.getEstadisticas());
+    	return estadisticas;
+    }
+}
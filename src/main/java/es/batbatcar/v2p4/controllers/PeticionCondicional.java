@@ -0,0 +1,38 @@
+package es.batbatcar.v2p4.controllers;
+
+import es.batbatcar.v2p4.modelo.services.VersionesDatos;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.ui.Model;
+import org.springframework.web.context.request.ServletWebRequest;
+
+/**
+ * GET condicional con ETag para las páginas de consulta.
+ *
+ * Si la etiqueta que envía el cliente (If-None-Match) coincide con la versión actual de los datos
+ * se responde 304 sin consultar la base de datos ni renderizar la vista. Las etiquetas salen de
+ * {@link VersionesDatos}, así que se supone una única instancia de la aplicación.
+ */
+final class PeticionCondicional {
+
+	private PeticionCondicional() {
+	}
+
+	/**
+	 * Comprueba si el cliente ya tiene la versión @etiqueta de la página. Si la tiene, deja preparada
+	 * la respuesta 304 y el controlador debe devolver null
+	 * @param request
+	 * @param model
+	 * @param etiqueta
+	 * @return true si no hace falta generar la página
+	 */
+	static boolean noModificada(ServletWebRequest request, Model model, String etiqueta) {
+		// Una página con mensajes de la acción anterior (atributos flash) no se puede reutilizar
+		if (model.containsAttribute("infoMessage") || model.containsAttribute("errors")) {
+			return false;
+		}
+		// El navegador y el proxy pueden guardar la página pero deben revalidarla en cada uso
+		request.getResponse().setHeader(HttpHeaders.CACHE_CONTROL, "no-cache");
+		return request.checkNotModified(etiqueta);
+	}
+}
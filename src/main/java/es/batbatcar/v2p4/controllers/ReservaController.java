@@ -1,15 +1,17 @@
 package es.batbatcar.v2p4.controllers;
 
-import es.batbatcar.v2p4.exceptions.ReservaAlreadyExistsException;
 import es.batbatcar.v2p4.exceptions.ReservaNoValidaException;
 import es.batbatcar.v2p4.exceptions.ReservaNotFoundException;
 import es.batbatcar.v2p4.exceptions.ViajeNotFoundException;
 import es.batbatcar.v2p4.modelo.dto.Reserva;
+import es.batbatcar.v2p4.modelo.dto.Slice;
+import es.batbatcar.v2p4.modelo.dto.SliceRequest;
 import es.batbatcar.v2p4.modelo.dto.viaje.Viaje;
 import es.batbatcar.v2p4.modelo.repositories.ViajesRepository;
-import es.batbatcar.v2p4.utils.Validator;
+import es.batbatcar.v2p4.utils.IndiceTexto;
+import es.batbatcar.v2p4.utils.Textos;
 
-import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.springframework.beans.factory.annotation.Autowired;
@@ -18,11 +20,16 @@ import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.context.request.ServletWebRequest;
 import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 
 @Controller
 public class ReservaController {
 
+	private static final int MAX_RESULTADOS_BUSQUEDA = 100;
+	// Un texto más corto no tiene trigramas y obligaría a recorrer todas las reservas
+	private static final int MIN_CARACTERES_BUSQUEDA = IndiceTexto.MIN_CARACTERES;
+
     @Autowired
     private ViajesRepository viajesRepository;
 
@@ -39,59 +46,21 @@ public class ReservaController {
     @PostMapping("/viaje/reserva/add")
     public String postAddReservaAction(@RequestParam Map<String, String> params, RedirectAttributes redirectAttributes) {
     	int codViaje = Integer.parseInt(params.get("codViaje"));
-    	Map<String, String> errors = new HashMap<>();
-    	
-    	for (Map.Entry<String, String> param: params.entrySet()) {
-    		if (param.getValue().isEmpty()) {
-    			errors.put("error", "Todos los campos tienen que estar rellenados");
-    			redirectAttributes.addFlashAttribute("errors", errors);
-    			redirectAttributes.addAttribute("codViaje", codViaje);
-    			return "redirect:/viaje/reserva/add";
-    		}
-    	}
-    	
-    	String usuario;
-    	int plazasSolicitadas;
-    	try {
-	    	usuario = params.get("usuario");
-	    	plazasSolicitadas = Integer.parseInt(params.get("plazasSolicitadas"));
-		} catch (NumberFormatException e) {
-			errors.put("error", "Los campos numéricos sólo puede contener números");
-			redirectAttributes.addFlashAttribute("errors", errors);
-			redirectAttributes.addAttribute("codViaje", codViaje);
-			return "redirect:/viaje/reserva/add";
-		}
-    
-    	if (!Validator.isValidText(usuario, ' ')) {
-    		errors.put("usuario", "El propietario debe contener al menos dos cadenas separadas por espacio en blanco y comiencen por mayúsculas");
-    	}
-    	
-    	if (!Validator.isValidNumber(plazasSolicitadas)) {
-    		errors.put("plazas", "Las plazas solicitadas deben ser un valor entre 1 y 6");
-    	}
-    	
+    	Map<String, String> errors = Formularios.validarReserva(params);
     	if (errors.size() > 0) {
     		redirectAttributes.addFlashAttribute("errors", errors);
     		redirectAttributes.addAttribute("codViaje", codViaje);
     		return "redirect:/viaje/reserva/add";
     	}
     	
-    	Viaje viaje;
-    	try {
-			viaje = viajesRepository.findViajeSiPermiteReserva(codViaje, usuario, plazasSolicitadas);
-		} catch (ReservaNoValidaException | ViajeNotFoundException e) {
-			errors.put("error", e.getMessage());
-			redirectAttributes.addFlashAttribute("errors", errors);
-    		redirectAttributes.addAttribute("codViaje", codViaje);
-    		return "redirect:/viaje/reserva/add";
-		}
+    	String usuario = params.get("usuario");
+    	int plazasSolicitadas = Integer.parseInt(params.get("plazasSolicitadas"));
     	
-    	Reserva nuevaReserva = new Reserva(viajesRepository.getNextCodReserva(viaje), usuario, plazasSolicitadas, viaje);
     	try {
-			viajesRepository.save(nuevaReserva);
+			viajesRepository.reservar(codViaje, usuario, plazasSolicitadas);
 			redirectAttributes.addFlashAttribute("infoMessage", "Reserva insertada con éxito");
 	    	return "redirect:/viajes";
-		} catch (ReservaAlreadyExistsException | ReservaNotFoundException e) {
+		} catch (ReservaNoValidaException | ViajeNotFoundException e) {
 			errors.put("error", e.getMessage());
 		}
     	
@@ -101,28 +70,63 @@ public class ReservaController {
     }
     
     @GetMapping("/viaje/reservas")
-    public String getReservasAction(@RequestParam Map<String, String> params, Model model) {
+    public String getReservasAction(@RequestParam Map<String, String> params, Model model, ServletWebRequest request) {
     	Viaje viaje;
     	try {
     		int codViaje = Integer.parseInt(params.get("codViaje"));
+    		if (PeticionCondicional.noModificada(request, model, viajesRepository.getVersiones().etiquetaViaje(codViaje))) {
+    			return null;
+    		}
         	model.addAttribute("codViaje", codViaje);
         	viaje = viajesRepository.findViajeById(codViaje);
     	} catch (NumberFormatException | ViajeNotFoundException e) {
     		return "redirect:/viajes";
 		}
 		
-    	model.addAttribute("reservas", viajesRepository.findReservasByViaje(viaje));
+    	String buscar = params.getOrDefault("buscar", "").trim();
+    	model.addAttribute("buscar", buscar);
+    	if (!buscar.isEmpty()) {
+    		model.addAttribute("reservas", viajesRepository.findReservasByViaje(viaje, buscar));
+    		return "reserva/listado";
+    	}
+    	
+    	Slice<Reserva> pagina = viajesRepository.findReservasByViaje(viaje, SliceRequest.of(params));
+    	model.addAttribute("reservas", pagina.getContenido());
+    	model.addAttribute("pagina", pagina);
+    	return "reserva/listado";
+    }
+    
+    /**
+     * Endpoint que busca, en todos los viajes, las reservas cuyo usuario o código contiene el parámetro "buscar"
+     *
+     * */
+    @GetMapping("/reservas/buscar")
+    public String getBuscarReservasAction(@RequestParam Map<String, String> params, Model model) {
+    	String buscar = params.getOrDefault("buscar", "").trim();
+    	model.addAttribute("buscar", buscar);
+    	if (Textos.normalizar(buscar).length() < MIN_CARACTERES_BUSQUEDA) {
+    		if (!buscar.isEmpty()) {
+    			model.addAttribute("errors", Map.of("buscar", "Escribe al menos " + MIN_CARACTERES_BUSQUEDA + " caracteres"));
+    		}
+    		model.addAttribute("reservas", List.of());
+    		return "reserva/listado";
+    	}
+    	model.addAttribute("reservas", viajesRepository.findReservas(buscar, MAX_RESULTADOS_BUSQUEDA));
     	return "reserva/listado";
     }
     
     @GetMapping("/viaje/reserva")
-    public String getDetailReservaAction(@RequestParam Map<String, String> params, Model model) {
+    public String getDetailReservaAction(@RequestParam Map<String, String> params, Model model, ServletWebRequest request) {
     	Reserva reserva;
     	Viaje viaje;
     	try {
-    		reserva = viajesRepository.findReservaById(params.get("codReserva"));
+    		String codReserva = params.getOrDefault("codReserva", "");
+    		if (PeticionCondicional.noModificada(request, model, viajesRepository.getVersiones().etiquetaViaje(Reserva.codViajeDe(codReserva)))) {
+    			return null;
+    		}
+    		reserva = viajesRepository.findReservaById(codReserva);
     		viaje = viajesRepository.findViajeById(reserva.getCodigoViaje());
-		} catch (ReservaNotFoundException | ViajeNotFoundException e) {
+		} catch (IllegalArgumentException | ReservaNotFoundException | ViajeNotFoundException e) {
 			return "redirect:/viajes";
 		}
     	
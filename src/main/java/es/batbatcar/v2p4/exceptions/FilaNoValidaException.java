@@ -0,0 +1,8 @@
+package es.batbatcar.v2p4.exceptions;
+
+public class FilaNoValidaException extends Exception {
+
+    public FilaNoValidaException(String motivo) {
+        super(motivo);
+    }
+}
@@ -0,0 +1,13 @@
+package es.batbatcar.v2p4.exceptions;
+
+/**
+ * La base de datos no admite alguna fila del lote (datos no válidos o restricciones que no se
+ * cumplen): a diferencia de {@link DatabaseConnectionException}, reintentarlo no sirve
+ */
+public class LoteRechazadoException extends RuntimeException {
+
+    public LoteRechazadoException(String msg) {
+        super(msg);
+    }
+
+}
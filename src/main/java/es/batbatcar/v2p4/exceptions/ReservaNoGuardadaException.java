@@ -0,0 +1,14 @@
+package es.batbatcar.v2p4.exceptions;
+
+/**
+ * La reserva cumple las reglas pero no se ha podido guardar (base de datos, diario o demasiadas
+ * reservas pendientes): a diferencia del resto de {@link ReservaNoValidaException}, puede salir
+ * bien al reintentarla
+ */
+public class ReservaNoGuardadaException extends ReservaNoValidaException {
+
+    public ReservaNoGuardadaException(String motivo) {
+        super(motivo);
+    }
+
+}
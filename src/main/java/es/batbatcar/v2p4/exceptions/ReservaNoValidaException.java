@@ -2,9 +2,14 @@ package es.batbatcar.v2p4.exceptions;
 
 public class ReservaNoValidaException extends Exception {
 
+    private final String motivo;
+
     public ReservaNoValidaException(String motivo) {
         super("No se ha podido realizar la reserva. Motivo: " + motivo);
+        this.motivo = motivo;
     }
-}
-
 
+    public String getMotivo() {
+        return motivo;
+    }
+}
@@ -0,0 +1,100 @@
+package es.batbatcar.v2p4.metricas;
+
+import es.batbatcar.v2p4.exceptions.ReservaNoValidaException;
+import es.batbatcar.v2p4.exceptions.ViajeNotFoundException;
+import es.batbatcar.v2p4.modelo.dto.Slice;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+
+/**
+ * Mide los DAO y el repositorio sin tocar su código.
+ *
+ * Cada llamada pública se registra en un Timer (batbatcar.dao o batbatcar.repositorio) con la
+ * clase, el método y la excepción lanzada, si la hay. Las consultas que devuelven colecciones o
+ * páginas anotan además el número de filas en batbatcar.dao.filas, y las reservas se cuentan en
+ * batbatcar.reservas según se acepten o se rechacen (con el motivo).
+ */
+@Aspect
+@Component
+public class MetricasAspect {
+
+	private final MeterRegistry registry;
+
+	public MetricasAspect(MeterRegistry registry) {
+		this.registry = registry;
+	}
+
+	@Around("execution(public * es.batbatcar.v2p4.modelo.dao.interfaces.ViajeDAO+.*(..))"
+			+ " || execution(public * es.batbatcar.v2p4.modelo.dao.interfaces.ReservaDAO+.*(..))")
+	public Object medirDAO(ProceedingJoinPoint joinPoint) throws Throwable {
+		Object resultado = medir("batbatcar.dao", joinPoint);
+		int filas = contarFilas(resultado);
+		if (filas >= 0) {
+			DistributionSummary.builder("batbatcar.dao.filas")
+					.description("Filas devueltas por las consultas de los DAO")
+					.tags("clase", clase(joinPoint), "metodo", joinPoint.getSignature().getName())
+					.register(registry)
+					.record(filas);
+		}
+		return resultado;
+	}
+
+	@Around("execution(public * es.batbatcar.v2p4.modelo.repositories.ViajesRepository.*(..))")
+	public Object medirRepositorio(ProceedingJoinPoint joinPoint) throws Throwable {
+		return medir("batbatcar.repositorio", joinPoint);
+	}
+
+	@Around("execution(public * es.batbatcar.v2p4.modelo.repositories.ViajesRepository.reservar(..))")
+	public Object contarReserva(ProceedingJoinPoint joinPoint) throws Throwable {
+		try {
+			Object reserva = joinPoint.proceed();
+			registry.counter("batbatcar.reservas", "resultado", "aceptada", "motivo", "ninguno").increment();
+			return reserva;
+		} catch (ReservaNoValidaException e) {
+			registry.counter("batbatcar.reservas", "resultado", "rechazada", "motivo", e.getMotivo()).increment();
+			throw e;
+		} catch (ViajeNotFoundException e) {
+			registry.counter("batbatcar.reservas", "resultado", "rechazada", "motivo", "El viaje no existe").increment();
+			throw e;
+		}
+	}
+
+	private Object medir(String nombre, ProceedingJoinPoint joinPoint) throws Throwable {
+		Timer.Sample sample = Timer.start(registry);
+		String excepcion = "none";
+		try {
+			return joinPoint.proceed();
+		} catch (Throwable e) {
+			excepcion = e.getClass().getSimpleName();
+			throw e;
+		} finally {
+			sample.stop(Timer.builder(nombre)
+					.tags("clase", clase(joinPoint), "metodo", joinPoint.getSignature().getName(), "excepcion", excepcion)
+					.register(registry));
+		}
+	}
+
+	private static String clase(ProceedingJoinPoint joinPoint) {
+		return AopUtils.getTargetClass(joinPoint.getTarget()).getSimpleName();
+	}
+
+	private static int contarFilas(Object resultado) {
+		if (resultado instanceof Collection) {
+			return ((Collection<?>) resultado).size();
+		}
+		if (resultado instanceof Slice) {
+			return ((Slice<?>) resultado).getContenido().size();
+		}
+		return -1;
+	}
+}
@@ -0,0 +1,87 @@
+package es.batbatcar.v2p4.metricas;
+
+import es.batbatcar.v2p4.controllers.FragmentosViaje;
+import es.batbatcar.v2p4.modelo.dao.cachedao.CachedReservaDAO;
+import es.batbatcar.v2p4.modelo.dao.cachedao.CachedViajeDAO;
+import es.batbatcar.v2p4.modelo.dao.cachedao.EstadisticasCache;
+import es.batbatcar.v2p4.modelo.services.MariaDBConnection;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Publica en Micrometer las estadísticas del pool de conexiones, de las cachés de los DAO y de los fragmentos,
+ * las mismas que muestra MonitorController
+ */
+@Component
+public class MetricasBinder implements MeterBinder {
+
+	@Autowired
+	private MariaDBConnection mariaDBConnection;
+
+	@Autowired
+	private CachedViajeDAO cachedViajeDAO;
+
+	@Autowired
+	private CachedReservaDAO cachedReservaDAO;
+
+	@Autowired
+	private FragmentosViaje fragmentosViaje;
+
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		MariaDBConnection pool = mariaDBConnection;
+		Gauge.builder("batbatcar.pool.conexiones", pool, p -> p.getEstadisticas().getActivas())
+				.tag("estado", "activas").register(registry);
+		Gauge.builder("batbatcar.pool.conexiones", pool, p -> p.getEstadisticas().getOciosas())
+				.tag("estado", "ociosas").register(registry);
+		Gauge.builder("batbatcar.pool.conexiones", pool, p -> p.getEstadisticas().getTotal())
+				.tag("estado", "total").register(registry);
+		Gauge.builder("batbatcar.pool.hilos.esperando", pool, p -> p.getEstadisticas().getHilosEsperando())
+				.register(registry);
+		FunctionCounter.builder("batbatcar.pool.prestamos", pool, p -> p.getEstadisticas().getPrestamos())
+				.register(registry);
+		FunctionCounter.builder("batbatcar.pool.timeouts", pool, p -> p.getEstadisticas().getTimeouts())
+				.register(registry);
+		FunctionCounter.builder("batbatcar.pool.conexiones.creadas", pool, p -> p.getEstadisticas().getConexionesCreadas())
+				.register(registry);
+
+		registrarCache(registry, "viajes", cachedViajeDAO::getEstadisticas);
+		registrarCaches(registry, cachedReservaDAO::getEstadisticas);
+		registrarCaches(registry, fragmentosViaje::getEstadisticas);
+	}
+
+	private void registrarCaches(MeterRegistry registry, Supplier<List<EstadisticasCache>> fotos) {
+		for (EstadisticasCache cache : fotos.get()) {
+			String nombre = cache.getNombre();
+			registrarCache(registry, nombre, () -> fotos.get().stream()
+					.filter(e -> e.getNombre().equals(nombre))
+					.findFirst()
+					.orElse(cache));
+		}
+	}
+
+	private void registrarCache(MeterRegistry registry, String nombre, Supplier<EstadisticasCache> foto) {
+		Gauge.builder("batbatcar.cache.entradas", foto, valor(EstadisticasCache::getEntradas))
+				.tag("cache", nombre).register(registry);
+		FunctionCounter.builder("batbatcar.cache.aciertos", foto, valor(EstadisticasCache::getAciertos))
+				.tag("cache", nombre).register(registry);
+		FunctionCounter.builder("batbatcar.cache.fallos", foto, valor(EstadisticasCache::getFallos))
+				.tag("cache", nombre).register(registry);
+		FunctionCounter.builder("batbatcar.cache.desalojos", foto, valor(EstadisticasCache::getDesalojos))
+				.tag("cache", nombre).register(registry);
+	}
+
+	private static ToDoubleFunction<Supplier<EstadisticasCache>> valor(ToDoubleFunction<EstadisticasCache> campo) {
+		return foto -> campo.applyAsDouble(foto.get());
+	}
+}
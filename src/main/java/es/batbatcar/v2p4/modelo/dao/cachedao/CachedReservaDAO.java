@@ -0,0 +1,291 @@
+package es.batbatcar.v2p4.modelo.dao.cachedao;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Repository;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import es.batbatcar.v2p4.exceptions.ReservaAlreadyExistsException;
+import es.batbatcar.v2p4.exceptions.ReservaNoValidaException;
+import es.batbatcar.v2p4.exceptions.ReservaNotFoundException;
+import es.batbatcar.v2p4.modelo.dao.interfaces.ReservaDAO;
+import es.batbatcar.v2p4.modelo.dao.sqldao.SQLReservaDAO;
+import es.batbatcar.v2p4.modelo.dto.Reserva;
+import es.batbatcar.v2p4.modelo.dto.Slice;
+import es.batbatcar.v2p4.modelo.dto.SliceRequest;
+import es.batbatcar.v2p4.modelo.dto.viaje.Viaje;
+import es.batbatcar.v2p4.utils.IndiceTexto;
+
+/**
+ * DAO de reservas que guarda en memoria las reservas leídas por código y, por cada viaje,
+ * su lista de reservas y el número de plazas reservadas. Delega en {@link SQLReservaDAO}.
+ * Cualquier escritura sobre una reserva invalida las entradas de su viaje. Las reservas de la
+ * caché no salen de ella: findById y findAllByTravel devuelven copias.
+ *
+ * Mantiene además un índice de trigramas sobre el usuario y el código de todas las reservas para
+ * las búsquedas por texto. Se carga la primera vez que se usa y, al invalidarlo, se construye uno
+ * nuevo que sustituye entero al anterior.
+ */
+@Repository
+public class CachedReservaDAO implements ReservaDAO {
+
+	private final SQLReservaDAO reservaDAO;
+	private final Cache<String, Reserva> reservas;
+	private final Cache<Integer, List<Reserva>> reservasPorViaje;
+	private final Cache<Integer, Integer> plazasPorViaje;
+	// null mientras no esté cargado
+	private volatile IndiceTexto<String> busqueda;
+	private final Object cargaBusqueda = new Object();
+
+	public CachedReservaDAO(
+			@Autowired SQLReservaDAO reservaDAO,
+			@Value("${batbatcar.cache.max-size:10000}") long maxSize,
+			@Value("${batbatcar.cache.ttl-seconds:60}") long ttlSeconds) {
+		this.reservaDAO = reservaDAO;
+		this.reservas = crearCache(maxSize, ttlSeconds);
+		this.reservasPorViaje = crearCache(maxSize, ttlSeconds);
+		this.plazasPorViaje = crearCache(maxSize, ttlSeconds);
+	}
+
+	private static <K, V> Cache<K, V> crearCache(long maxSize, long ttlSeconds) {
+		return Caffeine.newBuilder()
+				.maximumSize(maxSize)
+				.expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+				.recordStats()
+				.build();
+	}
+
+	@Override
+	public Set<Reserva> findAll() {
+		return reservaDAO.findAll();
+	}
+
+	@Override
+	public List<Reserva> findAllByUser(String user) {
+		return reservaDAO.findAllByUser(user);
+	}
+
+	@Override
+	public List<Reserva> findAllByTravel(Viaje viaje) {
+		List<Reserva> reservasViaje = reservasPorViaje.get(viaje.getCodViaje(), codViaje -> reservaDAO.findAllByTravel(viaje));
+		List<Reserva> copias = new ArrayList<>(reservasViaje.size());
+		for (Reserva reserva : reservasViaje) {
+			copias.add(new Reserva(reserva));
+		}
+		return copias;
+	}
+
+	@Override
+	public Slice<Reserva> findAllByTravel(Viaje viaje, SliceRequest request) {
+		return reservaDAO.findAllByTravel(viaje, request);
+	}
+
+	@Override
+	public Reserva findById(String id) {
+		// Como en las listas y las plazas, la carga es atómica con invalidate
+		Reserva reserva = reservas.get(id, reservaDAO::findById);
+		// Se entrega una copia: modificarla (p.ej. al editarla) no cambia la reserva de la caché
+		return reserva == null ? null : new Reserva(reserva);
+	}
+
+	@Override
+	public Reserva findByUserInTravel(String user, Viaje viaje) {
+		for (Reserva reserva : findAllByTravel(viaje)) {
+			if (reserva.getUsuario().equals(user)) {
+				return reserva;
+			}
+		}
+		
+		return null;
+	}
+
+	@Override
+	public Reserva getById(String id) throws ReservaNotFoundException {
+		Reserva reserva = findById(id);
+		if (reserva == null) {
+			throw new ReservaNotFoundException(id);
+		}
+		
+		return reserva;
+	}
+
+	@Override
+	public int getNumPlazasReservadasEnViaje(Viaje viaje) {
+		return plazasPorViaje.get(viaje.getCodViaje(), codViaje -> reservaDAO.getNumPlazasReservadasEnViaje(viaje));
+	}
+
+	@Override
+	public void add(Reserva reserva) throws ReservaAlreadyExistsException {
+		try {
+			reservaDAO.add(reserva);
+			indexar(reserva);
+		} finally {
+			invalidar(reserva);
+		}
+	}
+
+	/**
+	 * Inserta un lote de reservas en una sola transacción (ver {@link SQLReservaDAO#addAll(List)})
+	 * @param lote
+	 * @return número de reservas insertadas
+	 */
+	public int addAll(List<Reserva> lote) {
+		try {
+			int insertadas = reservaDAO.addAll(lote);
+			for (Reserva reserva : lote) {
+				indexar(reserva);
+			}
+			return insertadas;
+		} finally {
+			for (Reserva reserva : lote) {
+				invalidar(reserva);
+			}
+		}
+	}
+
+	@Override
+	public Reserva reservar(Viaje viaje, String usuario, int plazasSolicitadas) throws ReservaNoValidaException {
+		try {
+			Reserva reserva = reservaDAO.reservar(viaje, usuario, plazasSolicitadas);
+			indexar(reserva);
+			return reserva;
+		} finally {
+			invalidarViaje(viaje.getCodViaje());
+		}
+	}
+
+	@Override
+	public void update(Reserva reserva) throws ReservaNotFoundException {
+		try {
+			reservaDAO.update(reserva);
+			indexar(reserva);
+		} finally {
+			invalidar(reserva);
+		}
+	}
+
+	@Override
+	public void remove(Reserva reserva) throws ReservaNotFoundException {
+		try {
+			reservaDAO.remove(reserva);
+			synchronized (cargaBusqueda) {
+				if (busqueda != null) {
+					busqueda.quitar(reserva.getCodigoReserva());
+				}
+			}
+		} finally {
+			invalidar(reserva);
+		}
+	}
+
+	@Override
+	public List<Reserva> findAllBySearchParams(Viaje viaje, String searchParams) {
+		// El índice da los códigos; las reservas salen de la lista cacheada del viaje
+		Set<String> codigos = getBusqueda().buscar(viaje.getCodViaje(), searchParams);
+		List<Reserva> reservasBuscadas = new ArrayList<>(codigos.size());
+		if (codigos.isEmpty()) {
+			return reservasBuscadas;
+		}
+		for (Reserva reserva: findAllByTravel(viaje)) {
+			if (codigos.contains(reserva.getCodigoReserva())) {
+				reservasBuscadas.add(reserva);
+			}
+		}
+		return reservasBuscadas;
+	}
+
+	@Override
+	public List<Reserva> findAllBySearchParams(String searchParams, int max) {
+		// El índice se detiene en @max coincidencias: no hace falta reunirlas y ordenarlas todas
+		List<Reserva> reservasBuscadas = reservaDAO.findAllById(new ArrayList<>(getBusqueda().buscar(searchParams, max)));
+		reservasBuscadas.sort(Reserva.POR_CODIGO);
+		return reservasBuscadas;
+	}
+
+	private IndiceTexto<String> getBusqueda() {
+		IndiceTexto<String> indice = busqueda;
+		if (indice == null) {
+			synchronized (cargaBusqueda) {
+				indice = busqueda;
+				if (indice == null) {
+					// Se carga aparte y se publica al terminar
+					indice = new IndiceTexto<>();
+					for (Map.Entry<String, String> usuario : reservaDAO.findAllUsuarios().entrySet()) {
+						String codigoReserva = usuario.getKey();
+						indice.indexar(codigoReserva, Reserva.codViajeDe(codigoReserva), usuario.getValue(), codigoReserva);
+					}
+					busqueda = indice;
+				}
+			}
+		}
+		return indice;
+	}
+
+	private void indexar(Reserva reserva) {
+		// Si el índice no está cargado no hace falta: la carga ya leerá la reserva de la base de datos
+		synchronized (cargaBusqueda) {
+			if (busqueda != null) {
+				busqueda.indexar(reserva.getCodigoReserva(), reserva.getCodigoViaje(), reserva.getUsuario(), reserva.getCodigoReserva());
+			}
+		}
+	}
+
+	/**
+	 * Invalida la reserva y la información cacheada de su viaje
+	 * @param reserva
+	 */
+	private void invalidar(Reserva reserva) {
+		reservas.invalidate(reserva.getCodigoReserva());
+		invalidarViaje(reserva.getCodigoViaje());
+	}
+
+	/**
+	 * Invalida la lista de reservas y las plazas reservadas de un viaje
+	 * @param codViaje
+	 */
+	public void invalidarViaje(int codViaje) {
+		reservasPorViaje.invalidate(codViaje);
+		plazasPorViaje.invalidate(codViaje);
+	}
+
+	/**
+	 * Invalida la información cacheada de un viaje eliminado y quita sus reservas del índice de búsqueda
+	 * @param codViaje
+	 */
+	public void descartarViaje(int codViaje) {
+		invalidarViaje(codViaje);
+		synchronized (cargaBusqueda) {
+			if (busqueda != null) {
+				busqueda.quitarGrupo(codViaje);
+			}
+		}
+	}
+
+	/**
+	 * Vacía todas las cachés y el índice de búsqueda (tras escrituras que no pasan por este DAO)
+	 */
+	public void invalidarTodo() {
+		reservas.invalidateAll();
+		reservasPorViaje.invalidateAll();
+		plazasPorViaje.invalidateAll();
+		synchronized (cargaBusqueda) {
+			busqueda = null;
+		}
+	}
+
+	public List<EstadisticasCache> getEstadisticas() {
+		return Arrays.asList(
+				new EstadisticasCache("reservas", reservas),
+				new EstadisticasCache("reservasPorViaje", reservasPorViaje),
+				new EstadisticasCache("plazasPorViaje", plazasPorViaje));
+	}
+}
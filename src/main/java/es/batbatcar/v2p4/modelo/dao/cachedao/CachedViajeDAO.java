@@ -0,0 +1,231 @@
+package es.batbatcar.v2p4.modelo.dao.cachedao;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Repository;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import es.batbatcar.v2p4.exceptions.ViajeAlreadyExistsException;
+import es.batbatcar.v2p4.exceptions.ViajeNotFoundException;
+import es.batbatcar.v2p4.modelo.dao.interfaces.ViajeDAO;
+import es.batbatcar.v2p4.modelo.dao.sqldao.SQLViajeDAO;
+import es.batbatcar.v2p4.modelo.dto.Slice;
+import es.batbatcar.v2p4.modelo.dto.SliceRequest;
+import es.batbatcar.v2p4.modelo.dto.viaje.EstadoViaje;
+import es.batbatcar.v2p4.modelo.dto.viaje.Viaje;
+import es.batbatcar.v2p4.modelo.dto.viaje.ViajeResumen;
+import es.batbatcar.v2p4.utils.IndiceCiudades;
+
+/**
+ * DAO de viajes que guarda en memoria los viajes leídos por código (lectura a través de caché)
+ * y delega el resto de operaciones en {@link SQLViajeDAO}.
+ * Las escrituras van directamente a la base de datos e invalidan la entrada del viaje. Los viajes
+ * de la caché no salen de ella: findById devuelve copias.
+ *
+ * Mantiene además un índice de ciudades de destino: las búsquedas por destino se resuelven en el
+ * índice (con alias y sin distinguir acentos) y sólo se consulta la base de datos por los destinos
+ * exactos encontrados. El índice se carga la primera vez que se usa. Al invalidarlo se construye
+ * uno nuevo y se sustituye entero: las lecturas nunca ven un índice a medio cargar.
+ */
+@Repository
+public class CachedViajeDAO implements ViajeDAO {
+
+	// Por encima de este número de destinos se busca con LIKE en lugar de con la lista exacta
+	private static final int MAX_DESTINOS_EXACTOS = 1000;
+
+	private final SQLViajeDAO viajeDAO;
+	private final CachedReservaDAO reservaDAO;
+	private final Cache<Integer, Viaje> viajes;
+	// null mientras no esté cargado
+	private volatile IndiceCiudades destinos;
+	private final Object cargaDestinos = new Object();
+
+	public CachedViajeDAO(
+			@Autowired SQLViajeDAO viajeDAO,
+			@Autowired CachedReservaDAO reservaDAO,
+			@Value("${batbatcar.cache.max-size:10000}") long maxSize,
+			@Value("${batbatcar.cache.ttl-seconds:60}") long ttlSeconds) {
+		this.viajeDAO = viajeDAO;
+		this.reservaDAO = reservaDAO;
+		this.viajes = Caffeine.newBuilder()
+				.maximumSize(maxSize)
+				.expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+				.recordStats()
+				.build();
+	}
+
+	@Override
+	public Set<Viaje> findAll() {
+		return viajeDAO.findAll();
+	}
+
+	@Override
+	public Set<Viaje> findAll(String city) {
+		Set<String> formas = getDestinos().findFormas(city);
+		return formas.size() > MAX_DESTINOS_EXACTOS ? viajeDAO.findAll(city) : viajeDAO.findAll(formas);
+	}
+
+	@Override
+	public Set<Viaje> findAll(EstadoViaje estadoViaje) {
+		return viajeDAO.findAll(estadoViaje);
+	}
+
+	@Override
+	public Set<Viaje> findAll(Class<? extends Viaje> viajeClass) {
+		return viajeDAO.findAll(viajeClass);
+	}
+
+	@Override
+	public List<ViajeResumen> findAllResumenes() {
+		return viajeDAO.findAllResumenes();
+	}
+
+	@Override
+	public List<ViajeResumen> findAllResumenes(String city) {
+		Set<String> formas = getDestinos().findFormas(city);
+		return formas.size() > MAX_DESTINOS_EXACTOS ? viajeDAO.findAllResumenes(city) : viajeDAO.findAllResumenes(formas);
+	}
+
+	@Override
+	public Slice<ViajeResumen> findResumenes(String city, SliceRequest request) {
+		if (city == null) {
+			return viajeDAO.findResumenes((String) null, request);
+		}
+		Set<String> formas = getDestinos().findFormas(city);
+		return formas.size() > MAX_DESTINOS_EXACTOS ? viajeDAO.findResumenes(city, request) : viajeDAO.findResumenes(formas, request);
+	}
+
+	@Override
+	public List<String> findDestinos(String prefijo, int max) {
+		return getDestinos().sugerir(prefijo, max);
+	}
+
+	@Override
+	public Viaje findById(int codViaje) {
+		// La carga es atómica con invalidate: un viaje leído antes de una escritura no puede
+		// guardarse después de que la escritura invalide la entrada
+		Viaje viaje = viajes.get(codViaje, viajeDAO::findById);
+		
+		// Se entrega una copia: modificarla (p.ej. al cancelar) no cambia el viaje de la caché
+		return viaje == null ? null : new Viaje(viaje);
+	}
+
+	@Override
+	public Viaje getById(int codViaje) throws ViajeNotFoundException {
+		Viaje viaje = findById(codViaje);
+		if (viaje == null) {
+			throw new ViajeNotFoundException("El viaje seleccionado no existe");
+		}
+		
+		return viaje;
+	}
+
+	@Override
+	public void add(Viaje viaje) throws ViajeAlreadyExistsException {
+		try {
+			viajeDAO.add(viaje);
+			indexarDestino(viaje);
+		} finally {
+			viajes.invalidate(viaje.getCodViaje());
+		}
+	}
+
+	@Override
+	public void update(Viaje viaje) throws ViajeNotFoundException {
+		try {
+			viajeDAO.update(viaje);
+			indexarDestino(viaje);
+		} finally {
+			viajes.invalidate(viaje.getCodViaje());
+		}
+	}
+
+	@Override
+	public void remove(Viaje viaje) throws ViajeNotFoundException {
+		try {
+			viajeDAO.remove(viaje);
+			synchronized (cargaDestinos) {
+				if (destinos != null) {
+					destinos.quitar(viaje.getCodViaje());
+				}
+			}
+			// Las reservas del viaje se eliminan en cascada en la base de datos
+			reservaDAO.descartarViaje(viaje.getCodViaje());
+		} finally {
+			viajes.invalidate(viaje.getCodViaje());
+			reservaDAO.invalidarViaje(viaje.getCodViaje());
+		}
+	}
+
+	/**
+	 * Obtiene la fecha de salida de cada viaje abierto (siempre de la base de datos)
+	 * @return Map codViaje -> fechaSalida
+	 */
+	public Map<Integer, LocalDateTime> findSalidasAbiertos() {
+		return viajeDAO.findSalidasAbiertos();
+	}
+
+	/**
+	 * Cierra los viajes @codigos que han salido (ver {@link SQLViajeDAO#cerrar}) y los quita de la caché
+	 * @param codigos
+	 * @param ahora
+	 * @return número de viajes cerrados
+	 */
+	public int cerrar(Collection<Integer> codigos, LocalDateTime ahora) {
+		try {
+			return viajeDAO.cerrar(codigos, ahora);
+		} finally {
+			viajes.invalidateAll(codigos);
+		}
+	}
+
+	/**
+	 * Descarta el índice de destinos para que se vuelva a cargar. Hay que llamarlo cuando se
+	 * escriben viajes sin pasar por este DAO (importación masiva)
+	 */
+	public void invalidarDestinos() {
+		synchronized (cargaDestinos) {
+			destinos = null;
+		}
+	}
+
+	private IndiceCiudades getDestinos() {
+		IndiceCiudades indice = destinos;
+		if (indice == null) {
+			synchronized (cargaDestinos) {
+				indice = destinos;
+				if (indice == null) {
+					// Se carga aparte y se publica al terminar
+					indice = new IndiceCiudades();
+					for (Map.Entry<Integer, String> destino : viajeDAO.findAllDestinos().entrySet()) {
+						indice.indexar(destino.getKey(), destino.getValue());
+					}
+					destinos = indice;
+				}
+			}
+		}
+		return indice;
+	}
+
+	private void indexarDestino(Viaje viaje) {
+		// Si el índice no está cargado no hace falta: la carga ya leerá el viaje de la base de datos
+		synchronized (cargaDestinos) {
+			if (destinos != null) {
+				destinos.indexar(viaje.getCodViaje(), viaje.getDestino());
+			}
+		}
+	}
+
+	public EstadisticasCache getEstadisticas() {
+		return new EstadisticasCache("viajes", viajes);
+	}
+}
@@ -0,0 +1,51 @@
+package es.batbatcar.v2p4.modelo.dao.cachedao;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+/**
+ * Foto de los contadores de una caché en un instante
+ */
+public class EstadisticasCache {
+
+	private final String nombre;
+	private final long entradas;
+	private final long aciertos;
+	private final long fallos;
+	private final double ratioAciertos;
+	private final long desalojos;
+
+	public EstadisticasCache(String nombre, Cache<?, ?> cache) {
+		CacheStats stats = cache.stats();
+		this.nombre = nombre;
+		this.entradas = cache.estimatedSize();
+		this.aciertos = stats.hitCount();
+		this.fallos = stats.missCount();
+		this.ratioAciertos = stats.hitRate();
+		this.desalojos = stats.evictionCount();
+	}
+
+	public String getNombre() {
+		return nombre;
+	}
+
+	public long getEntradas() {
+		return entradas;
+	}
+
+	public long getAciertos() {
+		return aciertos;
+	}
+
+	public long getFallos() {
+		return fallos;
+	}
+
+	public double getRatioAciertos() {
+		return ratioAciertos;
+	}
+
+	public long getDesalojos() {
+		return desalojos;
+	}
+}
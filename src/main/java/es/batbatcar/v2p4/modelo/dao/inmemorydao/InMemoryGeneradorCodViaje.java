@@ -0,0 +1,32 @@
+package es.batbatcar.v2p4.modelo.dao.inmemorydao;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Repository;
+
+import es.batbatcar.v2p4.modelo.dao.interfaces.GeneradorCodViaje;
+import es.batbatcar.v2p4.modelo.dto.viaje.Viaje;
+
+/**
+ * Generador de códigos de viaje en memoria: un contador atómico que arranca
+ * en el mayor código de los viajes cargados
+ */
+@Repository
+public class InMemoryGeneradorCodViaje implements GeneradorCodViaje {
+
+	private final AtomicInteger ultimo;
+
+	public InMemoryGeneradorCodViaje(@Autowired InMemoryViajeDAO viajeDAO) {
+		int max = 0;
+		for (Viaje viaje : viajeDAO.findAll()) {
+			max = Math.max(max, viaje.getCodViaje());
+		}
+		this.ultimo = new AtomicInteger(max);
+	}
+
+	@Override
+	public int siguiente() {
+		return ultimo.incrementAndGet();
+	}
+}
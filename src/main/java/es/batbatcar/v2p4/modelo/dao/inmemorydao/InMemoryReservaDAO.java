@@ -1,46 +1,91 @@
 package es.batbatcar.v2p4.modelo.dao.inmemorydao;
 
+import java.time.Clock;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Repository;
 
 import es.batbatcar.v2p4.exceptions.ReservaAlreadyExistsException;
+import es.batbatcar.v2p4.exceptions.ReservaNoValidaException;
 import es.batbatcar.v2p4.exceptions.ReservaNotFoundException;
 import es.batbatcar.v2p4.modelo.dto.Reserva;
+import es.batbatcar.v2p4.modelo.dto.Slice;
+import es.batbatcar.v2p4.modelo.dto.SliceRequest;
 import es.batbatcar.v2p4.modelo.dto.viaje.EstadoViaje;
 import es.batbatcar.v2p4.modelo.dto.viaje.Viaje;
 import es.batbatcar.v2p4.modelo.dao.interfaces.ReservaDAO;
+import es.batbatcar.v2p4.utils.IndiceTexto;
 
+/**
+ * Almacén de reservas en memoria seguro para accesos concurrentes.
+ *
+ * Las reservas se indexan por código, por viaje y por usuario, y se mantiene por cada viaje
+ * un contador de plazas reservadas, de modo que consultar la disponibilidad de un viaje
+ * no recorre reservas. Las escrituras se serializan por viaje: reservas de viajes distintos
+ * no se bloquean entre sí.
+ */
 @Repository
 public class InMemoryReservaDAO implements ReservaDAO {
 
-	private Set<Reserva> reservas;
+	private final Map<String, Reserva> reservas;
+	// Reservas de cada viaje por número de reserva: como texto, 1-10 iría antes que 1-2
+	private final Map<Integer, NavigableMap<Integer, Reserva>> porViaje;
+	private final Map<String, Set<String>> porUsuario;
+	private final Map<Integer, AtomicInteger> plazasPorViaje;
+	
+	// Secuencia de números de reserva de cada viaje: guarda el último número asignado
+	private final Map<Integer, AtomicInteger> ultimaReservaPorViaje;
+	
+	// Usuario y plazas con los que está indexada cada reserva. Se guardan aparte porque el objeto
+	// Reserva puede haberse modificado antes de llamar a update
+	private final Map<String, ClavesIndice> claves;
+	
+	// Trigramas del usuario y el código de cada reserva para las búsquedas por texto
+	private final IndiceTexto<String> busqueda;
+	
+	private final Map<Integer, Object> bloqueos;
+	
+	// No hay cierre programado de los viajes en memoria: las reservas comprueban la salida con este reloj
+	private final Clock reloj;
 	
 	public InMemoryReservaDAO() {
-		this.reservas = new HashSet<>();
+		this(Clock.systemDefaultZone());
+	}
+	
+	@Autowired
+	public InMemoryReservaDAO(Clock reloj) {
+		this.reloj = reloj;
+		this.reservas = new ConcurrentHashMap<>();
+		this.porViaje = new ConcurrentHashMap<>();
+		this.porUsuario = new ConcurrentHashMap<>();
+		this.plazasPorViaje = new ConcurrentHashMap<>();
+		this.ultimaReservaPorViaje = new ConcurrentHashMap<>();
+		this.claves = new ConcurrentHashMap<>();
+		this.busqueda = new IndiceTexto<>();
+		this.bloqueos = new ConcurrentHashMap<>();
 		init();
 	}
 	
 	@Override
 	public Set<Reserva> findAll() {
-		return reservas;
+		return new HashSet<>(reservas.values());
 	}
 
 	@Override
 	public Reserva findById(String id) {
-		for (Reserva reserva : reservas) {
-			if (reserva.getCodigoReserva().equals(id)) {
-				return reserva;
-			}
-		}
-		
-		return null;
+		return reservas.get(id);
 	}
 
 	@Override
@@ -55,95 +100,214 @@ public class InMemoryReservaDAO implements ReservaDAO {
 
 	@Override
 	public List<Reserva> findAllByUser(String user) {
-		List<Reserva> reservasFiltradas = new ArrayList<>();
-		for (Reserva reserva : reservas) {
-			if (reserva.getUsuario().equals(user)) {
-				reservasFiltradas.add(reserva);
+		List<Reserva> reservasUsuario = new ArrayList<>();
+		for (String codigoReserva : porUsuario.getOrDefault(user, Set.of())) {
+			Reserva reserva = reservas.get(codigoReserva);
+			if (reserva != null) {
+				reservasUsuario.add(reserva);
 			}
 		}
 		
-		return reservasFiltradas;
+		return reservasUsuario;
 	}
 
 	@Override
 	public List<Reserva> findAllByTravel(Viaje viaje) {
-		List<Reserva> reservasViaje = new ArrayList<>();
+		return new ArrayList<>(reservasDelViaje(viaje.getCodViaje()).values());
+	}
+
+	@Override
+	public Slice<Reserva> findAllByTravel(Viaje viaje, SliceRequest request) {
+		NavigableMap<Integer, Reserva> candidatas = reservasDelViaje(viaje.getCodViaje());
+		Integer cursor = numReservaDe(request.getCursor());
+		if (cursor != null) {
+			candidatas = request.isBackward()
+					? candidatas.headMap(cursor, false).descendingMap()
+					: candidatas.tailMap(cursor, false);
+		}
 		
-		for (Reserva reserva : reservas) {
-			if (reserva.perteneceAlViaje(viaje.getCodViaje())) {
-				reservasViaje.add(reserva);
+		List<Reserva> filas = new ArrayList<>();
+		for (Reserva reserva : candidatas.values()) {
+			if (filas.size() > request.getSize()) {
+				break;
 			}
+			filas.add(reserva);
 		}
-		
-		return reservasViaje;
+		return Slice.of(filas, request, Reserva::getCodigoReserva);
 	}
 	
 	@Override
 	public int getNumPlazasReservadasEnViaje(Viaje viaje) {
-		int numPlazasReservadas = 0;
-		
-		for (Reserva reserva : reservas) {
-			if (reserva.perteneceAlViaje(viaje.getCodViaje())) {
-				numPlazasReservadas += reserva.getPlazasSolicitadas();
-			}
-		}
-		
-		return numPlazasReservadas;
+		AtomicInteger plazas = plazasPorViaje.get(viaje.getCodViaje());
+		return plazas == null ? 0 : plazas.get();
 	}
 	
 	@Override
 	public Reserva findByUserInTravel(String usuario, Viaje viaje) {
-        for (Reserva reserva: reservas) {
-            if (reserva.perteneceAlViaje(viaje.getCodViaje()) && viaje.getPropietario().equals(usuario)){
-                return reserva;
-            }
-        }
-        
-        return null;
-    }
+		for (Reserva reserva : reservasDelViaje(viaje.getCodViaje()).values()) {
+			if (reserva.getUsuario().equals(usuario)) {
+				return reserva;
+			}
+		}
+		
+		return null;
+	}
 
 	@Override
 	public List<Reserva> findAllBySearchParams(Viaje viaje, String searchParams) {
-		List<Reserva>reservasViaje = findAllByTravel(viaje);
-		List<Reserva> reservasBuscadas = new ArrayList<>();
-        for (Reserva reserva: reservasViaje) {
-            if (reserva.getUsuario().toLowerCase().contains(searchParams.toLowerCase())
-                    || reserva.getCodigoReserva().contains(searchParams)) {
-                reservasBuscadas.add(reserva);
-            }
-        }
-        return reservasBuscadas;
+		return toReservas(busqueda.buscar(viaje.getCodViaje(), searchParams), Integer.MAX_VALUE);
+	}
+
+	@Override
+	public List<Reserva> findAllBySearchParams(String searchParams, int max) {
+		return toReservas(busqueda.buscar(searchParams, max), max);
+	}
 
+	private List<Reserva> toReservas(Set<String> codigos, int max) {
+		List<Reserva> reservasEncontradas = new ArrayList<>(codigos.size());
+		for (String codigoReserva : codigos) {
+			Reserva reserva = reservas.get(codigoReserva);
+			if (reserva != null) {
+				reservasEncontradas.add(reserva);
+			}
+		}
+		reservasEncontradas.sort(Reserva.POR_CODIGO);
+		return reservasEncontradas.size() > max ? new ArrayList<>(reservasEncontradas.subList(0, max)) : reservasEncontradas;
 	}
 
 	@Override
 	public void add(Reserva reserva) throws ReservaAlreadyExistsException {
-		if (!this.reservas.add(reserva)) {
-			throw new ReservaAlreadyExistsException(reserva);
+		synchronized (bloqueo(reserva.getCodigoViaje())) {
+			if (reservas.containsKey(reserva.getCodigoReserva())) {
+				throw new ReservaAlreadyExistsException(reserva);
+			}
+			insertar(reserva);
+		}
+	}
+
+	@Override
+	public Reserva reservar(Viaje viaje, String usuario, int plazasSolicitadas) throws ReservaNoValidaException {
+		int codViaje = viaje.getCodViaje();
+		synchronized (bloqueo(codViaje)) {
+			if (viaje.getPropietario().equals(usuario)) {
+				throw new ReservaNoValidaException("Eres el propietario del viaje");
+			}
+			if (viaje.isCerrado() || viaje.isCancelado() || viaje.haSalido(reloj)) {
+				throw new ReservaNoValidaException("El viaje está cerrado o cancelado");
+			}
+			if (findByUserInTravel(usuario, viaje) != null) {
+				throw new ReservaNoValidaException("Ya has realizado una reserva");
+			}
+			if (plazasSolicitadas > viaje.getPlazasOfertadas() - getNumPlazasReservadasEnViaje(viaje)) {
+				throw new ReservaNoValidaException("No quedan suficientes plazas");
+			}
+			
+			int numReserva = ultimaReservaPorViaje.computeIfAbsent(codViaje, k -> new AtomicInteger()).incrementAndGet();
+			Reserva reserva = new Reserva(codViaje, numReserva, usuario, plazasSolicitadas, viaje);
+			insertar(reserva);
+			return reserva;
 		}
 	}
 
 	@Override
 	public void update(Reserva reservaUpdate) throws ReservaNotFoundException {
-		for (Reserva reserva : reservas) {
-			if (reservaUpdate.equals(reserva)) {
-				reserva.set(
-						reservaUpdate.getUsuario(),
-						reservaUpdate.getPlazasSolicitadas(),
-						reservaUpdate.getFechaRealizacion(),
-						reservaUpdate.getViaje());
-				return;
+		synchronized (bloqueo(reservaUpdate.getCodigoViaje())) {
+			Reserva reserva = reservas.get(reservaUpdate.getCodigoReserva());
+			if (reserva == null) {
+				throw new ReservaNotFoundException(reservaUpdate.getCodigoReserva());
 			}
+			
+			desindexar(reserva);
+			reserva.set(
+					reservaUpdate.getUsuario(),
+					reservaUpdate.getPlazasSolicitadas(),
+					reservaUpdate.getFechaRealizacion(),
+					reservaUpdate.getViaje());
+			indexar(reserva);
 		}
-		
-		throw new ReservaNotFoundException(reservaUpdate.getCodigoReserva());
-		
 	}
 
 	@Override
 	public void remove(Reserva reserva) throws ReservaNotFoundException {
-		if (!this.reservas.remove(reserva)) {
-			throw new ReservaNotFoundException(reserva.getCodigoReserva());
+		synchronized (bloqueo(reserva.getCodigoViaje())) {
+			Reserva reservaGuardada = reservas.remove(reserva.getCodigoReserva());
+			if (reservaGuardada == null) {
+				throw new ReservaNotFoundException(reserva.getCodigoReserva());
+			}
+			desindexar(reservaGuardada);
+			reservasDelViaje(reservaGuardada.getCodigoViaje()).remove(reservaGuardada.getNumReserva());
+		}
+	}
+	
+	/**
+	 * Obtiene el objeto sobre el que se serializan las escrituras de un viaje
+	 * @param codViaje
+	 * @return
+	 */
+	private Object bloqueo(int codViaje) {
+		return bloqueos.computeIfAbsent(codViaje, k -> new Object());
+	}
+	
+	private NavigableMap<Integer, Reserva> reservasDelViaje(int codViaje) {
+		return porViaje.computeIfAbsent(codViaje, k -> new ConcurrentSkipListMap<>());
+	}
+
+	/**
+	 * Número de reserva del cursor @codigoReserva, o null si no hay cursor o no es un código válido
+	 */
+	private static Integer numReservaDe(String codigoReserva) {
+		try {
+			return codigoReserva == null ? null : Reserva.numReservaDe(codigoReserva);
+		} catch (IllegalArgumentException e) {
+			return null;
+		}
+	}
+	
+	private void insertar(Reserva reserva) {
+		reservas.put(reserva.getCodigoReserva(), reserva);
+		reservasDelViaje(reserva.getCodigoViaje()).put(reserva.getNumReserva(), reserva);
+		indexar(reserva);
+		ultimaReservaPorViaje.computeIfAbsent(reserva.getCodigoViaje(), k -> new AtomicInteger())
+				.accumulateAndGet(reserva.getNumReserva(), Math::max);
+	}
+	
+	private void indexar(Reserva reserva) {
+		ClavesIndice clavesReserva = new ClavesIndice(reserva);
+		claves.put(reserva.getCodigoReserva(), clavesReserva);
+		// Un mismo usuario puede tener reservas en viajes distintos que se escriben a la vez:
+		// se añade dentro de compute para no competir con el borrado del conjunto vacío
+		porUsuario.compute(clavesReserva.usuario, (k, codigos) -> {
+			Set<String> codigosUsuario = codigos == null ? ConcurrentHashMap.newKeySet() : codigos;
+			codigosUsuario.add(reserva.getCodigoReserva());
+			return codigosUsuario;
+		});
+		plazasPorViaje.computeIfAbsent(reserva.getCodigoViaje(), k -> new AtomicInteger()).addAndGet(clavesReserva.plazas);
+		busqueda.indexar(reserva.getCodigoReserva(), reserva.getCodigoViaje(), reserva.getUsuario(), reserva.getCodigoReserva());
+	}
+	
+	private void desindexar(Reserva reserva) {
+		ClavesIndice clavesReserva = claves.remove(reserva.getCodigoReserva());
+		if (clavesReserva == null) {
+			return;
+		}
+		porUsuario.computeIfPresent(clavesReserva.usuario, (k, codigos) -> {
+			codigos.remove(reserva.getCodigoReserva());
+			return codigos.isEmpty() ? null : codigos;
+		});
+		plazasPorViaje.get(reserva.getCodigoViaje()).addAndGet(-clavesReserva.plazas);
+		busqueda.quitar(reserva.getCodigoReserva());
+	}
+	
+	/**
+	 * Valores por los que está indexada una reserva
+	 */
+	private static class ClavesIndice {
+		private final String usuario;
+		private final int plazas;
+		
+		private ClavesIndice(Reserva reserva) {
+			this.usuario = reserva.getUsuario();
+			this.plazas = reserva.getPlazasSolicitadas();
 		}
 	}
 	
@@ -152,21 +316,21 @@ public class InMemoryReservaDAO implements ReservaDAO {
         LocalTime hora = LocalTime.of(10, 34);
         LocalDateTime fechaYHora1 = LocalDateTime.of(fecha, hora);
         Viaje viaje = new Viaje(1, "sergio123", "Madrid-Murcia-Alicante", fechaYHora1, 4, 5f, 4);
-        reservas.add(new Reserva("1-1", "alex32", 2, viaje));
-        reservas.add(new Reserva("1-2", "roberto1979", 1, viaje));
+        insertar(new Reserva("1-1", "alex32", 2, viaje));
+        insertar(new Reserva("1-2", "roberto1979", 1, viaje));
         
         LocalDateTime fechaYHora3 = LocalDateTime.of(2025, 1, 1, 10, 10, 30);
         Viaje viaje2 = new Viaje(3, "raul00", "Madrid-Barcelona", fechaYHora3, 180, 10f,3);
-        reservas.add(new Reserva("3-1", "elena12", 2, viaje2));
+        insertar(new Reserva("3-1", "elena12", 2, viaje2));
         
         LocalDateTime fechaYHora4 = LocalDateTime.of(2025, 4, 28, 16, 0, 49);
         Viaje viaje3 = new Viaje(4, "alex32", "Alcoy-Cocentaina", fechaYHora4, 10, 2f, 4);
-        reservas.add(new Reserva("4-1", "raul00", 2, viaje3));
-        reservas.add(new Reserva("4-2", "roberto1979", 1, viaje3));
+        insertar(new Reserva("4-1", "raul00", 2, viaje3));
+        insertar(new Reserva("4-2", "roberto1979", 1, viaje3));
 
         LocalDateTime fechaYHora7 = LocalDateTime.parse("2026-12-31T07:59:00.000");
         Viaje viaje7 = new Viaje(7, "elena12", "Castellon-Gandia", fechaYHora7, 4, 3f, 3, EstadoViaje.CERRADO);
-        reservas.add(new Reserva("7-1", "roberto1979", 2, viaje7));
-        reservas.add(new Reserva("7-2", "sergio123", 1, viaje7));
+        insertar(new Reserva("7-1", "roberto1979", 2, viaje7));
+        insertar(new Reserva("7-2", "sergio123", 1, viaje7));
 	}
 }
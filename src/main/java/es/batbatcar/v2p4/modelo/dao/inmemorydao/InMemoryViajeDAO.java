@@ -1,77 +1,168 @@
 package es.batbatcar.v2p4.modelo.dao.inmemorydao;
 
+import java.time.Clock;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
 import java.util.Set;
-import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Repository;
 
 import es.batbatcar.v2p4.exceptions.ViajeAlreadyExistsException;
 import es.batbatcar.v2p4.exceptions.ViajeNotCancelableException;
 import es.batbatcar.v2p4.exceptions.ViajeNotFoundException;
 import es.batbatcar.v2p4.modelo.dao.interfaces.ViajeDAO;
+import es.batbatcar.v2p4.modelo.dto.Slice;
+import es.batbatcar.v2p4.modelo.dto.SliceRequest;
 import es.batbatcar.v2p4.modelo.dto.viaje.EstadoViaje;
 import es.batbatcar.v2p4.modelo.dto.viaje.Viaje;
+import es.batbatcar.v2p4.modelo.dto.viaje.ViajeResumen;
+import es.batbatcar.v2p4.utils.IndiceCiudades;
 
+/**
+ * Almacén de viajes en memoria seguro para accesos concurrentes.
+ *
+ * Los viajes se indexan por código (acceso directo) y tienen índices secundarios
+ * por ciudad de destino, estado y fecha de salida. Las lecturas no bloquean;
+ * las escrituras se serializan para mantener los índices coherentes entre sí.
+ */
 @Repository
 public class InMemoryViajeDAO implements ViajeDAO {
 
-	private Set<Viaje> viajes;
+	private final Map<Integer, Viaje> viajes;
+	private final ConcurrentSkipListSet<Integer> codigos;
+	private final IndiceCiudades porDestino;
+	private final Map<EstadoViaje, Set<Integer>> porEstado;
+	private final ConcurrentSkipListMap<LocalDateTime, Set<Integer>> porFechaSalida;
+	
+	// Claves con las que está indexado cada viaje. Se guardan aparte porque el objeto Viaje
+	// puede haberse modificado (p.ej. al cancelarlo) antes de llamar a update
+	private final Map<Integer, ClavesIndice> claves;
+	
+	private final Object escritura = new Object();
+	
+	@Autowired
+	private InMemoryReservaDAO reservaDAO;
 	
 	public InMemoryViajeDAO() {
-		this.viajes = new TreeSet<>();
+		this.viajes = new ConcurrentHashMap<>();
+		this.codigos = new ConcurrentSkipListSet<>();
+		this.porDestino = new IndiceCiudades();
+		this.porEstado = new EnumMap<>(EstadoViaje.class);
+		for (EstadoViaje estado : EstadoViaje.values()) {
+			this.porEstado.put(estado, new ConcurrentSkipListSet<>());
+		}
+		this.porFechaSalida = new ConcurrentSkipListMap<>();
+		this.claves = new ConcurrentHashMap<>();
 		init();
 	}
 	
 	@Override
 	public Set<Viaje> findAll() {
-		return viajes;
+		return toViajes(codigos);
 	}
 
 	@Override
 	public Set<Viaje> findAll(String city) {
-		TreeSet<Viaje> viajesDePaso = new TreeSet<>();
-        for (Viaje viaje:this.viajes) {
-            if(viaje.tieneEstaCiudadDestino(city)){
-                viajesDePaso.add(viaje);
-            }
-        }
-        return viajesDePaso;
+		return toViajes(findCodigosByDestino(city));
 	}
 
 	@Override
 	public Set<Viaje> findAll(EstadoViaje estadoViaje) {
-		TreeSet<Viaje> viajesDePaso = new TreeSet<>();
-        for (Viaje viaje:this.viajes) {
-            if(viaje.tieneEsteEstado(estadoViaje)){
-                viajesDePaso.add(viaje);
-            }
-        }
-        return viajesDePaso;
+		return toViajes(porEstado.get(estadoViaje));
 	}
 
 	@Override
 	public Set<Viaje> findAll(Class<? extends Viaje> viajeClass) {
-		TreeSet<Viaje> viajesDePaso = new TreeSet<>();
-        for (Viaje viaje:this.viajes) {
-            if(viaje.getClass() == viajeClass){
-                viajesDePaso.add(viaje);
-            }
-        }
-        return viajesDePaso;
+		Set<Viaje> viajesDeClase = new LinkedHashSet<>();
+		for (Viaje viaje : toViajes(codigos)) {
+			if (viaje.getClass() == viajeClass) {
+				viajesDeClase.add(viaje);
+			}
+		}
+		return viajesDeClase;
+	}
+
+	/**
+	 * Obtiene los viajes que salen entre @desde (incluido) y @hasta (excluido), ordenados por fecha de salida
+	 * @param desde
+	 * @param hasta
+	 * @return
+	 */
+	public List<Viaje> findAllBySalida(LocalDateTime desde, LocalDateTime hasta) {
+		List<Viaje> viajesEnRango = new ArrayList<>();
+		for (Set<Integer> codigosEnFecha : porFechaSalida.subMap(desde, true, hasta, false).values()) {
+			viajesEnRango.addAll(toViajes(codigosEnFecha));
+		}
+		return viajesEnRango;
 	}
 
 	@Override
-	public Viaje findById(int codViaje) {
-		for (Viaje viaje:this.viajes) {
-            if (viaje.equals(new Viaje(codViaje))){
-            	return viaje;
-            }
-        }
+	public List<ViajeResumen> findAllResumenes() {
+		List<ViajeResumen> resumenes = new ArrayList<>();
+		for (Viaje viaje: findAll()) {
+			resumenes.add(crearResumen(viaje));
+		}
+		return resumenes;
+	}
+
+	@Override
+	public List<ViajeResumen> findAllResumenes(String city) {
+		List<ViajeResumen> resumenes = new ArrayList<>();
+		for (Viaje viaje: findAll(city)) {
+			resumenes.add(crearResumen(viaje));
+		}
+		return resumenes;
+	}
+
+	@Override
+	public Slice<ViajeResumen> findResumenes(String city, SliceRequest request) {
+		NavigableSet<Integer> candidatos = city == null ? codigos : findCodigosByDestino(city);
+		Integer cursor = request.getCursorAsInt();
+		if (cursor != null) {
+			candidatos = request.isBackward()
+					? candidatos.headSet(cursor, false).descendingSet()
+					: candidatos.tailSet(cursor, false);
+		} else if (request.isBackward()) {
+			candidatos = candidatos.descendingSet();
+		}
 		
-		return null;
+		List<ViajeResumen> filas = new ArrayList<>();
+		for (Integer codViaje : candidatos) {
+			if (filas.size() > request.getSize()) {
+				break;
+			}
+			Viaje viaje = viajes.get(codViaje);
+			if (viaje != null) {
+				filas.add(crearResumen(viaje));
+			}
+		}
+		return Slice.of(filas, request, resumen -> String.valueOf(resumen.getViaje().getCodViaje()));
+	}
+
+	private ViajeResumen crearResumen(Viaje viaje) {
+		return new ViajeResumen(viaje, reservaDAO.findAllByTravel(viaje).size(), reservaDAO.getNumPlazasReservadasEnViaje(viaje));
+	}
+
+	@Override
+	public List<String> findDestinos(String prefijo, int max) {
+		return porDestino.sugerir(prefijo, max);
+	}
+
+	@Override
+	public Viaje findById(int codViaje) {
+		return viajes.get(codViaje);
 	}
 
 	@Override
@@ -86,16 +177,26 @@ public class InMemoryViajeDAO implements ViajeDAO {
 
 	@Override
 	public void add(Viaje viaje) throws ViajeAlreadyExistsException {
-		if (!this.viajes.add(viaje)) {
-			throw new ViajeAlreadyExistsException(viaje.getCodViaje());
+		synchronized (escritura) {
+			if (viajes.containsKey(viaje.getCodViaje())) {
+				throw new ViajeAlreadyExistsException(viaje.getCodViaje());
+			}
+			insertar(viaje);
 		}
 	}
 	
 	@Override
 	public void update(Viaje viaje) throws ViajeNotFoundException {
-		Viaje viajeAActualizar = findById(viaje.getCodViaje());
-		if (viajeAActualizar != null) {
-			viajeAActualizar.set(
+		synchronized (escritura) {
+			Viaje viajeAActualizar = viajes.get(viaje.getCodViaje());
+			if (viajeAActualizar == null) {
+				throw new ViajeNotFoundException(viaje.getCodViaje());
+			}
+			
+			// Se valida sobre una copia (set no deja reducir las plazas) antes de tocar los índices,
+			// y se sustituye el viaje entero: las lecturas, que no bloquean, nunca ven uno a medias
+			Viaje actualizado = new Viaje(viajeAActualizar);
+			actualizado.set(
 					viaje.getPropietario(),
 					viaje.getRuta(),
 					viaje.getFechaSalida(),
@@ -103,13 +204,88 @@ public class InMemoryViajeDAO implements ViajeDAO {
 					viaje.getPrecio(),
 					viaje.getPlazasOfertadas(),
 					viaje.getEstado());
+			
+			desindexar(viaje.getCodViaje());
+			try {
+				viajes.put(actualizado.getCodViaje(), actualizado);
+			} finally {
+				indexar(viajes.get(actualizado.getCodViaje()));
+			}
 		}
 	}
 
 	@Override
 	public void remove(Viaje viaje) throws ViajeNotFoundException {
-		if (!this.viajes.remove(viaje)) {
-			throw new ViajeNotFoundException(viaje.getCodViaje());
+		synchronized (escritura) {
+			if (viajes.remove(viaje.getCodViaje()) == null) {
+				throw new ViajeNotFoundException(viaje.getCodViaje());
+			}
+			desindexar(viaje.getCodViaje());
+			codigos.remove(viaje.getCodViaje());
+		}
+	}
+	
+	/**
+	 * Obtiene, ordenados, los códigos de los viajes cuya ciudad de destino empieza por @city
+	 * @param city
+	 * @return
+	 */
+	private NavigableSet<Integer> findCodigosByDestino(String city) {
+		return porDestino.findCodigos(city);
+	}
+	
+	private Set<Viaje> toViajes(Collection<Integer> codigosViaje) {
+		Set<Viaje> viajesEncontrados = new LinkedHashSet<>();
+		for (Integer codViaje : codigosViaje) {
+			Viaje viaje = viajes.get(codViaje);
+			if (viaje != null) {
+				viajesEncontrados.add(viaje);
+			}
+		}
+		return viajesEncontrados;
+	}
+	
+	private void insertar(Viaje viaje) {
+		viajes.put(viaje.getCodViaje(), viaje);
+		codigos.add(viaje.getCodViaje());
+		indexar(viaje);
+	}
+	
+	private void indexar(Viaje viaje) {
+		ClavesIndice clavesViaje = new ClavesIndice(viaje);
+		claves.put(viaje.getCodViaje(), clavesViaje);
+		porDestino.indexar(viaje.getCodViaje(), viaje.getDestino());
+		porEstado.get(clavesViaje.estado).add(viaje.getCodViaje());
+		porFechaSalida.computeIfAbsent(clavesViaje.fechaSalida, k -> new ConcurrentSkipListSet<>()).add(viaje.getCodViaje());
+	}
+	
+	private void desindexar(int codViaje) {
+		ClavesIndice clavesViaje = claves.remove(codViaje);
+		if (clavesViaje == null) {
+			return;
+		}
+		porDestino.quitar(codViaje);
+		porEstado.get(clavesViaje.estado).remove(codViaje);
+		quitar(porFechaSalida, clavesViaje.fechaSalida, codViaje);
+	}
+	
+	private static <K> void quitar(ConcurrentSkipListMap<K, Set<Integer>> indice, K clave, int codViaje) {
+		indice.computeIfPresent(clave, (k, codigosClave) -> {
+			codigosClave.remove(codViaje);
+			return codigosClave.isEmpty() ? null : codigosClave;
+		});
+	}
+	
+	/**
+	 * Valores por los que está indexado un viaje
+	 */
+	private static class ClavesIndice {
+		private final EstadoViaje estado;
+		private final LocalDateTime fechaSalida;
+		
+		private ClavesIndice(Viaje viaje) {
+			this.estado = viaje.getEstado();
+			this.fechaSalida = viaje.getFechaSalida();
 		}
 	}
 
@@ -119,32 +295,32 @@ public class InMemoryViajeDAO implements ViajeDAO {
 	        LocalTime hora = LocalTime.of(10, 34);
 	        LocalDateTime fechaYHora1 = LocalDateTime.of(fecha, hora);
 	        Viaje viaje = new Viaje(1, "sergio123", "Madrid-Murcia-Alicante", fechaYHora1, 4, 5f, 4);
-	        viajes.add(viaje);
+	        insertar(viaje);
 	
 	        LocalDateTime fechaYHora2 = LocalDateTime.of(2027, 1, 14, 10, 34);
 	        Viaje viaje1 = new Viaje(2, "roberto1979", "Alacant-Valencia",  fechaYHora2, 10, 6f,4);
-	        viajes.add(viaje1);
+	        insertar(viaje1);
 	
 	        LocalDateTime fechaYHora3 = LocalDateTime.of(2025, 1, 1, 10, 10, 30);
 	        Viaje viaje2 = new Viaje(3, "raul00", "Madrid-Barcelona", fechaYHora3, 180, 10f,3);
-	        viajes.add(viaje2);
+	        insertar(viaje2);
 	
 	        LocalDateTime fechaYHora4 = LocalDateTime.of(2025, 4, 28, 16, 0, 49);
 	        Viaje viaje3 = new Viaje(4, "alex32", "Alcoy-Cocentaina", fechaYHora4, 10, 2f, 4);
-	        viajes.add(viaje3);
+	        insertar(viaje3);
 	        
 	        LocalDateTime fechaYHora5 = LocalDateTime.of(2014, 4, 29, 4, 30, 49);
 	        Viaje viaje4 = new Viaje(5, "sergio123", "Alcoy-Alicante", fechaYHora5, 45, 3f, 3, EstadoViaje.CERRADO);
-	        viajes.add(viaje4);
+	        insertar(viaje4);
 	
 	        LocalDateTime fechaYHora6 = LocalDateTime.parse("2026-12-31T07:59:00.000");
 	        Viaje viaje5 = new Viaje(6, "maria456", "Alicante-Alcoy", fechaYHora6, 45, 3f,2 );
-	        viaje5.cancelar();
-	        viajes.add(viaje5);
+	        viaje5.cancelar(Clock.systemDefaultZone());
+	        insertar(viaje5);
 	        
 	        LocalDateTime fechaYHora7 = LocalDateTime.parse("2026-12-31T07:59:00.000");
 	        Viaje viaje7 = new Viaje(7, "elena12", "Castellon-Gandía", fechaYHora7, 4, 3f, 3, EstadoViaje.CERRADO);
-	        viajes.add(viaje7);
+	        insertar(viaje7);
         
         } catch (ViajeNotCancelableException ex) {
         	System.out.println(ex.getMessage());
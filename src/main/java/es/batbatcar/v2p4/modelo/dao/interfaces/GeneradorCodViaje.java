@@ -0,0 +1,12 @@
+package es.batbatcar.v2p4.modelo.dao.interfaces;
+
+public interface GeneradorCodViaje {
+
+    /**
+     * Obtiene un código de viaje que no se ha entregado nunca antes. Es seguro llamarlo
+     * desde varios hilos a la vez
+     *
+     * @return código para un viaje nuevo
+     */
+    int siguiente();
+}
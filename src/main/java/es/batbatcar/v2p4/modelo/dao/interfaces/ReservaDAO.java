@@ -1,8 +1,11 @@
 package es.batbatcar.v2p4.modelo.dao.interfaces;
 
 import es.batbatcar.v2p4.exceptions.ReservaAlreadyExistsException;
+import es.batbatcar.v2p4.exceptions.ReservaNoValidaException;
 import es.batbatcar.v2p4.exceptions.ReservaNotFoundException;
 import es.batbatcar.v2p4.modelo.dto.Reserva;
+import es.batbatcar.v2p4.modelo.dto.Slice;
+import es.batbatcar.v2p4.modelo.dto.SliceRequest;
 import es.batbatcar.v2p4.modelo.dto.viaje.Viaje;
 
 import java.util.List;
@@ -32,6 +35,16 @@ public interface ReservaDAO {
      * @return Array List de reservas
      */
     List<Reserva> findAllByTravel(Viaje viaje);
+
+    /**
+     * Obtiene una página de las reservas de un viaje. La paginación es por clave
+     * sobre el código de reserva
+     *
+     * @param viaje
+     * @param request
+     * @return Slice ordenada por código de reserva
+     */
+    Slice<Reserva> findAllByTravel(Viaje viaje, SliceRequest request);
     
 
     /**
@@ -76,6 +89,20 @@ public interface ReservaDAO {
      */
     void add(Reserva reserva) throws ReservaAlreadyExistsException;
     
+    /**
+     * Realiza una reserva de @plazasSolicitadas plazas en @viaje para @usuario como una única
+     * operación atómica: comprueba que el viaje admite la reserva, le asigna el siguiente código
+     * del viaje y la inserta. Dos reservas simultáneas sobre el mismo viaje nunca superan
+     * las plazas ofertadas ni reciben el mismo código.
+     * @param viaje
+     * @param usuario
+     * @param plazasSolicitadas
+     * @return la reserva realizada
+     * @throws ReservaNoValidaException si el usuario es el propietario, el viaje no está disponible,
+     * el usuario ya tiene una reserva en el viaje o no quedan suficientes plazas
+     */
+    Reserva reservar(Viaje viaje, String usuario, int plazasSolicitadas) throws ReservaNoValidaException;
+    
     /**
      * Actualiza una reserva si existe
      * @param reserva
@@ -105,4 +132,16 @@ public interface ReservaDAO {
      */
     List<Reserva> findAllBySearchParams(Viaje viaje, String searchParams);
 
+    /**
+     * Selecciona, de las reservas de todos los viajes, como mucho @max cuyo usuario o código de reserva
+     * contiene @searchParams (sin distinguir mayúsculas ni acentos). Si hay más de @max, las
+     * implementaciones con índice devuelven las primeras que encuentran, no las primeras en orden
+     *
+     * @param searchParams
+     * @param max
+     *
+     * @return List<Reserva> ordenada por viaje y número de reserva
+     */
+    List<Reserva> findAllBySearchParams(String searchParams, int max);
+
 }
@@ -2,9 +2,13 @@ package es.batbatcar.v2p4.modelo.dao.interfaces;
 
 import es.batbatcar.v2p4.exceptions.ViajeAlreadyExistsException;
 import es.batbatcar.v2p4.exceptions.ViajeNotFoundException;
+import es.batbatcar.v2p4.modelo.dto.Slice;
+import es.batbatcar.v2p4.modelo.dto.SliceRequest;
 import es.batbatcar.v2p4.modelo.dto.viaje.EstadoViaje;
 import es.batbatcar.v2p4.modelo.dto.viaje.Viaje;
+import es.batbatcar.v2p4.modelo.dto.viaje.ViajeResumen;
 
+import java.util.List;
 import java.util.Set;
 
 public interface ViajeDAO {
@@ -18,6 +22,7 @@ public interface ViajeDAO {
 
     /**
      * Obtiene todos los viajes con destino a @city
+     * (la última ciudad de la ruta, o alguno de sus alias, empieza por @city sin distinguir mayúsculas ni acentos)
      *
      * @return
      */
@@ -37,6 +42,37 @@ public interface ViajeDAO {
      */
     Set<Viaje> findAll(Class<? extends Viaje> viajeClass);
 
+    /**
+     * Obtiene todos los viajes junto con el número de reservas y de plazas reservadas de cada uno
+     *
+     * @return List ordenada por código de viaje
+     */
+    List<ViajeResumen> findAllResumenes();
+
+    /**
+     * Obtiene los viajes con destino a @city junto con el número de reservas y de plazas reservadas de cada uno
+     *
+     * @return List ordenada por código de viaje
+     */
+    List<ViajeResumen> findAllResumenes(String city);
+
+    /**
+     * Obtiene una página de viajes (con destino a @city si no es null) junto con la información
+     * de sus reservas. La paginación es por clave sobre el código de viaje
+     *
+     * @param city
+     * @param request
+     * @return Slice ordenada por código de viaje
+     */
+    Slice<ViajeResumen> findResumenes(String city, SliceRequest request);
+
+    /**
+     * Obtiene como mucho @max ciudades de destino que empiezan por @prefijo, primero las que tienen más viajes
+     *
+     * @return
+     */
+    List<String> findDestinos(String prefijo, int max);
+
     /**
      * Obtiene el viaje cuyo codigo es @codViaje
      *
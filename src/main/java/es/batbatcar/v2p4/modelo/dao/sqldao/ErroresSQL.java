@@ -0,0 +1,76 @@
+package es.batbatcar.v2p4.modelo.dao.sqldao;
+
+import java.sql.SQLException;
+
+import org.slf4j.LoggerFactory;
+
+import io.micrometer.core.instrument.Metrics;
+
+/**
+ * Registro de los errores SQL que los DAO capturan: se escriben en el log del DAO, con la traza,
+ * y se cuentan en la métrica batbatcar.sql.errores por DAO y SQLState. Los errores de los datos
+ * (ver {@link #esPermanente}) van como WARN y el resto (conexión, bloqueos...) como ERROR
+ */
+final class ErroresSQL {
+
+	private ErroresSQL() {
+	}
+
+	static void registrar(Class<?> dao, SQLException e) {
+		String sqlState = e.getSQLState() == null ? "desconocido" : e.getSQLState();
+		if (esPermanente(e)) {
+			LoggerFactory.getLogger(dao).warn("Error SQL {}: {}", sqlState, e.getMessage(), e);
+		} else {
+			LoggerFactory.getLogger(dao).error("Error SQL {}: {}", sqlState, e.getMessage(), e);
+		}
+		Metrics.counter("batbatcar.sql.errores", "dao", dao.getSimpleName(), "sqlState", sqlState).increment();
+	}
+
+	/**
+	 * Indica si el error se debe a los datos (clases 22, datos no válidos, y 23, restricciones) y
+	 * se repetirá al reintentar, a diferencia de los de conexión (08) o de transacción (40)
+	 * @param e
+	 * @return
+	 */
+	static boolean esPermanente(SQLException e) {
+		for (Throwable causa = e; causa != null; causa = causa.getCause()) {
+			if (causa instanceof SQLException) {
+				String sqlState = ((SQLException) causa).getSQLState();
+				if (sqlState != null && (sqlState.startsWith("22") || sqlState.startsWith("23"))) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Indica si el error es una clave primaria o única repetida (1062 en MariaDB, 23505 en el estándar)
+	 * @param e
+	 * @return
+	 */
+	static boolean esClaveDuplicada(SQLException e) {
+		return tieneError(e, 1062, "23505");
+	}
+
+	/**
+	 * Indica si el error es una clave ajena que no existe (1452 en MariaDB, 23506 en el estándar)
+	 * @param e
+	 * @return
+	 */
+	static boolean esClaveAjenaInexistente(SQLException e) {
+		return tieneError(e, 1452, "23506");
+	}
+
+	private static boolean tieneError(SQLException e, int codigoMariaDB, String sqlStateEstandar) {
+		for (Throwable causa = e; causa != null; causa = causa.getCause()) {
+			if (causa instanceof SQLException) {
+				SQLException error = (SQLException) causa;
+				if (error.getErrorCode() == codigoMariaDB || sqlStateEstandar.equals(error.getSQLState())) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+}
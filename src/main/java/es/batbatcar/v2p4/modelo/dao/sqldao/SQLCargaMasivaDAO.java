@@ -0,0 +1,319 @@
+package es.batbatcar.v2p4.modelo.dao.sqldao;
+
+import es.batbatcar.v2p4.exceptions.DatabaseConnectionException;
+import es.batbatcar.v2p4.modelo.dto.Reserva;
+import es.batbatcar.v2p4.modelo.dto.viaje.Viaje;
+import es.batbatcar.v2p4.modelo.services.InformeImportacion;
+import es.batbatcar.v2p4.modelo.services.MariaDBConnection;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Carga masiva de viajes y reservas con sentencias por lotes (addBatch/executeBatch).
+ *
+ * Las filas se envían en lotes de @tamLote y se confirman cada @tamTransaccion filas, de modo
+ * que un fallo sólo deshace la transacción en curso. Los INSERT no llevan IGNORE: si el lote
+ * falla se deshace y se reenvía fila a fila, y las filas que la base de datos no admite (código
+ * repetido, viaje inexistente, datos no válidos) se anotan como rechazadas con su motivo. Los
+ * recuentos de executeBatch no se usan: el conector puede devolver SUCCESS_NO_INFO en todas las
+ * filas de un lote.
+ */
+@Repository
+public class SQLCargaMasivaDAO {
+	private final String VIAJES_TABLE_NAME = "viajes";
+	private final String RESERVAS_TABLE_NAME = "reservas";
+	private final String SECUENCIAS_TABLE_NAME = "secuencias";
+
+	@Autowired
+	private MariaDBConnection mariaDBConnection;
+
+	@Value("${batbatcar.importacion.tam-lote:500}")
+	private int tamLote;
+
+	@Value("${batbatcar.importacion.tam-transaccion:5000}")
+	private int tamTransaccion;
+
+	/**
+	 * Abre una carga de viajes. Debe cerrarse para enviar y confirmar las últimas filas
+	 * @param informe donde se anotan las filas importadas y rechazadas
+	 * @return
+	 */
+	public Carga<Viaje> cargarViajes(InformeImportacion informe) {
+		return new CargaViajes(informe);
+	}
+
+	/**
+	 * Abre una carga de reservas. Debe cerrarse para enviar y confirmar las últimas filas
+	 * @param informe donde se anotan las filas importadas y rechazadas
+	 * @return
+	 */
+	public Carga<Reserva> cargarReservas(InformeImportacion informe) {
+		return new CargaReservas(informe);
+	}
+
+	public abstract class Carga<T> implements AutoCloseable {
+		private final Connection connection;
+		private final PreparedStatement statement;
+		private final InformeImportacion informe;
+		private final List<T> lote;
+		private final List<Integer> filasLote;
+		private int sinConfirmar;
+		private int importadasSinConfirmar;
+
+		protected Carga(String sql, InformeImportacion informe) {
+			this.informe = informe;
+			this.lote = new ArrayList<>(tamLote);
+			this.filasLote = new ArrayList<>(tamLote);
+			this.connection = mariaDBConnection.getConnection();
+			try {
+				connection.setAutoCommit(false);
+				this.statement = connection.prepareStatement(sql);
+			} catch (SQLException e) {
+				ErroresSQL.registrar(SQLCargaMasivaDAO.class, e);
+				cerrarConexion();
+				throw new DatabaseConnectionException(e.getMessage());
+			}
+		}
+
+		protected abstract void enlazar(PreparedStatement statement, T elemento) throws SQLException;
+
+		/**
+		 * Se llama con cada elemento añadido para llevar la cuenta de las secuencias que
+		 * hay que ajustar antes de confirmar
+		 */
+		protected abstract void registrar(T elemento);
+
+		protected abstract void antesDeConfirmar(Connection connection) throws SQLException;
+
+		protected abstract String motivoDuplicada();
+
+		/**
+		 * Motivo con el que se rechaza una fila que la base de datos no ha admitido
+		 * @param e
+		 * @return
+		 */
+		protected String motivo(SQLException e) {
+			return ErroresSQL.esClaveDuplicada(e) ? motivoDuplicada() : e.getMessage();
+		}
+
+		/**
+		 * Añade un elemento a la carga. Se envía a la base de datos cuando se completa su lote
+		 * @param fila número de fila en la entrada, para el informe
+		 * @param elemento
+		 */
+		public void add(int fila, T elemento) {
+			try {
+				enlazar(statement, elemento);
+				statement.addBatch();
+			} catch (SQLException e) {
+				informe.rechazar(fila, e.getMessage());
+				return;
+			}
+			lote.add(elemento);
+			filasLote.add(fila);
+			registrar(elemento);
+
+			if (lote.size() >= tamLote) {
+				ejecutarLote();
+			}
+		}
+
+		private void ejecutarLote() {
+			Savepoint savepoint = null;
+			try {
+				savepoint = connection.setSavepoint();
+				statement.executeBatch();
+				importadasSinConfirmar += lote.size();
+			} catch (SQLException e) {
+				ErroresSQL.registrar(SQLCargaMasivaDAO.class, e);
+				if (!ErroresSQL.esPermanente(e)) {
+					// Un error de conexión no depende de las filas: reenviarlas una a una no serviría
+					throw new DatabaseConnectionException(e.getMessage());
+				}
+				// Se deshace el lote y se reenvía fila a fila para saber cuáles fallan
+				try {
+					statement.clearBatch();
+					if (savepoint != null) {
+						connection.rollback(savepoint);
+					}
+					ejecutarFilaAFila();
+				} catch (SQLException e2) {
+					ErroresSQL.registrar(SQLCargaMasivaDAO.class, e2);
+					throw new DatabaseConnectionException(e2.getMessage());
+				}
+			}
+
+			sinConfirmar += lote.size();
+			lote.clear();
+			filasLote.clear();
+			if (sinConfirmar >= tamTransaccion) {
+				confirmar();
+			}
+		}
+
+		private void ejecutarFilaAFila() throws SQLException {
+			for (int i = 0; i < lote.size(); i++) {
+				Savepoint savepoint = connection.setSavepoint();
+				try {
+					enlazar(statement, lote.get(i));
+					statement.executeUpdate();
+					importadasSinConfirmar++;
+				} catch (SQLException e) {
+					if (!ErroresSQL.esPermanente(e)) {
+						throw e;
+					}
+					connection.rollback(savepoint);
+					informe.rechazar(filasLote.get(i), motivo(e));
+				}
+			}
+		}
+
+		private void confirmar() {
+			try {
+				antesDeConfirmar(connection);
+				connection.commit();
+			} catch (SQLException e) {
+				ErroresSQL.registrar(SQLCargaMasivaDAO.class, e);
+				throw new DatabaseConnectionException(e.getMessage());
+			}
+			informe.importadas(importadasSinConfirmar);
+			importadasSinConfirmar = 0;
+			sinConfirmar = 0;
+		}
+
+		/**
+		 * Envía el último lote, confirma y devuelve la conexión al pool
+		 */
+		@Override
+		public void close() {
+			try {
+				if (!lote.isEmpty()) {
+					ejecutarLote();
+				}
+				confirmar();
+			} finally {
+				try {
+					statement.close();
+				} catch (SQLException e) {
+					ErroresSQL.registrar(SQLCargaMasivaDAO.class, e);
+				}
+				cerrarConexion();
+			}
+		}
+
+		private void cerrarConexion() {
+			try {
+				// setAutoCommit(true) confirmaría lo que quede de una carga que ha fallado
+				connection.rollback();
+				connection.setAutoCommit(true);
+				connection.close();
+			} catch (SQLException e) {
+				ErroresSQL.registrar(SQLCargaMasivaDAO.class, e);
+			}
+		}
+	}
+
+	private class CargaViajes extends Carga<Viaje> {
+		private int maxCodViaje;
+
+		private CargaViajes(InformeImportacion informe) {
+			super("INSERT INTO " + VIAJES_TABLE_NAME
+					+ " (codViaje, propietario, ruta, fechaSalida, duracion, precio, plazasOfertadas, estadoViaje)"
+					+ " VALUES (?, ?, ?, ?, ?, ?, ?, ?)", informe);
+		}
+
+		@Override
+		protected void enlazar(PreparedStatement statement, Viaje viaje) throws SQLException {
+			statement.setInt(1, viaje.getCodViaje());
+			statement.setString(2, viaje.getPropietario());
+			statement.setString(3, viaje.getRuta());
+			statement.setTimestamp(4, Timestamp.valueOf(viaje.getFechaSalida()));
+			statement.setLong(5, viaje.getDuracion());
+			statement.setFloat(6, viaje.getPrecio());
+			statement.setInt(7, viaje.getPlazasOfertadas());
+			statement.setString(8, viaje.getEstado().name());
+		}
+
+		@Override
+		protected void registrar(Viaje viaje) {
+			maxCodViaje = Math.max(maxCodViaje, viaje.getCodViaje());
+		}
+
+		@Override
+		protected void antesDeConfirmar(Connection connection) throws SQLException {
+			// La secuencia de códigos no puede entregar un código importado
+			String sql = "UPDATE " + SECUENCIAS_TABLE_NAME + " SET valor = GREATEST(valor, ?) WHERE nombre = ?";
+			try (PreparedStatement statement = connection.prepareStatement(sql)) {
+				statement.setInt(1, maxCodViaje);
+				statement.setString(2, VIAJES_TABLE_NAME);
+				statement.executeUpdate();
+			}
+		}
+
+		@Override
+		protected String motivoDuplicada() {
+			return "Ya existe un viaje con ese código";
+		}
+	}
+
+	private class CargaReservas extends Carga<Reserva> {
+		private final Map<Integer, Integer> maxNumReservaPorViaje = new HashMap<>();
+
+		private CargaReservas(InformeImportacion informe) {
+			super("INSERT INTO " + RESERVAS_TABLE_NAME
+					+ " (codigoReserva, usuario, plazasSolicitadas, fechaRealizacion, viaje)"
+					+ " VALUES (?, ?, ?, ?, ?)", informe);
+		}
+
+		@Override
+		protected void enlazar(PreparedStatement statement, Reserva reserva) throws SQLException {
+			statement.setString(1, reserva.getCodigoReserva());
+			statement.setString(2, reserva.getUsuario());
+			statement.setInt(3, reserva.getPlazasSolicitadas());
+			statement.setTimestamp(4, Timestamp.valueOf(reserva.getFechaRealizacion()));
+			statement.setInt(5, reserva.getCodigoViaje());
+		}
+
+		@Override
+		protected void registrar(Reserva reserva) {
+			maxNumReservaPorViaje.merge(reserva.getCodigoViaje(), reserva.getNumReserva(), Math::max);
+		}
+
+		@Override
+		protected void antesDeConfirmar(Connection connection) throws SQLException {
+			// La secuencia de reservas de cada viaje no puede entregar un número importado
+			String sql = "UPDATE " + VIAJES_TABLE_NAME + " SET ultimaReserva = GREATEST(ultimaReserva, ?) WHERE codViaje = ?";
+			try (PreparedStatement statement = connection.prepareStatement(sql)) {
+				for (Map.Entry<Integer, Integer> entrada : maxNumReservaPorViaje.entrySet()) {
+					statement.setInt(1, entrada.getValue());
+					statement.setInt(2, entrada.getKey());
+					statement.addBatch();
+				}
+				statement.executeBatch();
+			}
+			maxNumReservaPorViaje.clear();
+		}
+
+		@Override
+		protected String motivoDuplicada() {
+			return "Ya existe una reserva con ese código";
+		}
+
+		@Override
+		protected String motivo(SQLException e) {
+			return ErroresSQL.esClaveAjenaInexistente(e) ? "El viaje de la reserva no existe" : super.motivo(e);
+		}
+	}
+}
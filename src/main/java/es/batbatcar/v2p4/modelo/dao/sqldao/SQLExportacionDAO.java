@@ -0,0 +1,113 @@
+package es.batbatcar.v2p4.modelo.dao.sqldao;
+
+import es.batbatcar.v2p4.exceptions.DatabaseConnectionException;
+import es.batbatcar.v2p4.modelo.services.MariaDBConnection;
+import es.batbatcar.v2p4.utils.EscritorFilas;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Repository;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Exportación de las tablas de viajes y reservas fila a fila.
+ *
+ * Las consultas usan un cursor de sólo avance que trae @fetchSize filas en cada viaje a la base
+ * de datos, y cada fila se escribe en cuanto se lee, así que la memoria usada no depende del
+ * tamaño de la tabla. Las columnas son las mismas que acepta la importación.
+ */
+@Repository
+public class SQLExportacionDAO {
+	private final String VIAJES_TABLE_NAME = "viajes";
+	private final String RESERVAS_TABLE_NAME = "reservas";
+
+	public static final String[] COLUMNAS_VIAJES = {
+			"codViaje", "propietario", "ruta", "fechaSalida", "duracion", "precio", "plazasOfertadas", "estadoViaje" };
+	public static final String[] COLUMNAS_RESERVAS = {
+			"codigoReserva", "usuario", "plazasSolicitadas", "fechaRealizacion", "viaje" };
+
+	private static final DateTimeFormatter FORMATO_FECHA = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
+
+	@Autowired
+	private MariaDBConnection mariaDBConnection;
+
+	@Value("${batbatcar.exportacion.fetch-size:1000}")
+	private int fetchSize;
+
+	/**
+	 * Escribe todos los viajes en @escritor, ordenados por código
+	 * @param escritor abierto con {@link #COLUMNAS_VIAJES}
+	 * @throws IOException si falla la escritura (por ejemplo, el cliente ha cortado la descarga)
+	 */
+	public void exportarViajes(EscritorFilas escritor) throws IOException {
+		String sql = "SELECT codViaje, propietario, ruta, fechaSalida, duracion, precio, plazasOfertadas, estadoViaje FROM "
+				+ VIAJES_TABLE_NAME + " ORDER BY codViaje";
+		
+		try (
+				Connection connection = mariaDBConnection.getConnection();
+				PreparedStatement statement = abrirCursor(connection, sql);
+				ResultSet rs = statement.executeQuery();
+			) {
+			while (rs.next()) {
+				escritor.fila(
+						rs.getInt(1),
+						rs.getString(2),
+						rs.getString(3),
+						formatear(rs.getTimestamp(4)),
+						rs.getLong(5),
+						rs.getFloat(6),
+						rs.getInt(7),
+						rs.getString(8));
+			}
+		} catch (SQLException e) {
+			ErroresSQL.registrar(getClass(), e);
+			throw new DatabaseConnectionException(e.getMessage());
+		}
+	}
+
+	/**
+	 * Escribe todas las reservas en @escritor, ordenadas por viaje y número de reserva (1-2 antes que 1-10)
+	 * @param escritor abierto con {@link #COLUMNAS_RESERVAS}
+	 * @throws IOException si falla la escritura (por ejemplo, el cliente ha cortado la descarga)
+	 */
+	public void exportarReservas(EscritorFilas escritor) throws IOException {
+		String sql = "SELECT codigoReserva, usuario, plazasSolicitadas, fechaRealizacion, viaje FROM "
+				+ RESERVAS_TABLE_NAME + " ORDER BY viaje, numReserva";
+		
+		try (
+				Connection connection = mariaDBConnection.getConnection();
+				PreparedStatement statement = abrirCursor(connection, sql);
+				ResultSet rs = statement.executeQuery();
+			) {
+			while (rs.next()) {
+				escritor.fila(
+						rs.getString(1),
+						rs.getString(2),
+						rs.getInt(3),
+						formatear(rs.getTimestamp(4)),
+						rs.getInt(5));
+			}
+		} catch (SQLException e) {
+			ErroresSQL.registrar(getClass(), e);
+			throw new DatabaseConnectionException(e.getMessage());
+		}
+	}
+
+	private PreparedStatement abrirCursor(Connection connection, String sql) throws SQLException {
+		PreparedStatement statement = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+		// Con un fetch size positivo el driver lee el resultado por partes en lugar de cargarlo entero
+		statement.setFetchSize(fetchSize);
+		return statement;
+	}
+
+	private static String formatear(Timestamp timestamp) {
+		return timestamp == null ? null : FORMATO_FECHA.format(timestamp.toLocalDateTime());
+	}
+}
@@ -0,0 +1,82 @@
+package es.batbatcar.v2p4.modelo.dao.sqldao;
+
+import es.batbatcar.v2p4.exceptions.DatabaseConnectionException;
+import es.batbatcar.v2p4.modelo.dao.interfaces.GeneradorCodViaje;
+import es.batbatcar.v2p4.modelo.services.MariaDBConnection;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Generador de códigos de viaje hi/lo sobre la tabla de secuencias.
+ *
+ * Cada acceso a la base de datos reserva un bloque de códigos consecutivos que después se
+ * entregan desde memoria. Los códigos de un bloque que no llegan a usarse (por ejemplo, al
+ * reiniciar la aplicación) se pierden, pero nunca se repiten.
+ */
+@Repository
+public class SQLGeneradorCodViaje implements GeneradorCodViaje {
+	private final String TABLE_NAME = "secuencias";
+	private final String SECUENCIA = "viajes";
+
+	@Autowired
+	private MariaDBConnection mariaDBConnection;
+
+	@Value("${batbatcar.ids.bloque:50}")
+	private int tamBloque;
+
+	private int siguiente = 1;
+	private int limite = 0;
+
+	@Override
+	public synchronized int siguiente() {
+		if (siguiente > limite) {
+			reservarBloque();
+		}
+		
+		return siguiente++;
+	}
+
+	/**
+	 * Descarta lo que quede del bloque en curso, de modo que el siguiente código se pida
+	 * a la base de datos. Se usa cuando la secuencia se ha ajustado desde fuera (importaciones)
+	 */
+	public synchronized void descartarBloque() {
+		limite = 0;
+		siguiente = 1;
+	}
+
+	/**
+	 * Avanza la secuencia un bloque entero en una única sentencia. LAST_INSERT_ID(expr) hace que
+	 * el nuevo valor vuelva en la respuesta del UPDATE como clave generada
+	 */
+	private void reservarBloque() {
+		String sql = "UPDATE " + TABLE_NAME + " SET valor = LAST_INSERT_ID(valor + ?) WHERE nombre = ?";
+		
+		try (
+				Connection connection = mariaDBConnection.getConnection();
+				PreparedStatement statement = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
+			) {
+			statement.setInt(1, tamBloque);
+			statement.setString(2, SECUENCIA);
+			if (statement.executeUpdate() == 0) {
+				throw new DatabaseConnectionException("No existe la secuencia " + SECUENCIA);
+			}
+			try (ResultSet rs = statement.getGeneratedKeys()) {
+				rs.next();
+				limite = rs.getInt(1);
+				siguiente = limite - tamBloque + 1;
+			}
+		} catch (SQLException e) {
+			ErroresSQL.registrar(getClass(), e);
+			throw new DatabaseConnectionException(e.getMessage());
+		}
+	}
+}
@@ -1,8 +1,14 @@
 package es.batbatcar.v2p4.modelo.dao.sqldao;
 
+import es.batbatcar.v2p4.exceptions.DatabaseConnectionException;
+import es.batbatcar.v2p4.exceptions.LoteRechazadoException;
 import es.batbatcar.v2p4.exceptions.ReservaAlreadyExistsException;
+import es.batbatcar.v2p4.exceptions.ReservaNoGuardadaException;
+import es.batbatcar.v2p4.exceptions.ReservaNoValidaException;
 import es.batbatcar.v2p4.exceptions.ReservaNotFoundException;
 import es.batbatcar.v2p4.modelo.dto.Reserva;
+import es.batbatcar.v2p4.modelo.dto.Slice;
+import es.batbatcar.v2p4.modelo.dto.SliceRequest;
 import es.batbatcar.v2p4.modelo.dto.viaje.Viaje;
 import es.batbatcar.v2p4.modelo.services.MariaDBConnection;
 import es.batbatcar.v2p4.modelo.dao.interfaces.ReservaDAO;
@@ -11,38 +17,51 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Repository;
 
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.sql.Statement;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.sql.Timestamp;
+import java.time.Clock;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 @Repository
 public class SQLReservaDAO implements ReservaDAO {
 	private final String TABLE_NAME = "reservas";
+	private final String VIAJES_TABLE_NAME = "viajes";
+	// Columnas de una reserva en el orden en que las lee mapToReserva
+	private final String COLUMNAS = "codigoReserva, usuario, plazasSolicitadas, fechaRealizacion";
 
 	@Autowired
 	private MariaDBConnection mariaDBConnection;
 
+	// Hora con la que se comprueba si ha salido el viaje al reservar (puede no estar cerrado todavía)
+	@Autowired
+	private Clock reloj;
+
     @Override
     public Set<Reserva> findAll() {
-    	Connection connection = mariaDBConnection.getConnection();
-    	
-    	String sql = "SELECT * FROM " + TABLE_NAME;
+    	String sql = "SELECT " + COLUMNAS + " FROM " + TABLE_NAME;
     	Set<Reserva> reservas = new HashSet<>();
     	
     	try (
-    			Statement statement = connection.createStatement();
-    			ResultSet rs = statement.executeQuery(sql);
+    			Connection connection = mariaDBConnection.getConnection();
+    			PreparedStatement statement = connection.prepareStatement(sql);
+    			ResultSet rs = statement.executeQuery();
     		) {
     		while(rs.next()) {
     			reservas.add(mapToReserva(rs));
     		}
     	} catch (SQLException e) {
-			System.out.println(e.getMessage());
+			ErroresSQL.registrar(getClass(), e);
 		}
     	
     	return reservas;
@@ -50,19 +69,20 @@ public class SQLReservaDAO implements ReservaDAO {
 
     @Override
     public Reserva findById(String id) {
-    	Connection connection = mariaDBConnection.getConnection();
-    	
-    	String sql = "SELECT * FROM " + TABLE_NAME + " WHERE codigoReserva='" + id + "'";
+    	String sql = "SELECT " + COLUMNAS + " FROM " + TABLE_NAME + " WHERE codigoReserva = ?";
     	
     	try (
-    			Statement statement = connection.createStatement();
-    			ResultSet rs = statement.executeQuery(sql);
+    			Connection connection = mariaDBConnection.getConnection();
+    			PreparedStatement statement = connection.prepareStatement(sql);
     		) {
-    	    if(rs.next()) {
-        	    return mapToReserva(rs);
+    		statement.setString(1, id);
+    		try (ResultSet rs = statement.executeQuery()) {
+    			if(rs.next()) {
+    				return mapToReserva(rs);
+    			}
     		}
     	} catch (SQLException e) {
-			System.out.println(e.getMessage());
+			ErroresSQL.registrar(getClass(), e);
 		}
     	
     	return null;
@@ -70,20 +90,21 @@ public class SQLReservaDAO implements ReservaDAO {
 
     @Override
     public ArrayList<Reserva> findAllByUser(String user) {
-    	Connection connection = mariaDBConnection.getConnection();
-    	
-    	String sql = "SELECT * FROM " + TABLE_NAME + " WHERE usuario='" + user + "'";
+    	String sql = "SELECT " + COLUMNAS + " FROM " + TABLE_NAME + " WHERE usuario = ?";
     	ArrayList<Reserva> reservas = new ArrayList<>();
     	
     	try (
-    			Statement statement = connection.createStatement();
-    			ResultSet rs = statement.executeQuery(sql);
+    			Connection connection = mariaDBConnection.getConnection();
+    			PreparedStatement statement = connection.prepareStatement(sql);
     		) {
-    		while(rs.next()) {
-    			reservas.add(mapToReserva(rs));
+    		statement.setString(1, user);
+    		try (ResultSet rs = statement.executeQuery()) {
+    			while(rs.next()) {
+    				reservas.add(mapToReserva(rs));
+    			}
     		}
     	} catch (SQLException e) {
-			System.out.println(e.getMessage());
+			ErroresSQL.registrar(getClass(), e);
 		}
     	
     	return reservas;
@@ -91,26 +112,71 @@ public class SQLReservaDAO implements ReservaDAO {
 
     @Override
     public ArrayList<Reserva> findAllByTravel(Viaje viaje) {
-    	Connection connection = mariaDBConnection.getConnection();
-    	
-    	String sql = "SELECT * FROM " + TABLE_NAME;
+    	String sql = "SELECT " + COLUMNAS + " FROM " + TABLE_NAME + " WHERE viaje = ?";
     	ArrayList<Reserva> reservas = new ArrayList<>();
     	
     	try (
-    			Statement statement = connection.createStatement();
-    			ResultSet rs = statement.executeQuery(sql);
+    			Connection connection = mariaDBConnection.getConnection();
+    			PreparedStatement statement = connection.prepareStatement(sql);
     		) {
-    		while(rs.next()) {
-    			Reserva reserva = mapToReserva(rs);
-    			if (reserva.perteneceAlViaje(viaje.getCodViaje())) reservas.add(reserva);
+    		statement.setInt(1, viaje.getCodViaje());
+    		try (ResultSet rs = statement.executeQuery()) {
+    			while(rs.next()) {
+    				reservas.add(mapToReserva(rs));
+    			}
     		}
     	} catch (SQLException e) {
-			System.out.println(e.getMessage());
+			ErroresSQL.registrar(getClass(), e);
 		}
     	
     	return reservas;
     }
 
+    @Override
+    public Slice<Reserva> findAllByTravel(Viaje viaje, SliceRequest request) {
+    	// La clave es el número de reserva (columna generada): por codigoReserva, como texto, 1-10
+    	// iría antes que 1-2. El cursor sigue siendo el código de la reserva
+    	Integer cursor = numReservaDe(request.getCursor());
+    	String sql = "SELECT " + COLUMNAS + " FROM " + TABLE_NAME + " WHERE viaje = ?"
+    			+ (cursor == null ? "" : (request.isBackward() ? " AND numReserva < ?" : " AND numReserva > ?"))
+    			+ " ORDER BY numReserva" + (request.isBackward() ? " DESC" : "")
+    			+ " LIMIT ?";
+    	List<Reserva> reservas = new ArrayList<>();
+    	
+    	try (
+    			Connection connection = mariaDBConnection.getConnection();
+    			PreparedStatement statement = connection.prepareStatement(sql);
+    		) {
+    		int i = 1;
+    		statement.setInt(i++, viaje.getCodViaje());
+    		if (cursor != null) {
+    			statement.setInt(i++, cursor);
+    		}
+    		// Se pide una fila de más para saber si hay otra página
+    		statement.setInt(i++, request.getSize() + 1);
+    		try (ResultSet rs = statement.executeQuery()) {
+    			while(rs.next()) {
+    				reservas.add(mapToReserva(rs));
+    			}
+    		}
+    	} catch (SQLException e) {
+			ErroresSQL.registrar(getClass(), e);
+		}
+    	
+    	return Slice.of(reservas, request, Reserva::getCodigoReserva);
+    }
+
+    /**
+     * Número de reserva del cursor @codigoReserva, o null si no hay cursor o no es un código válido
+     */
+    private static Integer numReservaDe(String codigoReserva) {
+    	try {
+    		return codigoReserva == null ? null : Reserva.numReservaDe(codigoReserva);
+    	} catch (IllegalArgumentException e) {
+    		return null;
+    	}
+    }
+
     @Override
     public Reserva getById(String id) throws ReservaNotFoundException {
     	Reserva reserva = findById(id);
@@ -123,139 +189,457 @@ public class SQLReservaDAO implements ReservaDAO {
 
     @Override
     public List<Reserva> findAllBySearchParams(Viaje viaje, String searchParams) {
-    	List<Reserva>reservasViaje = findAllByTravel(viaje);
-		List<Reserva> reservasBuscadas = new ArrayList<>();
-        for (Reserva reserva: reservasViaje) {
-            if (reserva.getUsuario().toLowerCase().contains(searchParams.toLowerCase())
-                    || reserva.getCodigoReserva().contains(searchParams)) {
-                reservasBuscadas.add(reserva);
-            }
-        }
-        return reservasBuscadas;
+    	// La intercalación de la tabla ya no distingue mayúsculas ni acentos
+    	String sql = "SELECT " + COLUMNAS + " FROM " + TABLE_NAME + " WHERE viaje = ? AND (usuario LIKE ? OR codigoReserva LIKE ?)";
+    	List<Reserva> reservas = new ArrayList<>();
+    	
+    	try (
+    			Connection connection = mariaDBConnection.getConnection();
+    			PreparedStatement statement = connection.prepareStatement(sql);
+    		) {
+    		String patron = "%" + escapeLike(searchParams.trim()) + "%";
+    		statement.setInt(1, viaje.getCodViaje());
+    		statement.setString(2, patron);
+    		statement.setString(3, patron);
+    		try (ResultSet rs = statement.executeQuery()) {
+    			while(rs.next()) {
+    				reservas.add(mapToReserva(rs));
+    			}
+    		}
+    	} catch (SQLException e) {
+			ErroresSQL.registrar(getClass(), e);
+		}
+    	
+    	return reservas;
+    }
+
+    @Override
+    public List<Reserva> findAllBySearchParams(String searchParams, int max) {
+    	String sql = "SELECT " + COLUMNAS + " FROM " + TABLE_NAME + " WHERE usuario LIKE ? OR codigoReserva LIKE ?"
+    			+ " ORDER BY viaje, numReserva LIMIT ?";
+    	List<Reserva> reservas = new ArrayList<>();
+    	
+    	try (
+    			Connection connection = mariaDBConnection.getConnection();
+    			PreparedStatement statement = connection.prepareStatement(sql);
+    		) {
+    		String patron = "%" + escapeLike(searchParams.trim()) + "%";
+    		statement.setString(1, patron);
+    		statement.setString(2, patron);
+    		statement.setInt(3, max);
+    		try (ResultSet rs = statement.executeQuery()) {
+    			while(rs.next()) {
+    				reservas.add(mapToReserva(rs));
+    			}
+    		}
+    	} catch (SQLException e) {
+			ErroresSQL.registrar(getClass(), e);
+		}
+    	
+    	return reservas;
+    }
+
+    /**
+     * Obtiene las reservas cuyos códigos son @codigos
+     * @param codigos
+     * @return
+     */
+    public List<Reserva> findAllById(Collection<String> codigos) {
+    	List<Reserva> reservas = new ArrayList<>();
+    	if (codigos.isEmpty()) {
+    		return reservas;
+    	}
+    	String sql = "SELECT " + COLUMNAS + " FROM " + TABLE_NAME + " WHERE codigoReserva IN ("
+    			+ String.join(", ", Collections.nCopies(codigos.size(), "?")) + ")";
+    	
+    	try (
+    			Connection connection = mariaDBConnection.getConnection();
+    			PreparedStatement statement = connection.prepareStatement(sql);
+    		) {
+    		int i = 1;
+    		for (String codigo : codigos) {
+    			statement.setString(i++, codigo);
+    		}
+    		try (ResultSet rs = statement.executeQuery()) {
+    			while(rs.next()) {
+    				reservas.add(mapToReserva(rs));
+    			}
+    		}
+    	} catch (SQLException e) {
+			ErroresSQL.registrar(getClass(), e);
+		}
+    	
+    	return reservas;
+    }
+
+    /**
+     * Obtiene el usuario de cada reserva, para construir el índice de búsqueda
+     * @return Map codigoReserva -> usuario
+     * @throws DatabaseConnectionException si no se puede leer, para no dar por bueno un resultado vacío
+     */
+    public Map<String, String> findAllUsuarios() {
+    	String sql = "SELECT codigoReserva, usuario FROM " + TABLE_NAME;
+    	Map<String, String> usuarios = new HashMap<>();
+    	
+    	try (
+    			Connection connection = mariaDBConnection.getConnection();
+    			PreparedStatement statement = connection.prepareStatement(sql);
+    			ResultSet rs = statement.executeQuery();
+    		) {
+    		while(rs.next()) {
+    			usuarios.put(rs.getString("codigoReserva"), rs.getString("usuario"));
+    		}
+    	} catch (SQLException e) {
+			ErroresSQL.registrar(getClass(), e);
+			throw new DatabaseConnectionException(e.getMessage());
+		}
+    	
+    	return usuarios;
     }
 
     @Override
 	public void add(Reserva reserva) throws ReservaAlreadyExistsException {
-    	Connection connection = mariaDBConnection.getConnection();
+    	String sql = "INSERT INTO " + TABLE_NAME
+    			+ " (codigoReserva, usuario, plazasSolicitadas, fechaRealizacion, viaje)"
+    			+ " VALUES (?, ?, ?, ?, ?)";
+    	// La secuencia del viaje no puede quedar por detrás de una reserva insertada con código propio
+    	String sqlSecuencia = "UPDATE " + VIAJES_TABLE_NAME
+    			+ " SET ultimaReserva = GREATEST(ultimaReserva, ?) WHERE codViaje = ?";
     	
-    	String sql = String.format(
-    			"INSERT INTO %s (codigoReserva, usuario, plazasSolicitadas, fechaRealizacion, viaje)"
-    			+ " VALUES ('%s', '%s', %d, '%s', %d)",
-    			TABLE_NAME,
-    			reserva.getCodigoReserva(),
-    			reserva.getUsuario(),
-    			reserva.getPlazasSolicitadas(),
-    			reserva.getFechaRealizacionFormatted(),
-    			reserva.getViaje().getCodViaje()
-    			);
+    	try (Connection connection = mariaDBConnection.getConnection()) {
+    		connection.setAutoCommit(false);
+    		try (
+    				PreparedStatement statement = connection.prepareStatement(sql);
+    				PreparedStatement secuencia = connection.prepareStatement(sqlSecuencia);
+    			) {
+    			statement.setString(1, reserva.getCodigoReserva());
+    			statement.setString(2, reserva.getUsuario());
+    			statement.setInt(3, reserva.getPlazasSolicitadas());
+    			statement.setTimestamp(4, Timestamp.valueOf(reserva.getFechaRealizacion()));
+    			statement.setInt(5, reserva.getCodigoViaje());
+    			statement.executeUpdate();
+    			
+    			secuencia.setInt(1, reserva.getNumReserva());
+    			secuencia.setInt(2, reserva.getCodigoViaje());
+    			secuencia.executeUpdate();
+    			connection.commit();
+    		} catch (SQLException e) {
+    			connection.rollback();
+    			throw e;
+    		} finally {
+    			connection.setAutoCommit(true);
+    		}
+    	} catch (SQLIntegrityConstraintViolationException e) {
+    		throw new ReservaAlreadyExistsException(reserva);
+    	} catch (SQLException e) {
+			ErroresSQL.registrar(getClass(), e);
+		}
+	}
+	/**
+	 * Inserta @reservas en una sola transacción (group commit) con sentencias por lotes. Las que
+	 * ya existen se saltan, de modo que un lote se puede reenviar sin duplicar reservas; cualquier
+	 * otro error (p.ej. un viaje que no existe) hace fallar el lote
+	 * @param reservas
+	 * @return número de reservas insertadas
+	 * @throws LoteRechazadoException si la base de datos no admite alguna reserva (no se ha insertado ninguna)
+	 * @throws DatabaseConnectionException si no se ha podido confirmar el lote por otro motivo (no se ha insertado ninguna)
+	 */
+	public int addAll(List<Reserva> reservas) {
+    	if (reservas.isEmpty()) {
+    		return 0;
+    	}
+    	// A diferencia de INSERT IGNORE, sólo se pasa por alto la clave duplicada
+    	String sql = "INSERT INTO " + TABLE_NAME
+    			+ " (codigoReserva, usuario, plazasSolicitadas, fechaRealizacion, viaje)"
+    			+ " VALUES (?, ?, ?, ?, ?)"
+    			+ " ON DUPLICATE KEY UPDATE codigoReserva = codigoReserva";
+    	String sqlExistentes = "SELECT codigoReserva FROM " + TABLE_NAME
+    			+ " WHERE codigoReserva IN (" + String.join(", ", Collections.nCopies(reservas.size(), "?")) + ")";
+    	String sqlSecuencia = "UPDATE " + VIAJES_TABLE_NAME
+    			+ " SET ultimaReserva = GREATEST(ultimaReserva, ?) WHERE codViaje = ?";
     	
-    	try (Statement statement = connection.createStatement())
-    	{
-    		int filas = statement.executeUpdate(sql);
-    		if (filas == 0) {
-    			throw new ReservaAlreadyExistsException(reserva);
+    	Map<Integer, Integer> ultimaPorViaje = new HashMap<>();
+    	for (Reserva reserva : reservas) {
+    		ultimaPorViaje.merge(reserva.getCodigoViaje(), reserva.getNumReserva(), Math::max);
+    	}
+    	
+    	try (Connection connection = mariaDBConnection.getConnection()) {
+    		connection.setAutoCommit(false);
+    		try (
+    				PreparedStatement existentes = connection.prepareStatement(sqlExistentes);
+    				PreparedStatement statement = connection.prepareStatement(sql);
+    				PreparedStatement secuencia = connection.prepareStatement(sqlSecuencia);
+    			) {
+    			// Las filas afectadas no distinguen una reserva insertada de una que ya existía (el
+    			// driver devuelve las encontradas), así que las ya insertadas se buscan antes
+    			for (int i = 0; i < reservas.size(); i++) {
+    				existentes.setString(i + 1, reservas.get(i).getCodigoReserva());
+    			}
+    			Set<String> yaInsertadas = new HashSet<>();
+    			try (ResultSet rs = existentes.executeQuery()) {
+    				while (rs.next()) {
+    					yaInsertadas.add(rs.getString("codigoReserva"));
+    				}
+    			}
+    			
+    			int insertadas = 0;
+    			for (Reserva reserva : reservas) {
+    				if (yaInsertadas.contains(reserva.getCodigoReserva())) {
+    					continue;
+    				}
+	    			statement.setString(1, reserva.getCodigoReserva());
+	    			statement.setString(2, reserva.getUsuario());
+	    			statement.setInt(3, reserva.getPlazasSolicitadas());
+	    			statement.setTimestamp(4, Timestamp.valueOf(reserva.getFechaRealizacion()));
+	    			statement.setInt(5, reserva.getCodigoViaje());
+	    			statement.addBatch();
+	    			insertadas++;
+    			}
+    			if (insertadas > 0) {
+    				statement.executeBatch();
+    			}
+    			
+    			for (Map.Entry<Integer, Integer> ultima : ultimaPorViaje.entrySet()) {
+    				secuencia.setInt(1, ultima.getValue());
+    				secuencia.setInt(2, ultima.getKey());
+    				secuencia.addBatch();
+    			}
+    			secuencia.executeBatch();
+    			connection.commit();
+    			return insertadas;
+    		} catch (SQLException e) {
+    			connection.rollback();
+    			throw e;
+    		} finally {
+    			connection.setAutoCommit(true);
     		}
     	} catch (SQLException e) {
-			System.out.println(e.getMessage());
+			ErroresSQL.registrar(getClass(), e);
+			if (ErroresSQL.esPermanente(e)) {
+				throw new LoteRechazadoException(e.getMessage());
+			}
+			throw new DatabaseConnectionException(e.getMessage());
 		}
 	}
+	
+	/**
+	 * Obtiene el número de la última reserva asignada en el viaje (aunque se haya cancelado después)
+	 * @param viaje
+	 * @return
+	 */
+	public int getUltimaReserva(Viaje viaje) {
+		String sql = "SELECT ultimaReserva FROM " + VIAJES_TABLE_NAME + " WHERE codViaje = ?";
+		
+		try (
+				Connection connection = mariaDBConnection.getConnection();
+				PreparedStatement statement = connection.prepareStatement(sql);
+			) {
+			statement.setInt(1, viaje.getCodViaje());
+			try (ResultSet rs = statement.executeQuery()) {
+				return rs.next() ? rs.getInt(1) : 0;
+			}
+		} catch (SQLException e) {
+			ErroresSQL.registrar(getClass(), e);
+			throw new DatabaseConnectionException(e.getMessage());
+		}
+	}
+	
+	@Override
+	public Reserva reservar(Viaje viaje, String usuario, int plazasSolicitadas) throws ReservaNoValidaException {
+		try (Connection connection = mariaDBConnection.getConnection()) {
+			connection.setAutoCommit(false);
+			// Cada consulta de la transacción debe ver las reservas confirmadas por quien tuvo
+			// antes el bloqueo del viaje
+			connection.setTransactionIsolation(Connection.TRANSACTION_READ_COMMITTED);
+			try {
+				Reserva reserva = reservar(connection, viaje, usuario, plazasSolicitadas);
+				connection.commit();
+				return reserva;
+			} catch (SQLException | ReservaNoValidaException e) {
+				connection.rollback();
+				throw e;
+			} finally {
+				connection.setAutoCommit(true);
+			}
+		} catch (SQLException e) {
+			ErroresSQL.registrar(getClass(), e);
+			throw new ReservaNoGuardadaException("Error al guardar la reserva");
+		}
+	}
+	
+	/**
+	 * Realiza la reserva dentro de la transacción abierta en @connection. La fila del viaje
+	 * queda bloqueada hasta el commit, por lo que las reservas del mismo viaje se serializan
+	 */
+	private Reserva reservar(Connection connection, Viaje viaje, String usuario, int plazasSolicitadas)
+			throws SQLException, ReservaNoValidaException {
+		int codViaje = viaje.getCodViaje();
+		String sqlViaje = "SELECT propietario, fechaSalida, plazasOfertadas, estadoViaje, ultimaReserva FROM " + VIAJES_TABLE_NAME
+				+ " WHERE codViaje = ? FOR UPDATE";
+		String sqlReservas = "SELECT COALESCE(SUM(plazasSolicitadas), 0), COALESCE(SUM(usuario = ?), 0)"
+				+ " FROM " + TABLE_NAME + " WHERE viaje = ?";
+		String sqlInsert = "INSERT INTO " + TABLE_NAME
+    			+ " (codigoReserva, usuario, plazasSolicitadas, fechaRealizacion, viaje)"
+    			+ " VALUES (?, ?, ?, ?, ?)";
+		String sqlSecuencia = "UPDATE " + VIAJES_TABLE_NAME + " SET ultimaReserva = ? WHERE codViaje = ?";
+		
+		int plazasOfertadas;
+		int numReserva;
+		try (PreparedStatement statement = connection.prepareStatement(sqlViaje)) {
+			statement.setInt(1, codViaje);
+			try (ResultSet rs = statement.executeQuery()) {
+				if (!rs.next()) {
+					throw new ReservaNoValidaException("El viaje no existe");
+				}
+				if (rs.getString("propietario").equals(usuario)) {
+					throw new ReservaNoValidaException("Eres el propietario del viaje");
+				}
+				if (!"ABIERTO".equals(rs.getString("estadoViaje"))
+						|| rs.getObject("fechaSalida", LocalDateTime.class).isBefore(LocalDateTime.now(reloj))) {
+					throw new ReservaNoValidaException("El viaje está cerrado o cancelado");
+				}
+				plazasOfertadas = rs.getInt("plazasOfertadas");
+				numReserva = rs.getInt("ultimaReserva") + 1;
+			}
+		}
+		
+		try (PreparedStatement statement = connection.prepareStatement(sqlReservas)) {
+			statement.setString(1, usuario);
+			statement.setInt(2, codViaje);
+			try (ResultSet rs = statement.executeQuery()) {
+				rs.next();
+				if (rs.getInt(2) > 0) {
+					throw new ReservaNoValidaException("Ya has realizado una reserva");
+				}
+				if (plazasSolicitadas > plazasOfertadas - rs.getInt(1)) {
+					throw new ReservaNoValidaException("No quedan suficientes plazas");
+				}
+			}
+		}
+		
+		Reserva reserva = new Reserva(codViaje, numReserva, usuario, plazasSolicitadas, viaje);
+		try (PreparedStatement statement = connection.prepareStatement(sqlInsert)) {
+    		statement.setString(1, reserva.getCodigoReserva());
+    		statement.setString(2, reserva.getUsuario());
+    		statement.setInt(3, reserva.getPlazasSolicitadas());
+    		statement.setTimestamp(4, Timestamp.valueOf(reserva.getFechaRealizacion()));
+    		statement.setInt(5, codViaje);
+    		statement.executeUpdate();
+		}
+		try (PreparedStatement statement = connection.prepareStatement(sqlSecuencia)) {
+			statement.setInt(1, numReserva);
+			statement.setInt(2, codViaje);
+			statement.executeUpdate();
+		}
+		
+		return reserva;
+	}
 	@Override
 	public void update(Reserva reserva) throws ReservaNotFoundException {
-    	Connection connection = mariaDBConnection.getConnection();
+    	String sql = "UPDATE " + TABLE_NAME
+    			+ " SET usuario = ?, plazasSolicitadas = ?, fechaRealizacion = ?, viaje = ?"
+    			+ " WHERE codigoReserva = ?";
     	
-    	String sql = String.format(
-    			"UPDATE %s SET usuario='%s', plazasSolicitadas=%d, fechaRealizacion='%s', viaje=%d"
-    	    	+ " WHERE codigoReserva='%s'",
-    	    	TABLE_NAME,
-    			reserva.getUsuario(),
-    			reserva.getPlazasSolicitadas(),
-    			reserva.getFechaRealizacion(),
-    			reserva.getViaje(),
-    			reserva.getCodigoReserva()
-    			);
-    	
-    	try (Statement statement = connection.createStatement())
-    	{
-    		int filas = statement.executeUpdate(sql);
+    	try (
+    			Connection connection = mariaDBConnection.getConnection();
+    			PreparedStatement statement = connection.prepareStatement(sql);
+    		) {
+    		statement.setString(1, reserva.getUsuario());
+    		statement.setInt(2, reserva.getPlazasSolicitadas());
+    		statement.setTimestamp(3, Timestamp.valueOf(reserva.getFechaRealizacion()));
+    		statement.setInt(4, reserva.getCodigoViaje());
+    		statement.setString(5, reserva.getCodigoReserva());
+    		int filas = statement.executeUpdate();
     		if (filas == 0) {
     			throw new ReservaNotFoundException(reserva.getCodigoReserva());
     		}
     	} catch (SQLException e) {
-			System.out.println(e.getMessage());
+			ErroresSQL.registrar(getClass(), e);
 		}
 		
 	}
 	@Override
 	public void remove(Reserva reserva) throws ReservaNotFoundException {
-    	Connection connection = mariaDBConnection.getConnection();
-    	
-    	String sql = "DELETE FROM " + TABLE_NAME + " WHERE codigoReserva='" + reserva.getCodigoReserva() + "'";
+    	String sql = "DELETE FROM " + TABLE_NAME + " WHERE codigoReserva = ?";
     	
-    	try (Statement statement = connection.createStatement())
-    	{
-    		int filas = statement.executeUpdate(sql);
+    	try (
+    			Connection connection = mariaDBConnection.getConnection();
+    			PreparedStatement statement = connection.prepareStatement(sql);
+    		) {
+    		statement.setString(1, reserva.getCodigoReserva());
+    		int filas = statement.executeUpdate();
     		if (filas == 0) {
     			throw new ReservaNotFoundException(reserva.getCodigoReserva());
     		}
     	} catch (SQLException e) {
-			System.out.println(e.getMessage());
+			ErroresSQL.registrar(getClass(), e);
 		}
 		
 	}
 	@Override
 	public int getNumPlazasReservadasEnViaje(Viaje viaje) {
-		Connection connection = mariaDBConnection.getConnection();
-    	
-    	String sql = "SELECT * FROM " + TABLE_NAME;
-    	int numPlazasReservadas = 0;
+    	String sql = "SELECT COALESCE(SUM(plazasSolicitadas), 0) FROM " + TABLE_NAME + " WHERE viaje = ?";
     	
     	try (
-    			Statement statement = connection.createStatement();
-    			ResultSet rs = statement.executeQuery(sql);
+    			Connection connection = mariaDBConnection.getConnection();
+    			PreparedStatement statement = connection.prepareStatement(sql);
     		) {
-    		while(rs.next()) {
-    			Reserva reserva = mapToReserva(rs);
-    			if (reserva.perteneceAlViaje(viaje.getCodViaje())) {
-    				numPlazasReservadas += reserva.getPlazasSolicitadas();
+    		statement.setInt(1, viaje.getCodViaje());
+    		try (ResultSet rs = statement.executeQuery()) {
+    			if (rs.next()) {
+    				return rs.getInt(1);
     			}
     		}
     	} catch (SQLException e) {
-			System.out.println(e.getMessage());
+			ErroresSQL.registrar(getClass(), e);
 		}
     	
-    	return numPlazasReservadas;
+    	return 0;
 	}
 	@Override
 	public Reserva findByUserInTravel(String usuario, Viaje viaje) {
-    	Connection connection = mariaDBConnection.getConnection();
-    	
-    	String sql = "SELECT * FROM " + TABLE_NAME;
+    	String sql = "SELECT " + COLUMNAS + " FROM " + TABLE_NAME + " WHERE viaje = ? AND usuario = ?";
     	
     	try (
-    			Statement statement = connection.createStatement();
-    			ResultSet rs = statement.executeQuery(sql);
+    			Connection connection = mariaDBConnection.getConnection();
+    			PreparedStatement statement = connection.prepareStatement(sql);
     		) {
-    		while(rs.next()) {
-    			Reserva reserva = mapToReserva(rs);
-    			if (reserva.perteneceAlViaje(viaje.getCodViaje()) && viaje.getPropietario().equals(usuario)) {
-    				return reserva;
+    		statement.setInt(1, viaje.getCodViaje());
+    		statement.setString(2, usuario);
+    		try (ResultSet rs = statement.executeQuery()) {
+    			if (rs.next()) {
+    				return mapToReserva(rs);
     			}
     		}
     	} catch (SQLException e) {
-			System.out.println(e.getMessage());
+			ErroresSQL.registrar(getClass(), e);
 		}
     	
     	return null;
 	}
 	
+	/**
+	 * Escapa los comodines de LIKE para que @texto se busque de forma literal
+	 * @param texto
+	 * @return
+	 */
+	private String escapeLike(String texto) {
+		return texto.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+	}
+	
+	/**
+	 * Lee la reserva de la fila actual de @rs, que trae las columnas de COLUMNAS. El viaje no se
+	 * carga: la reserva sólo guarda su código (sacado del código de la reserva)
+	 * @param rs
+	 * @return
+	 * @throws SQLException
+	 */
 	private Reserva mapToReserva(ResultSet rs) throws SQLException {
-    	String codigoReserva = rs.getString("codigoReserva");
-    	String usuario = rs.getString("usuario");
-    	int plazasSolicitadas = rs.getInt("plazasSolicitadas");
-    	LocalDateTime fechaRealizacion = rs.getTimestamp("fechaRealizacion").toLocalDateTime();
-    	int idViaje = rs.getInt("viaje");
+    	String codigoReserva = rs.getString(1);
+    	String usuario = rs.getString(2);
+    	int plazasSolicitadas = rs.getInt(3);
+    	LocalDateTime fechaRealizacion = rs.getObject(4, LocalDateTime.class);
     	
-	    Viaje viaje = new Viaje(idViaje);
-	    return new Reserva(codigoReserva, usuario, plazasSolicitadas, fechaRealizacion, viaje);
+	    return new Reserva(codigoReserva, usuario, plazasSolicitadas, fechaRealizacion, null);
     }
 }
@@ -1,46 +1,63 @@
 package es.batbatcar.v2p4.modelo.dao.sqldao;
 
 
+import es.batbatcar.v2p4.exceptions.DatabaseConnectionException;
 import es.batbatcar.v2p4.exceptions.ViajeAlreadyExistsException;
 import es.batbatcar.v2p4.exceptions.ViajeNotFoundException;
 import es.batbatcar.v2p4.modelo.services.MariaDBConnection;
 import es.batbatcar.v2p4.modelo.dao.interfaces.ViajeDAO;
+import es.batbatcar.v2p4.modelo.dto.Slice;
+import es.batbatcar.v2p4.modelo.dto.SliceRequest;
 import es.batbatcar.v2p4.modelo.dto.viaje.*;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Repository;
 
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.sql.Statement;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.sql.Timestamp;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 @Repository
 public class SQLViajeDAO implements ViajeDAO {
 	private final String TABLE_NAME = "viajes";
+	private final String RESERVAS_TABLE_NAME = "reservas";
+	// Columnas de un viaje en el orden en que las lee mapToViaje
+	private final String COLUMNAS = "codViaje, propietario, ruta, fechaSalida, duracion, precio, plazasOfertadas, estadoViaje";
+	private final String COLUMNAS_V = "v." + COLUMNAS.replace(", ", ", v.");
+	private final int NUM_COLUMNAS = 8;
+	// Códigos por sentencia al cerrar: un IN con más de 65535 marcadores no se puede preparar
+	private final int MAX_CODIGOS_CIERRE = 500;
 
 	@Autowired
     private MariaDBConnection mariaDBConnection;
 
     @Override
     public Set<Viaje> findAll() {
-    	Connection connection = mariaDBConnection.getConnection();
-    	
-    	String sql = "SELECT * FROM " + TABLE_NAME;
+    	String sql = "SELECT " + COLUMNAS + " FROM " + TABLE_NAME;
     	Set<Viaje> viajes = new HashSet<>();
     	
     	try (
-    			Statement statement = connection.createStatement();
-    			ResultSet rs = statement.executeQuery(sql);
+    			Connection connection = mariaDBConnection.getConnection();
+    			PreparedStatement statement = connection.prepareStatement(sql);
+    			ResultSet rs = statement.executeQuery();
     		) {
     		while(rs.next()) {
     			viajes.add(mapToViaje(rs));
     		}
     	} catch (SQLException e) {
-			System.out.println(e.getMessage());
+			ErroresSQL.registrar(getClass(), e);
 		}
     	
     	return viajes;
@@ -48,21 +65,54 @@ public class SQLViajeDAO implements ViajeDAO {
 
     @Override
     public Set<Viaje> findAll(String city) {
-    	Connection connection = mariaDBConnection.getConnection();
+    	// destino es una columna generada e indexada con la última ciudad de la ruta
+    	String sql = "SELECT " + COLUMNAS + " FROM " + TABLE_NAME + " WHERE destino LIKE ?";
+    	Set<Viaje> viajes = new HashSet<>();
     	
-    	String sql = "SELECT * FROM " + TABLE_NAME;
+    	try (
+    			Connection connection = mariaDBConnection.getConnection();
+    			PreparedStatement statement = connection.prepareStatement(sql);
+    		) {
+    		statement.setString(1, escapeLike(city.trim()) + "%");
+    		try (ResultSet rs = statement.executeQuery()) {
+    			while(rs.next()) {
+    				viajes.add(mapToViaje(rs));
+    			}
+    		}
+    	} catch (SQLException e) {
+			ErroresSQL.registrar(getClass(), e);
+		}
+    	
+    	return viajes;
+    }
+
+    /**
+     * Obtiene los viajes cuyo destino es exactamente alguno de @destinos
+     * @param destinos
+     * @return
+     */
+    public Set<Viaje> findAll(Collection<String> destinos) {
     	Set<Viaje> viajes = new HashSet<>();
+    	if (destinos.isEmpty()) {
+    		return viajes;
+    	}
+    	String sql = "SELECT " + COLUMNAS + " FROM " + TABLE_NAME + " WHERE destino IN (" + marcadores(destinos.size()) + ")";
     	
     	try (
-    			Statement statement = connection.createStatement();
-    			ResultSet rs = statement.executeQuery(sql);
+    			Connection connection = mariaDBConnection.getConnection();
+    			PreparedStatement statement = connection.prepareStatement(sql);
     		) {
-    		while(rs.next()) {
-        	    Viaje viaje = mapToViaje(rs);
-        	    if (viaje.tieneEstaCiudadDestino(city)) viajes.add(viaje);
+    		int i = 1;
+    		for (String destino : destinos) {
+    			statement.setString(i++, destino);
+    		}
+    		try (ResultSet rs = statement.executeQuery()) {
+    			while(rs.next()) {
+    				viajes.add(mapToViaje(rs));
+    			}
     		}
     	} catch (SQLException e) {
-			System.out.println(e.getMessage());
+			ErroresSQL.registrar(getClass(), e);
 		}
     	
     	return viajes;
@@ -70,21 +120,21 @@ public class SQLViajeDAO implements ViajeDAO {
 
     @Override
     public Set<Viaje> findAll(EstadoViaje estadoViajeEsperado) {
-    	Connection connection = mariaDBConnection.getConnection();
-    	
-    	String sql = "SELECT * FROM " + TABLE_NAME;
+    	String sql = "SELECT " + COLUMNAS + " FROM " + TABLE_NAME + " WHERE estadoViaje = ?";
     	Set<Viaje> viajes = new HashSet<>();
     	
     	try (
-    			Statement statement = connection.createStatement();
-    			ResultSet rs = statement.executeQuery(sql);
+    			Connection connection = mariaDBConnection.getConnection();
+    			PreparedStatement statement = connection.prepareStatement(sql);
     		) {
-    		while(rs.next()) {
-    			Viaje viaje = mapToViaje(rs);
-        	    if (viaje.tieneEsteEstado(estadoViajeEsperado)) viajes.add(viaje);
+    		statement.setString(1, estadoViajeEsperado.name());
+    		try (ResultSet rs = statement.executeQuery()) {
+    			while(rs.next()) {
+    				viajes.add(mapToViaje(rs));
+    			}
     		}
     	} catch (SQLException e) {
-			System.out.println(e.getMessage());
+			ErroresSQL.registrar(getClass(), e);
 		}
     	
     	return viajes;
@@ -92,41 +142,257 @@ public class SQLViajeDAO implements ViajeDAO {
 
     @Override
     public Set<Viaje> findAll(Class<? extends Viaje> viajeClass) {
-    	Connection connection = mariaDBConnection.getConnection();
+    	// La tabla sólo almacena viajes de la clase Viaje, no hace falta consultar para el resto
+    	if (viajeClass != Viaje.class) {
+    		return new HashSet<>();
+    	}
     	
-    	String sql = "SELECT * FROM " + TABLE_NAME;
-    	Set<Viaje> viajes = new HashSet<>();
+    	return findAll();
+    }
+
+    @Override
+    public List<ViajeResumen> findAllResumenes() {
+    	return findResumenes(null, null, null, false, 0);
+    }
+
+    @Override
+    public List<ViajeResumen> findAllResumenes(String city) {
+    	return findResumenes(city, null, null, false, 0);
+    }
+
+    /**
+     * Obtiene los viajes cuyo destino es exactamente alguno de @destinos junto con el número de reservas y de plazas reservadas
+     * @param destinos
+     * @return
+     */
+    public List<ViajeResumen> findAllResumenes(Collection<String> destinos) {
+    	if (destinos.isEmpty()) {
+    		return new ArrayList<>();
+    	}
+    	return findResumenes(null, destinos, null, false, 0);
+    }
+
+    @Override
+    public Slice<ViajeResumen> findResumenes(String city, SliceRequest request) {
+    	// Se pide una fila de más para saber si hay otra página
+    	List<ViajeResumen> filas = findResumenes(city, null, request.getCursorAsInt(), request.isBackward(), request.getSize() + 1);
+    	return Slice.of(filas, request, resumen -> String.valueOf(resumen.getViaje().getCodViaje()));
+    }
+
+    /**
+     * Obtiene una página de los viajes cuyo destino es exactamente alguno de @destinos
+     * @param destinos
+     * @param request
+     * @return
+     */
+    public Slice<ViajeResumen> findResumenes(Collection<String> destinos, SliceRequest request) {
+    	List<ViajeResumen> filas = destinos.isEmpty()
+    			? new ArrayList<>()
+    			: findResumenes(null, destinos, request.getCursorAsInt(), request.isBackward(), request.getSize() + 1);
+    	return Slice.of(filas, request, resumen -> String.valueOf(resumen.getViaje().getCodViaje()));
+    }
+
+    /**
+     * Obtiene en una sola consulta los viajes (filtrados por destino si @city o @destinos no son null)
+     * con el recuento de reservas y plazas reservadas.
+     * Si @cursor no es null sólo se obtienen los viajes posteriores (o anteriores si @backward) a ese código,
+     * y si @limit es mayor que 0 como mucho @limit viajes
+     * @param city
+     * @param destinos
+     * @param cursor
+     * @param backward
+     * @param limit
+     * @return
+     */
+    private List<ViajeResumen> findResumenes(String city, Collection<String> destinos, Integer cursor, boolean backward, int limit) {
+    	List<String> condiciones = new ArrayList<>();
+    	if (city != null) {
+    		condiciones.add("v.destino LIKE ?");
+    	}
+    	if (destinos != null) {
+    		condiciones.add("v.destino IN (" + marcadores(destinos.size()) + ")");
+    	}
+    	if (cursor != null) {
+    		condiciones.add(backward ? "v.codViaje < ?" : "v.codViaje > ?");
+    	}
+    	
+    	String sql = "SELECT " + COLUMNAS_V + ", COUNT(r.codigoReserva) AS numReservas,"
+    			+ " COALESCE(SUM(r.plazasSolicitadas), 0) AS plazasReservadas"
+    			+ " FROM " + TABLE_NAME + " v LEFT JOIN " + RESERVAS_TABLE_NAME + " r ON r.viaje = v.codViaje"
+    			+ (condiciones.isEmpty() ? "" : " WHERE " + String.join(" AND ", condiciones))
+    			+ " GROUP BY v.codViaje ORDER BY v.codViaje" + (backward ? " DESC" : "")
+    			+ (limit > 0 ? " LIMIT ?" : "");
+    	List<ViajeResumen> resumenes = new ArrayList<>();
+    	
+    	try (
+    			Connection connection = mariaDBConnection.getConnection();
+    			PreparedStatement statement = connection.prepareStatement(sql);
+    		) {
+    		int i = 1;
+    		if (city != null) {
+    			statement.setString(i++, escapeLike(city.trim()) + "%");
+    		}
+    		if (destinos != null) {
+    			for (String destino : destinos) {
+    				statement.setString(i++, destino);
+    			}
+    		}
+    		if (cursor != null) {
+    			statement.setInt(i++, cursor);
+    		}
+    		if (limit > 0) {
+    			statement.setInt(i++, limit);
+    		}
+    		try (ResultSet rs = statement.executeQuery()) {
+    			while(rs.next()) {
+    				resumenes.add(new ViajeResumen(mapToViaje(rs), rs.getInt(NUM_COLUMNAS + 1), rs.getInt(NUM_COLUMNAS + 2)));
+    			}
+    		}
+    	} catch (SQLException e) {
+			ErroresSQL.registrar(getClass(), e);
+		}
+    	
+    	return resumenes;
+    }
+
+    @Override
+    public List<String> findDestinos(String prefijo, int max) {
+    	String sql = "SELECT destino, COUNT(*) AS numViajes FROM " + TABLE_NAME
+    			+ " WHERE destino LIKE ? GROUP BY destino ORDER BY numViajes DESC, destino LIMIT ?";
+    	List<String> destinos = new ArrayList<>();
     	
     	try (
-    			Statement statement = connection.createStatement();
-    			ResultSet rs = statement.executeQuery(sql);
+    			Connection connection = mariaDBConnection.getConnection();
+    			PreparedStatement statement = connection.prepareStatement(sql);
+    		) {
+    		statement.setString(1, escapeLike(prefijo.trim()) + "%");
+    		statement.setInt(2, max);
+    		try (ResultSet rs = statement.executeQuery()) {
+    			while(rs.next()) {
+    				destinos.add(rs.getString("destino"));
+    			}
+    		}
+    	} catch (SQLException e) {
+			ErroresSQL.registrar(getClass(), e);
+		}
+    	
+    	return destinos;
+    }
+
+    /**
+     * Obtiene el destino de cada viaje (sólo lee el índice de la columna destino)
+     * @return Map codViaje -> destino
+     * @throws DatabaseConnectionException si no se puede leer, para no dar por bueno un resultado vacío
+     */
+    public Map<Integer, String> findAllDestinos() {
+    	String sql = "SELECT codViaje, destino FROM " + TABLE_NAME;
+    	Map<Integer, String> destinos = new HashMap<>();
+    	
+    	try (
+    			Connection connection = mariaDBConnection.getConnection();
+    			PreparedStatement statement = connection.prepareStatement(sql);
+    			ResultSet rs = statement.executeQuery();
     		) {
     		while(rs.next()) {
-    			Viaje viaje = mapToViaje(rs);
-        	    if (viaje.getClass() == viajeClass) viajes.add(viaje);
+    			destinos.put(rs.getInt("codViaje"), rs.getString("destino"));
     		}
     	} catch (SQLException e) {
-			System.out.println(e.getMessage());
+			ErroresSQL.registrar(getClass(), e);
+			throw new DatabaseConnectionException(e.getMessage());
 		}
     	
-    	return viajes;
+    	return destinos;
+    }
+
+    /**
+     * Obtiene la fecha de salida de cada viaje abierto
+     * @return Map codViaje -> fechaSalida
+     * @throws DatabaseConnectionException si no se puede leer
+     */
+    public Map<Integer, LocalDateTime> findSalidasAbiertos() {
+    	String sql = "SELECT codViaje, fechaSalida FROM " + TABLE_NAME + " WHERE estadoViaje = ?";
+    	Map<Integer, LocalDateTime> salidas = new HashMap<>();
+    	
+    	try (
+    			Connection connection = mariaDBConnection.getConnection();
+    			PreparedStatement statement = connection.prepareStatement(sql);
+    		) {
+    		statement.setString(1, EstadoViaje.ABIERTO.name());
+    		try (ResultSet rs = statement.executeQuery()) {
+    			while(rs.next()) {
+    				salidas.put(rs.getInt(1), rs.getObject(2, LocalDateTime.class));
+    			}
+    		}
+    	} catch (SQLException e) {
+			ErroresSQL.registrar(getClass(), e);
+			throw new DatabaseConnectionException(e.getMessage());
+		}
+    	
+    	return salidas;
+    }
+
+    /**
+     * Pasa a CERRADO los viajes @codigos que siguen abiertos y han salido antes de @ahora, con una
+     * sentencia por cada bloque de MAX_CODIGOS_CIERRE códigos. Cada bloque se confirma por separado:
+     * si uno falla, los anteriores quedan cerrados y repetir el cierre no les afecta
+     * @param codigos
+     * @param ahora
+     * @return número de viajes cerrados
+     * @throws DatabaseConnectionException si no se han podido cerrar
+     */
+    public int cerrar(Collection<Integer> codigos, LocalDateTime ahora) {
+    	if (codigos.isEmpty()) {
+    		return 0;
+    	}
+    	List<Integer> pendientes = new ArrayList<>(codigos);
+    	int numCerrados = 0;
+    	
+    	try (Connection connection = mariaDBConnection.getConnection()) {
+    		for (int desde = 0; desde < pendientes.size(); desde += MAX_CODIGOS_CIERRE) {
+    			List<Integer> bloque = pendientes.subList(desde, Math.min(desde + MAX_CODIGOS_CIERRE, pendientes.size()));
+    			numCerrados += cerrar(connection, bloque, ahora);
+    		}
+    	} catch (SQLException e) {
+			ErroresSQL.registrar(getClass(), e);
+			throw new DatabaseConnectionException(e.getMessage());
+		}
+    	
+    	return numCerrados;
+    }
+
+    private int cerrar(Connection connection, List<Integer> codigos, LocalDateTime ahora) throws SQLException {
+    	// La condición de la fecha evita cerrar un viaje cuya salida se acaba de cambiar
+    	String sql = "UPDATE " + TABLE_NAME + " SET estadoViaje = ?"
+    			+ " WHERE estadoViaje = ? AND fechaSalida < ? AND codViaje IN (" + marcadores(codigos.size()) + ")";
+    	
+    	try (PreparedStatement statement = connection.prepareStatement(sql)) {
+    		statement.setString(1, EstadoViaje.CERRADO.name());
+    		statement.setString(2, EstadoViaje.ABIERTO.name());
+    		statement.setTimestamp(3, Timestamp.valueOf(ahora));
+    		int i = 4;
+    		for (int codViaje : codigos) {
+    			statement.setInt(i++, codViaje);
+    		}
+    		return statement.executeUpdate();
+    	}
     }
 
     @Override
     public Viaje findById(int codViaje) {
-    	Connection connection = mariaDBConnection.getConnection();
-    	
-    	String sql = "SELECT * FROM " + TABLE_NAME + " WHERE codViaje=" + codViaje;
+    	String sql = "SELECT " + COLUMNAS + " FROM " + TABLE_NAME + " WHERE codViaje = ?";
     	
     	try (
-    			Statement statement = connection.createStatement();
-    			ResultSet rs = statement.executeQuery(sql);
+    			Connection connection = mariaDBConnection.getConnection();
+    			PreparedStatement statement = connection.prepareStatement(sql);
     		) {
-    	    if(rs.next()) {
-        	    return mapToViaje(rs);
+    		statement.setInt(1, codViaje);
+    		try (ResultSet rs = statement.executeQuery()) {
+    			if(rs.next()) {
+    				return mapToViaje(rs);
+    			}
     		}
     	} catch (SQLException e) {
-			System.out.println(e.getMessage());
+			ErroresSQL.registrar(getClass(), e);
 		}
     	
     	return null;
@@ -144,88 +410,104 @@ public class SQLViajeDAO implements ViajeDAO {
 
     @Override
     public void add(Viaje viaje) throws ViajeAlreadyExistsException {
-    	Connection connection = mariaDBConnection.getConnection();
-    	
-    	String sql = String.format(
-    			"INSERT INTO %s (codViaje, propietario, ruta, fechaSalida, duracion, precio, plazasOfertadas, estadoViaje)"
-    			+ " VALUES (%d, '%s', '%s', '%s', %d, %.2f, %d, '%s')",
-    			TABLE_NAME,
-    			viaje.getCodViaje(),
-    			viaje.getPropietario(),
-    			viaje.getRuta(),
-    			viaje.getFechaSalidaFormatted(),
-    			viaje.getDuracion(),
-    			viaje.getPrecio(),
-    			viaje.getPlazasOfertadas(),
-    			viaje.getEstado()
-    			);
-    	
-    	try (Statement statement = connection.createStatement())
-    	{
-    		int filas = statement.executeUpdate(sql);
-    		if (filas == 0) {
-    			throw new ViajeAlreadyExistsException(viaje.getCodViaje());
-    		}
+    	String sql = "INSERT INTO " + TABLE_NAME
+    			+ " (codViaje, propietario, ruta, fechaSalida, duracion, precio, plazasOfertadas, estadoViaje)"
+    			+ " VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+    	
+    	try (
+    			Connection connection = mariaDBConnection.getConnection();
+    			PreparedStatement statement = connection.prepareStatement(sql);
+    		) {
+    		statement.setInt(1, viaje.getCodViaje());
+    		statement.setString(2, viaje.getPropietario());
+    		statement.setString(3, viaje.getRuta());
+    		statement.setTimestamp(4, Timestamp.valueOf(viaje.getFechaSalida()));
+    		statement.setLong(5, viaje.getDuracion());
+    		statement.setFloat(6, viaje.getPrecio());
+    		statement.setInt(7, viaje.getPlazasOfertadas());
+    		statement.setString(8, viaje.getEstado().name());
+    		statement.executeUpdate();
+    	} catch (SQLIntegrityConstraintViolationException e) {
+    		throw new ViajeAlreadyExistsException(viaje.getCodViaje());
     	} catch (SQLException e) {
-			System.out.println(e.getMessage());
+			ErroresSQL.registrar(getClass(), e);
 		}
     }
 
     @Override
     public void update(Viaje viaje) throws ViajeNotFoundException {
-    	Connection connection = mariaDBConnection.getConnection();
-    	
-    	String sql = String.format(
-    			"UPDATE %s SET propietario='%s', ruta='%s', fechaSalida='%s', duracion=%d, precio=%.2f, plazasOfertadas=%d, estadoViaje='%s'"
-    			+ " WHERE codViaje=%d",
-    			TABLE_NAME,
-    			viaje.getPropietario(),
-    			viaje.getRuta(),
-    			viaje.getFechaSalidaFormatted(),
-    			viaje.getDuracion(),
-    			viaje.getPrecio(),
-    			viaje.getPlazasOfertadas(),
-    			viaje.getEstado(),
-    			viaje.getCodViaje()
-    			);
-    	
-    	try (Statement statement = connection.createStatement())
-    	{
-    		int filas = statement.executeUpdate(sql);
+    	String sql = "UPDATE " + TABLE_NAME
+    			+ " SET propietario = ?, ruta = ?, fechaSalida = ?, duracion = ?, precio = ?, plazasOfertadas = ?, estadoViaje = ?"
+    			+ " WHERE codViaje = ?";
+    	
+    	try (
+    			Connection connection = mariaDBConnection.getConnection();
+    			PreparedStatement statement = connection.prepareStatement(sql);
+    		) {
+    		statement.setString(1, viaje.getPropietario());
+    		statement.setString(2, viaje.getRuta());
+    		statement.setTimestamp(3, Timestamp.valueOf(viaje.getFechaSalida()));
+    		statement.setLong(4, viaje.getDuracion());
+    		statement.setFloat(5, viaje.getPrecio());
+    		statement.setInt(6, viaje.getPlazasOfertadas());
+    		statement.setString(7, viaje.getEstado().name());
+    		statement.setInt(8, viaje.getCodViaje());
+    		int filas = statement.executeUpdate();
     		if (filas == 0) {
     			throw new ViajeNotFoundException(viaje.getCodViaje());
     		}
     	} catch (SQLException e) {
-			System.out.println(e.getMessage());
+			ErroresSQL.registrar(getClass(), e);
 		}
     }
 
     @Override
     public void remove(Viaje viaje) throws ViajeNotFoundException {
-    	Connection connection = mariaDBConnection.getConnection();
-    	
-    	String sql = "DELETE FROM " + TABLE_NAME + " WHERE codViaje=" + viaje.getCodViaje();
+    	String sql = "DELETE FROM " + TABLE_NAME + " WHERE codViaje = ?";
     	
-    	try (Statement statement = connection.createStatement())
-    	{
-    		int filas = statement.executeUpdate(sql);
+    	try (
+    			Connection connection = mariaDBConnection.getConnection();
+    			PreparedStatement statement = connection.prepareStatement(sql);
+    		) {
+    		statement.setInt(1, viaje.getCodViaje());
+    		int filas = statement.executeUpdate();
     		if (filas == 0) {
     			throw new ViajeNotFoundException(viaje.getCodViaje());
     		}
     	} catch (SQLException e) {
-			System.out.println(e.getMessage());
+			ErroresSQL.registrar(getClass(), e);
 		}
     }
     
+    /**
+     * Escapa los comodines de LIKE para que @texto se busque de forma literal
+     * @param texto
+     * @return
+     */
+    private String escapeLike(String texto) {
+    	return texto.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+    
+    private String marcadores(int n) {
+    	return String.join(", ", Collections.nCopies(n, "?"));
+    }
+    
+    /**
+     * Lee el viaje de la fila actual de @rs, que empieza por las columnas de COLUMNAS. Se leen por
+     * posición y la fecha directamente como LocalDateTime, sin buscar nombres ni pasar por Timestamp
+     * @param rs
+     * @return
+     * @throws SQLException
+     */
     private Viaje mapToViaje(ResultSet rs) throws SQLException {
-    	int codViaje = rs.getInt("codViaje");
-	    String propietario = rs.getString("propietario");
-	    String ruta = rs.getString("ruta");
-	    LocalDateTime fechaSalida = rs.getTimestamp("fechaSalida").toLocalDateTime();
-	    long duracion = rs.getInt("duracion");
-	    float precio = rs.getFloat("precio");
-	    int plazasOfertadas = rs.getInt("plazasOfertadas");
-	    EstadoViaje estadoViaje = EstadoViaje.parse(rs.getString("estadoViaje"));
+    	int codViaje = rs.getInt(1);
+	    String propietario = rs.getString(2);
+	    String ruta = rs.getString(3);
+	    LocalDateTime fechaSalida = rs.getObject(4, LocalDateTime.class);
+	    long duracion = rs.getInt(5);
+	    float precio = rs.getFloat(6);
+	    int plazasOfertadas = rs.getInt(7);
+	    EstadoViaje estadoViaje = EstadoViaje.parse(rs.getString(8));
 	    
 	    return new Viaje(codViaje, propietario, ruta, fechaSalida, duracion, precio, plazasOfertadas, estadoViaje);
     }
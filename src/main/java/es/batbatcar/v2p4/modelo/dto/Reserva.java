@@ -2,13 +2,24 @@ package es.batbatcar.v2p4.modelo.dto;
 
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
-import java.util.Objects;
+import java.util.Comparator;
 
 import es.batbatcar.v2p4.modelo.dto.viaje.Viaje;
 
+/**
+ * Reserva de plazas en un viaje. Internamente se identifica por el código del viaje y un número
+ * de secuencia dentro del viaje; el código "codViaje-numReserva" es sólo su forma externa
+ */
 public class Reserva {
 
-    private String codigoReserva;
+    public static final Comparator<Reserva> POR_CODIGO =
+            Comparator.comparingInt(Reserva::getCodigoViaje).thenComparingInt(Reserva::getNumReserva);
+
+    private static final DateTimeFormatter FORMATO_FECHA = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private final int codViaje;
+    private final int numReserva;
+    private final String codigoReserva;
     private String usuario;
     private int plazasSolicitadas;
     private LocalDateTime fechaRealizacion;
@@ -23,9 +34,77 @@ public class Reserva {
     }
 
     public Reserva(String codigoReserva, String usuario, int plazasSolicitadas, LocalDateTime fechaRealizacion, Viaje viaje) {
+        this(parseCodViaje(codigoReserva), parseNumReserva(codigoReserva), codigoReserva, usuario, plazasSolicitadas, fechaRealizacion, viaje);
+    }
+
+    public Reserva(int codViaje, int numReserva, String usuario, int plazasSolicitadas, Viaje viaje) {
+        this(codViaje, numReserva, usuario, plazasSolicitadas, LocalDateTime.now(), viaje);
+    }
+
+    public Reserva(int codViaje, int numReserva, String usuario, int plazasSolicitadas, LocalDateTime fechaRealizacion, Viaje viaje) {
+        this(codViaje, numReserva, codigo(codViaje, numReserva), usuario, plazasSolicitadas, fechaRealizacion, viaje);
+    }
+
+    /**
+     * Copia de @reserva (y de su viaje), para modificarla sin tocar el original (que puede estar compartido)
+     * @param reserva
+     */
+    public Reserva(Reserva reserva) {
+        this(reserva.codViaje, reserva.numReserva, reserva.codigoReserva, reserva.usuario, reserva.plazasSolicitadas,
+                reserva.fechaRealizacion, reserva.viaje == null ? null : new Viaje(reserva.viaje));
+    }
+
+    private Reserva(int codViaje, int numReserva, String codigoReserva, String usuario, int plazasSolicitadas,
+    		LocalDateTime fechaRealizacion, Viaje viaje) {
+        this.codViaje = codViaje;
+        this.numReserva = numReserva;
         this.codigoReserva = codigoReserva;
         set(usuario, plazasSolicitadas, fechaRealizacion, viaje);
     }
+
+    /**
+     * Forma externa del código de una reserva
+     * @param codViaje
+     * @param numReserva
+     * @return "codViaje-numReserva"
+     */
+    public static String codigo(int codViaje, int numReserva) {
+        return codViaje + "-" + numReserva;
+    }
+
+    /**
+     * Obtiene el código del viaje a partir del código de una reserva
+     * @param codigoReserva "codViaje-numReserva"
+     * @return
+     */
+    public static int codViajeDe(String codigoReserva) {
+        return parseCodViaje(codigoReserva);
+    }
+
+    /**
+     * Obtiene el número de la reserva dentro de su viaje a partir de su código
+     * @param codigoReserva "codViaje-numReserva"
+     * @return
+     */
+    public static int numReservaDe(String codigoReserva) {
+        return parseNumReserva(codigoReserva);
+    }
+
+    private static int parseCodViaje(String codigoReserva) {
+        return Integer.parseInt(codigoReserva, 0, separador(codigoReserva), 10);
+    }
+
+    private static int parseNumReserva(String codigoReserva) {
+        return Integer.parseInt(codigoReserva, separador(codigoReserva) + 1, codigoReserva.length(), 10);
+    }
+
+    private static int separador(String codigoReserva) {
+        int guion = codigoReserva.indexOf('-');
+        if (guion < 0) {
+            throw new IllegalArgumentException("Código de reserva no válido: " + codigoReserva);
+        }
+        return guion;
+    }
     
     public void set(String usuario, int plazasSolicitadas, LocalDateTime fechaRealizacion, Viaje viaje) {
     	this.usuario = usuario;
@@ -50,13 +129,17 @@ public class Reserva {
         return fechaRealizacion;
     }
     
+    /**
+     * Viaje de la reserva, si se creó con él. Las reservas leídas de la base de datos no lo cargan:
+     * su viaje se obtiene con {@link #getCodigoViaje()}
+     * @return el viaje o null
+     */
     public Viaje getViaje() {
     	return viaje;
     }
 
     public String getFechaRealizacionFormatted() {
-        DateTimeFormatter dateTimeFormatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
-        return dateTimeFormatter.format(this.fechaRealizacion);
+        return FORMATO_FECHA.format(this.fechaRealizacion);
     }
     
     @Override
@@ -64,12 +147,12 @@ public class Reserva {
         if (this == o) return true;
         if (!(o instanceof Reserva)) return false;
         Reserva reserva = (Reserva) o;
-        return codigoReserva.equals(reserva.codigoReserva);
+        return codViaje == reserva.codViaje && numReserva == reserva.numReserva;
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(codigoReserva);
+        return 31 * codViaje + numReserva;
     }
 
     public void setPropietario(String usuario) {
@@ -85,6 +168,10 @@ public class Reserva {
     }
 
     public int getCodigoViaje() {
-        return Integer.parseInt(codigoReserva.split("-")[0]);
+        return codViaje;
+    }
+
+    public int getNumReserva() {
+        return numReserva;
     }
 }
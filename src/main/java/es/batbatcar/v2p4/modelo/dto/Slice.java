@@ -0,0 +1,82 @@
+package es.batbatcar.v2p4.modelo.dto;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Página de resultados obtenida con una {@link SliceRequest}
+ */
+public class Slice<T> {
+
+	private final List<T> contenido;
+	private final int size;
+	private final String cursorAnterior;
+	private final String cursorSiguiente;
+
+	public Slice(List<T> contenido, int size, String cursorAnterior, String cursorSiguiente) {
+		this.contenido = contenido;
+		this.size = size;
+		this.cursorAnterior = cursorAnterior;
+		this.cursorSiguiente = cursorSiguiente;
+	}
+
+	/**
+	 * Construye la página a partir de las filas leídas en el sentido de la petición.
+	 * Se espera que se hayan pedido size + 1 filas: la fila sobrante sólo indica que hay más resultados.
+	 * @param filas filas en orden ascendente, o descendente si la petición es hacia atrás
+	 * @param request
+	 * @param cursor función que obtiene el cursor (clave) de un elemento
+	 * @return
+	 */
+	public static <T> Slice<T> of(List<T> filas, SliceRequest request, Function<T, String> cursor) {
+		boolean hayMas = filas.size() > request.getSize();
+		List<T> contenido = new ArrayList<>(hayMas ? filas.subList(0, request.getSize()) : filas);
+
+		boolean hayAnterior;
+		boolean haySiguiente;
+		if (request.isBackward()) {
+			Collections.reverse(contenido);
+			hayAnterior = hayMas;
+			haySiguiente = true;
+		} else {
+			hayAnterior = request.getAfter() != null;
+			haySiguiente = hayMas;
+		}
+
+		if (contenido.isEmpty()) {
+			return new Slice<>(contenido, request.getSize(), null, null);
+		}
+
+		return new Slice<>(
+				contenido,
+				request.getSize(),
+				hayAnterior ? cursor.apply(contenido.get(0)) : null,
+				haySiguiente ? cursor.apply(contenido.get(contenido.size() - 1)) : null);
+	}
+
+	public List<T> getContenido() {
+		return contenido;
+	}
+
+	public int getSize() {
+		return size;
+	}
+
+	public String getCursorAnterior() {
+		return cursorAnterior;
+	}
+
+	public String getCursorSiguiente() {
+		return cursorSiguiente;
+	}
+
+	public boolean hasAnterior() {
+		return cursorAnterior != null;
+	}
+
+	public boolean hasSiguiente() {
+		return cursorSiguiente != null;
+	}
+}
@@ -0,0 +1,90 @@
+package es.batbatcar.v2p4.modelo.dto;
+
+import java.util.Map;
+
+/**
+ * Petición de una página de resultados con paginación por clave (keyset):
+ * en lugar de un desplazamiento se indica el último elemento visto (@after)
+ * o el primero de la página actual (@before), de modo que el coste de cada página
+ * no depende de su posición en el listado
+ */
+public class SliceRequest {
+
+	public static final int DEFAULT_SIZE = 20;
+	public static final int MAX_SIZE = 100;
+
+	private final String after;
+	private final String before;
+	private final int size;
+
+	public SliceRequest(String after, String before, int size) {
+		this.after = isEmpty(after) ? null : after;
+		this.before = isEmpty(before) ? null : before;
+		this.size = Math.max(1, Math.min(size, MAX_SIZE));
+	}
+
+	/**
+	 * Construye la petición a partir de los parámetros "after", "before" y "size" de la URL
+	 * @param params
+	 * @return
+	 */
+	public static SliceRequest of(Map<String, String> params) {
+		int size = DEFAULT_SIZE;
+		try {
+			if (params.containsKey("size")) {
+				size = Integer.parseInt(params.get("size"));
+			}
+		} catch (NumberFormatException e) {
+			size = DEFAULT_SIZE;
+		}
+		return new SliceRequest(params.get("after"), params.get("before"), size);
+	}
+
+	public static SliceRequest first(int size) {
+		return new SliceRequest(null, null, size);
+	}
+
+	public String getAfter() {
+		return after;
+	}
+
+	public String getBefore() {
+		return before;
+	}
+
+	public int getSize() {
+		return size;
+	}
+
+	/**
+	 * Indica si la página se recorre hacia atrás (se pidió la anterior a @before)
+	 * @return
+	 */
+	public boolean isBackward() {
+		return before != null;
+	}
+
+	/**
+	 * Obtiene el cursor desde el que se busca, o null si es la primera página
+	 * @return
+	 */
+	public String getCursor() {
+		return isBackward() ? before : after;
+	}
+
+	/**
+	 * Obtiene el cursor como número, o null si no hay cursor o no es numérico
+	 * @return
+	 */
+	public Integer getCursorAsInt() {
+		try {
+			return getCursor() == null ? null : Integer.valueOf(getCursor());
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	private static boolean isEmpty(String value) {
+		return value == null || value.isEmpty();
+	}
+}
@@ -0,0 +1,120 @@
+package es.batbatcar.v2p4.modelo.dto.viaje;
+
+import es.batbatcar.v2p4.modelo.dto.Reserva;
+
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Detalle de un viaje y sus reservas con los datos ya preparados para mostrarse. Como
+ * {@link FilaViaje}, es inmutable y no guarda referencias al viaje ni a las reservas
+ */
+public final class DetalleViaje {
+
+    private static final DateTimeFormatter FORMATO_DIA = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+    private static final DateTimeFormatter FORMATO_HORA = DateTimeFormatter.ofPattern("HH:mm");
+
+    private final int codViaje;
+    private final String ruta;
+    private final int plazasOfertadas;
+    private final String propietario;
+    private final float precio;
+    private final long duracion;
+    private final String diaSalida;
+    private final String horaSalida;
+    private final boolean disponible;
+    private final List<FilaReserva> reservas;
+
+    public DetalleViaje(Viaje viaje, List<Reserva> reservas) {
+        this.codViaje = viaje.getCodViaje();
+        this.ruta = viaje.getRuta();
+        this.plazasOfertadas = viaje.getPlazasOfertadas();
+        this.propietario = viaje.getPropietario();
+        this.precio = viaje.getPrecio();
+        this.duracion = viaje.getDuracion();
+        this.diaSalida = FORMATO_DIA.format(viaje.getFechaSalida());
+        this.horaSalida = FORMATO_HORA.format(viaje.getFechaSalida());
+        this.disponible = viaje.estaDisponible();
+        List<FilaReserva> filas = new ArrayList<>(reservas.size());
+        for (Reserva reserva : reservas) {
+            filas.add(new FilaReserva(reserva));
+        }
+        this.reservas = Collections.unmodifiableList(filas);
+    }
+
+    public int getCodViaje() {
+        return codViaje;
+    }
+
+    public String getRuta() {
+        return ruta;
+    }
+
+    public int getPlazasOfertadas() {
+        return plazasOfertadas;
+    }
+
+    public String getPropietario() {
+        return propietario;
+    }
+
+    public float getPrecio() {
+        return precio;
+    }
+
+    public long getDuracion() {
+        return duracion;
+    }
+
+    public String getDiaSalida() {
+        return diaSalida;
+    }
+
+    public String getHoraSalida() {
+        return horaSalida;
+    }
+
+    public boolean isDisponible() {
+        return disponible;
+    }
+
+    public List<FilaReserva> getReservas() {
+        return reservas;
+    }
+
+    /**
+     * Fila de la tabla de reservas del detalle
+     */
+    public static final class FilaReserva {
+
+        private final String codigoReserva;
+        private final String usuario;
+        private final int plazasSolicitadas;
+        private final String fechaRealizacion;
+
+        private FilaReserva(Reserva reserva) {
+            this.codigoReserva = reserva.getCodigoReserva();
+            this.usuario = reserva.getUsuario();
+            this.plazasSolicitadas = reserva.getPlazasSolicitadas();
+            this.fechaRealizacion = FilaViaje.FORMATO_FECHA.format(reserva.getFechaRealizacion());
+        }
+
+        public String getCodigoReserva() {
+            return codigoReserva;
+        }
+
+        public String getUsuario() {
+            return usuario;
+        }
+
+        public int getPlazasSolicitadas() {
+            return plazasSolicitadas;
+        }
+
+        public String getFechaRealizacion() {
+            return fechaRealizacion;
+        }
+    }
+}
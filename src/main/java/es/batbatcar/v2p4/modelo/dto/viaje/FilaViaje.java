@@ -0,0 +1,66 @@
+package es.batbatcar.v2p4.modelo.dto.viaje;
+
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Fila del listado de viajes con los datos ya preparados para mostrarse (fecha formateada,
+ * estado, reservas y plazas libres). Es inmutable y no guarda el viaje, así que se puede
+ * compartir entre peticiones
+ */
+public final class FilaViaje {
+
+    public static final DateTimeFormatter FORMATO_FECHA = DateTimeFormatter.ofPattern("dd-MM-yyyy 'a las' HH:mm");
+
+    private final int codViaje;
+    private final String ruta;
+    private final String propietario;
+    private final String fechaSalida;
+    private final String estado;
+    private final boolean disponible;
+    private final int numReservas;
+    private final int plazasDisponibles;
+
+    public FilaViaje(ViajeResumen resumen) {
+        Viaje viaje = resumen.getViaje();
+        this.codViaje = viaje.getCodViaje();
+        this.ruta = viaje.getRuta();
+        this.propietario = viaje.getPropietario();
+        this.fechaSalida = FORMATO_FECHA.format(viaje.getFechaSalida());
+        this.estado = viaje.getEstado().name();
+        this.disponible = viaje.estaDisponible();
+        this.numReservas = resumen.getNumReservas();
+        this.plazasDisponibles = resumen.getPlazasDisponibles();
+    }
+
+    public int getCodViaje() {
+        return codViaje;
+    }
+
+    public String getRuta() {
+        return ruta;
+    }
+
+    public String getPropietario() {
+        return propietario;
+    }
+
+    public String getFechaSalida() {
+        return fechaSalida;
+    }
+
+    public String getEstado() {
+        return estado;
+    }
+
+    public boolean isDisponible() {
+        return disponible;
+    }
+
+    public int getNumReservas() {
+        return numReservas;
+    }
+
+    public int getPlazasDisponibles() {
+        return plazasDisponibles;
+    }
+}
@@ -1,13 +1,17 @@
 package es.batbatcar.v2p4.modelo.dto.viaje;
 
 import es.batbatcar.v2p4.exceptions.*;
+import es.batbatcar.v2p4.utils.Ciudades;
 
+import java.time.Clock;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.Objects;
 
 public class Viaje implements Comparable<Viaje> {
 
+    private static final DateTimeFormatter FORMATO_FECHA = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
     private int codViaje;
     private String propietario;
     private String ruta;
@@ -36,6 +40,16 @@ public class Viaje implements Comparable<Viaje> {
         this.codViaje = codViaje;
         set(propietario, ruta, fechaSalida, duracion, precio, plazasOfertadas, estadoViaje);
     }
+
+    /**
+     * Copia de @viaje, para modificarla sin tocar el original (que puede estar compartido)
+     * @param viaje
+     */
+    public Viaje(Viaje viaje) {
+        this(viaje.codViaje, viaje.propietario, viaje.ruta, viaje.fechaSalida, viaje.duracion, viaje.precio,
+                viaje.plazasOfertadas, viaje.estadoViaje);
+        this.seHanRealizadoReservas = viaje.seHanRealizadoReservas;
+    }
     
     public void set(String propietario, String ruta, LocalDateTime fechaSalida, long duracion,
             float precio, int plazasOfertadas, EstadoViaje estadoViaje) {
@@ -73,7 +87,7 @@ public class Viaje implements Comparable<Viaje> {
     }
     
     public boolean isCerrado() {
-        return !(this.estadoViaje == EstadoViaje.ABIERTO && !haSalido());
+        return !estaDisponible();
     }
 
     public int getCodViaje() {
@@ -109,8 +123,7 @@ public class Viaje implements Comparable<Viaje> {
     }
 
     public String getFechaSalidaFormatted() {
-        DateTimeFormatter dateTimeFormatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
-        return dateTimeFormatter.format(fechaSalida);
+        return FORMATO_FECHA.format(fechaSalida);
     }
 
     public float getPrecio() {
@@ -132,20 +145,36 @@ public class Viaje implements Comparable<Viaje> {
         }
     }
 
+    /**
+     * Indica si el viaje admite reservas según su estado guardado. Los viajes abiertos pasan a
+     * CERRADO cuando salen (ver CicloVidaViajes), por lo que no hace falta consultar el reloj
+     * @return
+     */
     public boolean estaDisponible() {
-        return this.estadoViaje == EstadoViaje.ABIERTO && !haSalido();
+        return this.estadoViaje == EstadoViaje.ABIERTO;
     }
 
-    protected boolean haSalido() {
-        return fechaSalida.isBefore(LocalDateTime.now());
+    /**
+     * Indica si el viaje ha salido según @reloj, para las comprobaciones que no pueden esperar
+     * a que se cierre el viaje
+     * @param reloj
+     * @return
+     */
+    public boolean haSalido(Clock reloj) {
+        return fechaSalida.isBefore(LocalDateTime.now(reloj));
     }
 
     public boolean isCancelado() {
         return this.estadoViaje == EstadoViaje.CANCELADO;
     }
 
-    public void cancelar() throws ViajeNotCancelableException {
-        if (!estaDisponible()) {
+    /**
+     * Cancela el viaje si está abierto y no ha salido según @reloj (puede no estar cerrado todavía)
+     * @param reloj
+     * @throws ViajeNotCancelableException
+     */
+    public void cancelar(Clock reloj) throws ViajeNotCancelableException {
+        if (!estaDisponible() || haSalido(reloj)) {
             throw new ViajeNotCancelableException(String.valueOf(this.codViaje));
         }
         this.estadoViaje = EstadoViaje.CANCELADO;
@@ -155,8 +184,22 @@ public class Viaje implements Comparable<Viaje> {
         return this.estadoViaje == estadoViaje;
     }
 
+    /**
+     * Obtiene la ciudad de destino (última ciudad de la ruta)
+     * @return
+     */
+    public String getDestino() {
+        return this.ruta.substring(this.ruta.lastIndexOf("-") + 1);
+    }
+
+    /**
+     * Indica si la ciudad de destino, o alguno de sus alias, empieza por @ciudadDestino
+     * sin distinguir mayúsculas ni acentos (mismo criterio que el índice de destinos)
+     * @param ciudadDestino
+     * @return
+     */
     public boolean tieneEstaCiudadDestino(String ciudadDestino) {
-        return this.ruta.substring(this.ruta.indexOf("-")).contains(ciudadDestino);
+        return Ciudades.empiezaPor(getDestino(), ciudadDestino);
     }
 
     public void cerrarViaje() {
@@ -0,0 +1,35 @@
+package es.batbatcar.v2p4.modelo.dto.viaje;
+
+/**
+ * Viaje junto con la información agregada de sus reservas, tal y como se
+ * muestra en el listado de viajes
+ */
+public class ViajeResumen {
+
+    private final Viaje viaje;
+    private final int numReservas;
+    private final int plazasReservadas;
+
+    public ViajeResumen(Viaje viaje, int numReservas, int plazasReservadas) {
+        this.viaje = viaje;
+        this.numReservas = numReservas;
+        this.plazasReservadas = plazasReservadas;
+        viaje.setSeHanRealizadoReservas(numReservas > 0);
+    }
+
+    public Viaje getViaje() {
+        return viaje;
+    }
+
+    public int getNumReservas() {
+        return numReservas;
+    }
+
+    public int getPlazasReservadas() {
+        return plazasReservadas;
+    }
+
+    public int getPlazasDisponibles() {
+        return viaje.getPlazasOfertadas() - plazasReservadas;
+    }
+}
@@ -7,15 +7,25 @@ import es.batbatcar.v2p4.exceptions.ViajeAlreadyExistsException;
 import es.batbatcar.v2p4.exceptions.ViajeNotCancelableException;
 import es.batbatcar.v2p4.exceptions.ViajeNotFoundException;
 import es.batbatcar.v2p4.modelo.dto.Reserva;
+import es.batbatcar.v2p4.modelo.dto.Slice;
+import es.batbatcar.v2p4.modelo.dto.SliceRequest;
 import es.batbatcar.v2p4.modelo.dto.viaje.Viaje;
+import es.batbatcar.v2p4.modelo.dto.viaje.ViajeResumen;
+import es.batbatcar.v2p4.modelo.dao.interfaces.GeneradorCodViaje;
 import es.batbatcar.v2p4.modelo.dao.interfaces.ReservaDAO;
 import es.batbatcar.v2p4.modelo.dao.interfaces.ViajeDAO;
-import es.batbatcar.v2p4.modelo.dao.sqldao.SQLReservaDAO;
-import es.batbatcar.v2p4.modelo.dao.sqldao.SQLViajeDAO;
+import es.batbatcar.v2p4.modelo.dao.cachedao.CachedReservaDAO;
+import es.batbatcar.v2p4.modelo.dao.cachedao.CachedViajeDAO;
+import es.batbatcar.v2p4.modelo.dao.sqldao.SQLGeneradorCodViaje;
+import es.batbatcar.v2p4.modelo.services.CicloVidaViajes;
+import es.batbatcar.v2p4.modelo.services.ReservasDiferidas;
+import es.batbatcar.v2p4.modelo.services.VersionesDatos;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Repository;
 
+import java.time.Clock;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
 
@@ -24,10 +34,45 @@ public class ViajesRepository {
 
     private final ViajeDAO viajeDAO;
     private final ReservaDAO reservaDAO;
+    private final GeneradorCodViaje generadorCodViaje;
+    private final VersionesDatos versiones;
+    private final ReservasDiferidas diferidas;
+    private final CicloVidaViajes cicloVida;
+    private final Clock reloj;
 
-    public ViajesRepository(@Autowired SQLViajeDAO viajeDAO, @Autowired SQLReservaDAO reservaDAO) {
+    @Autowired
+    public ViajesRepository(CachedViajeDAO viajeDAO, CachedReservaDAO reservaDAO, SQLGeneradorCodViaje generadorCodViaje,
+    		VersionesDatos versiones, ReservasDiferidas diferidas, CicloVidaViajes cicloVida, Clock reloj) {
+        this((ViajeDAO) viajeDAO, (ReservaDAO) reservaDAO, (GeneradorCodViaje) generadorCodViaje, versiones,
+        		diferidas.isActiva() ? diferidas : null, cicloVida, reloj);
+    }
+    
+    /**
+     * Crea el repositorio sobre cualquier implementación de los DAO (por ejemplo, las de
+     * memoria en los benchmarks)
+     */
+    public ViajesRepository(ViajeDAO viajeDAO, ReservaDAO reservaDAO, GeneradorCodViaje generadorCodViaje,
+    		VersionesDatos versiones) {
+        this(viajeDAO, reservaDAO, generadorCodViaje, versiones, null, null, Clock.systemDefaultZone());
+    }
+    
+    private ViajesRepository(ViajeDAO viajeDAO, ReservaDAO reservaDAO, GeneradorCodViaje generadorCodViaje,
+    		VersionesDatos versiones, ReservasDiferidas diferidas, CicloVidaViajes cicloVida, Clock reloj) {
         this.viajeDAO = viajeDAO;
         this.reservaDAO = reservaDAO;
+        this.generadorCodViaje = generadorCodViaje;
+        this.versiones = versiones;
+        this.diferidas = diferidas;
+        this.cicloVida = cicloVida;
+        this.reloj = reloj;
+    }
+    
+    /**
+     * Versiones de los datos, que cambian con cada escritura hecha a través del repositorio
+     * @return
+     */
+    public VersionesDatos getVersiones() {
+    	return versiones;
     }
     
     /** 
@@ -35,60 +80,85 @@ public class ViajesRepository {
      * @return
      */
     public Set<Viaje> findAll() {
-        
-    	// Se recuperan todos los viajes del DAO de viajes
-    	Set<Viaje> viajes = viajeDAO.findAll();
-        
-    	// Se completa la información acerca de las reservas de cada viaje a través del DAO de reservas
-        for (Viaje viaje : viajes) {
-        	if (this.reservaDAO.findAllByTravel(viaje).size() > 0) {
-            	viaje.setSeHanRealizadoReservas(true);
-            }
-		}
-        return viajes;
+    	
+    	// La información acerca de las reservas de cada viaje se obtiene en la misma consulta
+        return toViajes(viajeDAO.findAllResumenes());
     }
     
     public Set<Viaje> findAll(String city) {
-        
-    	// Se recuperan todos los viajes con destino @city del DAO de viajes
-    	Set<Viaje> viajes = viajeDAO.findAll(city);
-        
-    	// Se completa la información acerca de las reservas de cada viaje a través del DAO de reservas
-        for (Viaje viaje : viajes) {
-        	if (this.reservaDAO.findAllByTravel(viaje).size() > 0) {
-            	viaje.setSeHanRealizadoReservas(true);
-            }
-		}
-        return viajes;
+        return toViajes(viajeDAO.findAllResumenes(city));
+    }
+    
+    /**
+     * Obtiene todos los viajes con su número de reservas y plazas disponibles
+     * @return
+     */
+    public List<ViajeResumen> findAllResumenes() {
+    	return viajeDAO.findAllResumenes();
+    }
+    
+    /**
+     * Obtiene los viajes con destino @city con su número de reservas y plazas disponibles
+     * @param city
+     * @return
+     */
+    public List<ViajeResumen> findAllResumenes(String city) {
+    	return viajeDAO.findAllResumenes(city);
+    }
+    
+    /**
+     * Obtiene una página de viajes (con destino @city si no es null) con su número de reservas y plazas disponibles
+     * @param city
+     * @param request
+     * @return
+     */
+    public Slice<ViajeResumen> findResumenes(String city, SliceRequest request) {
+    	return viajeDAO.findResumenes(city, request);
+    }
+    
+    /**
+     * Obtiene como mucho @max ciudades de destino que empiezan por @prefijo (autocompletado)
+     * @param prefijo
+     * @param max
+     * @return
+     */
+    public List<String> findDestinos(String prefijo, int max) {
+    	return viajeDAO.findDestinos(prefijo, max);
+    }
+    
+    private Set<Viaje> toViajes(List<ViajeResumen> resumenes) {
+    	Set<Viaje> viajes = new LinkedHashSet<>();
+    	for (ViajeResumen resumen : resumenes) {
+    		viajes.add(resumen.getViaje());
+    	}
+    	return viajes;
     }
     
     public Viaje findViajeById(int codViaje) throws ViajeNotFoundException {
     	return viajeDAO.getById(codViaje);
     }
     
-    public Viaje findViajeSiPermiteReserva(int codViaje, String usuario, int plazasSolicitadas) throws ReservaNoValidaException, ViajeNotFoundException {
+    /**
+     * Realiza una reserva en el viaje @codViaje. La comprobación de que el viaje admite la reserva,
+     * la asignación del código y la inserción se hacen en una sola operación atómica. Con la escritura
+     * diferida activa, la inserción se hace después (ver {@link ReservasDiferidas})
+     * @param codViaje
+     * @param usuario
+     * @param plazasSolicitadas
+     * @return la reserva realizada
+     * @throws ReservaNoValidaException
+     * @throws ViajeNotFoundException
+     */
+    public Reserva reservar(int codViaje, String usuario, int plazasSolicitadas) throws ReservaNoValidaException, ViajeNotFoundException {
     	Viaje viaje = viajeDAO.getById(codViaje);
-    	List<Reserva> reservas = reservaDAO.findAllByTravel(viaje);
-    	
-    	if (viaje.getPropietario().equals(usuario)) {
-    		throw new ReservaNoValidaException("Eres el propietario del viaje");
-    	}
-    	
-    	if (viaje.isCerrado() || viaje.isCancelado()) {
-    		throw new ReservaNoValidaException("El viaje está cerrado o cancelado");
-    	}
-    	
-    	for(Reserva reserva: reservas) {
-    		if (reserva.getUsuario().equals(usuario)) {
-    			throw new ReservaNoValidaException("Ya has realizado una reserva");
+    	try {
+    		if (diferidas != null) {
+    			return diferidas.reservar(viaje, usuario, plazasSolicitadas);
     		}
+    		return reservaDAO.reservar(viaje, usuario, plazasSolicitadas);
+    	} finally {
+    		versiones.cambioEnViaje(codViaje);
     	}
-    	
-    	if (plazasSolicitadas > getNumPlazasDisponiblesEnViaje(viaje)) {
-    		throw new ReservaNoValidaException("No quedan suficientes plazas");
-    	}
-    	
-    	return viaje;
     }
     
     /**
@@ -96,7 +166,7 @@ public class ViajesRepository {
      * @return
      */
     public int getNextCodViaje() {
-        return this.viajeDAO.findAll().size() + 1;
+        return generadorCodViaje.siguiente();
     }
     
     public int getNumReservasEnViaje(Viaje viaje) {
@@ -115,18 +185,31 @@ public class ViajesRepository {
      */
     public void save(Viaje viaje) throws ViajeAlreadyExistsException, ViajeNotFoundException {
     	
-    	if (viajeDAO.findById(viaje.getCodViaje()) == null) {
-    		viajeDAO.add(viaje);
-    	} else {
-    		viajeDAO.update(viaje);
+    	antesDeEscribir(viaje.getCodViaje());
+    	try {
+	    	if (viajeDAO.findById(viaje.getCodViaje()) == null) {
+	    		viajeDAO.add(viaje);
+	    	} else {
+	    		viajeDAO.update(viaje);
+	    	}
+	    	programarCierre(viaje);
+    	} finally {
+    		despuesDeEscribir(viaje.getCodViaje());
     	}
     }
     
     public void cancel(int codViaje) throws ViajeNotCancelableException, ViajeNotFoundException {
-    	Viaje viaje = viajeDAO.getById(codViaje);
-    	viaje.cancelar();
+    	antesDeEscribir(codViaje);
+    	// Se cancela una copia: si falla la escritura, el viaje que tiene el DAO no cambia
+    	Viaje viaje = new Viaje(viajeDAO.getById(codViaje));
+    	viaje.cancelar(reloj);
     	
-    	viajeDAO.update(viaje);
+    	try {
+    		viajeDAO.update(viaje);
+    		programarCierre(viaje);
+    	} finally {
+    		despuesDeEscribir(codViaje);
+    	}
     }
     
 
@@ -144,6 +227,36 @@ public class ViajesRepository {
 		return reservaDAO.findAllByTravel(viaje);
 	}
 	
+	/**
+	 * Busca las reservas de @viaje cuyo usuario o código contiene @texto
+	 * @param viaje
+	 * @param texto
+	 * @return
+	 */
+	public List<Reserva> findReservasByViaje(Viaje viaje, String texto) {
+		return reservaDAO.findAllBySearchParams(viaje, texto);
+	}
+	
+	/**
+	 * Busca, en todos los viajes, como mucho @max reservas cuyo usuario o código contiene @texto
+	 * @param texto
+	 * @param max
+	 * @return
+	 */
+	public List<Reserva> findReservas(String texto, int max) {
+		return reservaDAO.findAllBySearchParams(texto, max);
+	}
+	
+	/**
+	 * Obtiene una página de las reservas de @viaje
+	 * @param viaje
+	 * @param request
+	 * @return
+	 */
+	public Slice<Reserva> findReservasByViaje(Viaje viaje, SliceRequest request) {
+		return reservaDAO.findAllByTravel(viaje, request);
+	}
+	
 	/**
 	 * Guarda la reserva
 	 * @param reserva
@@ -152,10 +265,15 @@ public class ViajesRepository {
 	 */
     public void save(Reserva reserva) throws ReservaAlreadyExistsException, ReservaNotFoundException {
     	
-    	if (reservaDAO.findById(reserva.getCodigoReserva()) == null) {
-    		reservaDAO.add(reserva);
-    	} else {
-    		reservaDAO.update(reserva);
+    	antesDeEscribir(reserva.getCodigoViaje());
+    	try {
+	    	if (reservaDAO.findById(reserva.getCodigoReserva()) == null) {
+	    		reservaDAO.add(reserva);
+	    	} else {
+	    		reservaDAO.update(reserva);
+	    	}
+    	} finally {
+    		despuesDeEscribir(reserva.getCodigoViaje());
     	}
     }
     
@@ -165,17 +283,44 @@ public class ViajesRepository {
      * @throws ReservaNotFoundException
      */
 	public void remove(Reserva reserva) throws ReservaNotFoundException {
-		reservaDAO.remove(reserva);
+		antesDeEscribir(reserva.getCodigoViaje());
+		try {
+			reservaDAO.remove(reserva);
+		} finally {
+			despuesDeEscribir(reserva.getCodigoViaje());
+		}
 	}
-
-	public String getNextCodReserva(Viaje viaje) {
-		List<Reserva> reservas = reservaDAO.findAllByTravel(viaje);
-		if (reservas.isEmpty()) {
-			return viaje.getCodViaje() + "-1";
+	
+	/**
+	 * Programa el cierre de @viaje a su salida (o lo olvida si ya no está abierto)
+	 */
+	private void programarCierre(Viaje viaje) {
+		if (cicloVida != null) {
+			cicloVida.registrar(viaje);
+		}
+	}
+	
+	/**
+	 * Con la escritura diferida, escribe las reservas pendientes antes de escribir sobre el viaje
+	 * @codViaje para que lleguen a la base de datos en orden
+	 */
+	private void antesDeEscribir(int codViaje) {
+		if (diferidas != null) {
+			diferidas.descartar(codViaje);
+		}
+	}
+	
+	/**
+	 * Anota el cambio en el viaje @codViaje y descarta su estado de la escritura diferida, que
+	 * podría haberse cargado con los datos anteriores a la escritura
+	 */
+	private void despuesDeEscribir(int codViaje) {
+		try {
+			if (diferidas != null) {
+				diferidas.descartar(codViaje);
+			}
+		} finally {
+			versiones.cambioEnViaje(codViaje);
 		}
-		
-		String codigoReserva = reservas.get(reservas.size() - 1).getCodigoReserva();
-		int numReserva = Integer.parseInt(codigoReserva.split("-")[1]) + 1;
-		return viaje.getCodViaje() + "-" + numReserva;
 	}
 }
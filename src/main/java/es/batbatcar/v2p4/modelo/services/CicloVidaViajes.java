@@ -0,0 +1,257 @@
+package es.batbatcar.v2p4.modelo.services;
+
+import es.batbatcar.v2p4.modelo.dao.cachedao.CachedViajeDAO;
+import es.batbatcar.v2p4.modelo.dto.viaje.EstadoViaje;
+import es.batbatcar.v2p4.modelo.dto.viaje.Viaje;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+/**
+ * Cierra los viajes cuando salen: pasa su estado a CERRADO en la base de datos, de modo que
+ * {@link Viaje#estaDisponible()} puede fiarse del estado guardado sin consultar el reloj.
+ *
+ * Las salidas de los viajes abiertos se guardan en una cola de prioridad por fecha. Un hilo
+ * espera hasta la próxima salida (como mucho @maxEsperaMs, por si cambia la hora del sistema),
+ * cierra con una sola sentencia todos los viajes que han salido y vuelve a esperar. Los cambios
+ * de un viaje se anotan con {@link #registrar(Viaje)}; la entrada antigua se queda en la cola y
+ * se ignora al sacarla. La hora se toma de @reloj para poder probarlo con un Clock fijo.
+ */
+@Service
+public class CicloVidaViajes {
+
+	private static final long ESPERA_REINTENTO_MS = 5000;
+
+	private final CachedViajeDAO viajeDAO;
+	private final VersionesDatos versiones;
+	private final Clock reloj;
+	private final boolean activo;
+	private final long maxEsperaMs;
+
+	// Protegen las salidas programadas y la próxima ejecución
+	private final Object bloqueo = new Object();
+	private final PriorityQueue<Salida> salidas = new PriorityQueue<>(
+			Comparator.comparing((Salida salida) -> salida.fecha).thenComparingInt(salida -> salida.codViaje));
+	private final Map<Integer, LocalDateTime> programadas = new HashMap<>();
+	private ScheduledExecutorService planificador;
+	private ScheduledFuture<?> siguiente;
+	private LocalDateTime horaSiguiente;
+
+	private final Counter cerrados;
+
+	public CicloVidaViajes(
+			CachedViajeDAO viajeDAO,
+			VersionesDatos versiones,
+			Clock reloj,
+			MeterRegistry registry,
+			@Value("${batbatcar.ciclo-vida.activo:true}") boolean activo,
+			@Value("${batbatcar.ciclo-vida.max-espera-ms:60000}") long maxEsperaMs) {
+		this.viajeDAO = viajeDAO;
+		this.versiones = versiones;
+		this.reloj = reloj;
+		this.activo = activo;
+		this.maxEsperaMs = maxEsperaMs;
+
+		Gauge.builder("batbatcar.ciclo-vida.programados", this, CicloVidaViajes::getNumProgramados)
+				.description("Viajes abiertos a la espera de su salida")
+				.register(registry);
+		this.cerrados = Counter.builder("batbatcar.ciclo-vida.cerrados")
+				.description("Viajes cerrados al salir")
+				.register(registry);
+	}
+
+	@PostConstruct
+	public void iniciar() {
+		if (!activo) {
+			return;
+		}
+		planificador = Executors.newSingleThreadScheduledExecutor(tarea -> {
+			Thread hilo = new Thread(tarea, "ciclo-vida-viajes");
+			hilo.setDaemon(true);
+			return hilo;
+		});
+		recargar();
+	}
+
+	@PreDestroy
+	public void detener() {
+		if (planificador != null) {
+			planificador.shutdownNow();
+		}
+	}
+
+	public int getNumProgramados() {
+		synchronized (bloqueo) {
+			return programadas.size();
+		}
+	}
+
+	/**
+	 * Vuelve a leer de la base de datos las salidas de los viajes abiertos (en segundo plano).
+	 * Hay que llamarlo cuando se escriben viajes sin pasar por el repositorio (importación masiva)
+	 */
+	public void recargar() {
+		if (!activo || planificador == null) {
+			return;
+		}
+		planificador.execute(() -> {
+			Map<Integer, LocalDateTime> abiertos;
+			try {
+				abiertos = viajeDAO.findSalidasAbiertos();
+			} catch (RuntimeException e) {
+				// La base de datos puede no estar disponible todavía
+				planificador.schedule(this::recargar, ESPERA_REINTENTO_MS, TimeUnit.MILLISECONDS);
+				return;
+			}
+			// Se añaden a las programadas sin vaciarlas, para no perder los viajes registrados durante
+			// la consulta. Si alguno ya no está abierto, al cerrarlo no se cambiará
+			synchronized (bloqueo) {
+				for (Map.Entry<Integer, LocalDateTime> abierto : abiertos.entrySet()) {
+					if (!abierto.getValue().equals(programadas.put(abierto.getKey(), abierto.getValue()))) {
+						salidas.add(new Salida(abierto.getKey(), abierto.getValue()));
+					}
+				}
+				planificar(0);
+			}
+		});
+	}
+
+	/**
+	 * Anota el estado actual de @viaje: si está abierto se programa su cierre y si no, se olvida
+	 * @param viaje
+	 */
+	public void registrar(Viaje viaje) {
+		if (!activo) {
+			return;
+		}
+		synchronized (bloqueo) {
+			if (viaje.getEstado() != EstadoViaje.ABIERTO) {
+				programadas.remove(viaje.getCodViaje());
+				return;
+			}
+			LocalDateTime fecha = viaje.getFechaSalida();
+			if (fecha.equals(programadas.put(viaje.getCodViaje(), fecha))) {
+				return;
+			}
+			salidas.add(new Salida(viaje.getCodViaje(), fecha));
+			if (horaSiguiente == null || fecha.isBefore(horaSiguiente)) {
+				planificar(0);
+			}
+		}
+	}
+
+	/**
+	 * Cierra los viajes programados que ya han salido según @reloj
+	 * @return número de viajes cerrados
+	 */
+	public int cerrarSalidos() {
+		LocalDateTime ahora = LocalDateTime.now(reloj);
+		List<Salida> salidos = new ArrayList<>();
+		synchronized (bloqueo) {
+			while (!salidas.isEmpty() && salidas.peek().fecha.isBefore(ahora)) {
+				Salida salida = salidas.poll();
+				// Si no coincide, el viaje ha cambiado de fecha o ya no está abierto
+				if (salida.fecha.equals(programadas.get(salida.codViaje))) {
+					programadas.remove(salida.codViaje);
+					salidos.add(salida);
+				}
+			}
+		}
+
+		if (salidos.isEmpty()) {
+			return 0;
+		}
+
+		int numCerrados = 0;
+		List<Integer> codigos = new ArrayList<>(salidos.size());
+		for (Salida salida : salidos) {
+			codigos.add(salida.codViaje);
+		}
+		try {
+			numCerrados = viajeDAO.cerrar(codigos, ahora);
+		} catch (RuntimeException e) {
+			// Se vuelven a programar para el siguiente intento
+			synchronized (bloqueo) {
+				for (Salida salida : salidos) {
+					if (programadas.putIfAbsent(salida.codViaje, salida.fecha) == null) {
+						salidas.add(salida);
+					}
+				}
+			}
+			throw e;
+		} finally {
+			for (int codViaje : codigos) {
+				versiones.cambioEnViaje(codViaje);
+			}
+		}
+		cerrados.increment(numCerrados);
+		return numCerrados;
+	}
+
+	private void ejecutar() {
+		long espera = 0;
+		try {
+			cerrarSalidos();
+		} catch (RuntimeException e) {
+			espera = ESPERA_REINTENTO_MS;
+		}
+		synchronized (bloqueo) {
+			planificar(espera);
+		}
+	}
+
+	/**
+	 * Programa la próxima ejecución para la primera salida, y no antes de @esperaMinimaMs.
+	 * Se llama con el bloqueo tomado
+	 */
+	private void planificar(long esperaMinimaMs) {
+		if (planificador == null) {
+			// Sin iniciar (p.ej. en las pruebas) sólo se lleva la cola: se cierra con cerrarSalidos
+			return;
+		}
+		if (siguiente != null) {
+			siguiente.cancel(false);
+		}
+		LocalDateTime ahora = LocalDateTime.now(reloj);
+		long espera = maxEsperaMs;
+		if (!salidas.isEmpty()) {
+			// Un viaje ha salido cuando su fecha queda antes de ahora: se espera un milisegundo más
+			long hastaSalida = Duration.between(ahora, salidas.peek().fecha).toMillis() + 1;
+			espera = Math.max(0, Math.min(espera, hastaSalida));
+		}
+		espera = Math.max(espera, esperaMinimaMs);
+		horaSiguiente = ahora.plusNanos(TimeUnit.MILLISECONDS.toNanos(espera));
+		siguiente = planificador.schedule(this::ejecutar, espera, TimeUnit.MILLISECONDS);
+	}
+
+	private static class Salida {
+		private final int codViaje;
+		private final LocalDateTime fecha;
+
+		private Salida(int codViaje, LocalDateTime fecha) {
+			this.codViaje = codViaje;
+			this.fecha = fecha;
+		}
+	}
+}
@@ -0,0 +1,65 @@
+package es.batbatcar.v2p4.modelo.services;
+
+/**
+ * Foto del estado del pool de conexiones en un instante
+ */
+public class EstadisticasPool {
+
+	private final int activas;
+	private final int ociosas;
+	private final int total;
+	private final int hilosEsperando;
+	private final long prestamos;
+	private final double esperaMediaMs;
+	private final double esperaMaximaMs;
+	private final long timeouts;
+	private final long conexionesCreadas;
+
+	public EstadisticasPool(int activas, int ociosas, int total, int hilosEsperando, MetricasPool metricas) {
+		this.activas = activas;
+		this.ociosas = ociosas;
+		this.total = total;
+		this.hilosEsperando = hilosEsperando;
+		this.prestamos = metricas.getPrestamos();
+		this.esperaMediaMs = prestamos == 0 ? 0 : metricas.getEsperaTotalNanos() / (prestamos * 1_000_000d);
+		this.esperaMaximaMs = metricas.getEsperaMaximaNanos() / 1_000_000d;
+		this.timeouts = metricas.getTimeouts();
+		this.conexionesCreadas = metricas.getConexionesCreadas();
+	}
+
+	public int getActivas() {
+		return activas;
+	}
+
+	public int getOciosas() {
+		return ociosas;
+	}
+
+	public int getTotal() {
+		return total;
+	}
+
+	public int getHilosEsperando() {
+		return hilosEsperando;
+	}
+
+	public long getPrestamos() {
+		return prestamos;
+	}
+
+	public double getEsperaMediaMs() {
+		return esperaMediaMs;
+	}
+
+	public double getEsperaMaximaMs() {
+		return esperaMaximaMs;
+	}
+
+	public long getTimeouts() {
+		return timeouts;
+	}
+
+	public long getConexionesCreadas() {
+		return conexionesCreadas;
+	}
+}
@@ -0,0 +1,241 @@
+package es.batbatcar.v2p4.modelo.services;
+
+import es.batbatcar.v2p4.exceptions.FilaNoValidaException;
+import es.batbatcar.v2p4.exceptions.InvalidEstadoViajeException;
+import es.batbatcar.v2p4.modelo.dao.cachedao.CachedReservaDAO;
+import es.batbatcar.v2p4.modelo.dao.cachedao.CachedViajeDAO;
+import es.batbatcar.v2p4.modelo.dao.sqldao.SQLCargaMasivaDAO;
+import es.batbatcar.v2p4.modelo.dao.sqldao.SQLGeneradorCodViaje;
+import es.batbatcar.v2p4.modelo.dto.Reserva;
+import es.batbatcar.v2p4.modelo.dto.viaje.EstadoViaje;
+import es.batbatcar.v2p4.modelo.dto.viaje.Viaje;
+import es.batbatcar.v2p4.utils.FormatoFilas;
+import es.batbatcar.v2p4.utils.LectorFilas;
+import es.batbatcar.v2p4.utils.Validator;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Map;
+
+/**
+ * Importación masiva de viajes y reservas desde CSV o JSON.
+ *
+ * La entrada se lee fila a fila, cada fila se valida con las mismas reglas que los formularios
+ * y las válidas se escriben por lotes. Columnas de viajes: codViaje (opcional, si falta se genera),
+ * propietario, ruta, fechaSalida (yyyy-MM-dd HH:mm), duracion, precio, plazasOfertadas y
+ * estadoViaje (opcional). Columnas de reservas: codigoReserva, usuario, plazasSolicitadas y
+ * fechaRealizacion (opcional).
+ */
+@Service
+public class ImportacionService {
+
+	private static final DateTimeFormatter FORMATO_FECHA = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
+
+	@Autowired
+	private SQLCargaMasivaDAO cargaMasivaDAO;
+
+	@Autowired
+	private SQLGeneradorCodViaje generadorCodViaje;
+
+	@Autowired
+	private CachedViajeDAO cachedViajeDAO;
+
+	@Autowired
+	private CachedReservaDAO cachedReservaDAO;
+
+	@Autowired
+	private VersionesDatos versiones;
+
+	@Autowired
+	private ReservasDiferidas reservasDiferidas;
+
+	@Autowired
+	private CicloVidaViajes cicloVidaViajes;
+
+	@Value("${batbatcar.importacion.max-rechazos:1000}")
+	private int maxRechazos;
+
+	/**
+	 * Importa los viajes de @in
+	 * @param in
+	 * @param formato
+	 * @return informe de la importación
+	 * @throws IOException si la entrada no se puede leer o no tiene el formato indicado
+	 */
+	public InformeImportacion importarViajes(InputStream in, FormatoFilas formato) throws IOException {
+		InformeImportacion informe = new InformeImportacion("viajes", maxRechazos);
+		try (
+				LectorFilas lector = LectorFilas.abrir(in, formato);
+				SQLCargaMasivaDAO.Carga<Viaje> carga = cargaMasivaDAO.cargarViajes(informe);
+			) {
+			while (lector.hasNext()) {
+				Map<String, String> fila = lector.next();
+				informe.leida();
+				try {
+					carga.add(lector.getNumFila(), parseViaje(fila));
+				} catch (FilaNoValidaException e) {
+					informe.rechazar(lector.getNumFila(), e.getMessage());
+				}
+			}
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		} finally {
+			// La secuencia se ha podido mover por debajo del bloque que tenía reservado el generador
+			generadorCodViaje.descartarBloque();
+			cachedViajeDAO.invalidarDestinos();
+			cicloVidaViajes.recargar();
+			versiones.cambioEnTodo();
+			informe.terminar();
+		}
+
+		return informe;
+	}
+
+	/**
+	 * Importa las reservas de @in. No se comprueban las plazas disponibles de cada viaje
+	 * @param in
+	 * @param formato
+	 * @return informe de la importación
+	 * @throws IOException si la entrada no se puede leer o no tiene el formato indicado
+	 */
+	public InformeImportacion importarReservas(InputStream in, FormatoFilas formato) throws IOException {
+		InformeImportacion informe = new InformeImportacion("reservas", maxRechazos);
+		// Las reservas pendientes de la escritura diferida tienen que estar antes en la base de datos:
+		// una importada con el mismo código haría que se ignorasen
+		reservasDiferidas.descartarTodo();
+		try (
+				LectorFilas lector = LectorFilas.abrir(in, formato);
+				SQLCargaMasivaDAO.Carga<Reserva> carga = cargaMasivaDAO.cargarReservas(informe);
+			) {
+			while (lector.hasNext()) {
+				Map<String, String> fila = lector.next();
+				informe.leida();
+				try {
+					carga.add(lector.getNumFila(), parseReserva(fila));
+				} catch (FilaNoValidaException e) {
+					informe.rechazar(lector.getNumFila(), e.getMessage());
+				}
+			}
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		} finally {
+			cachedReservaDAO.invalidarTodo();
+			reservasDiferidas.descartarTodo();
+			versiones.cambioEnTodo();
+			informe.terminar();
+		}
+
+		return informe;
+	}
+
+	private Viaje parseViaje(Map<String, String> fila) throws FilaNoValidaException {
+		String propietario = obligatorio(fila, "propietario");
+		String ruta = obligatorio(fila, "ruta");
+		String fechaSalida = obligatorio(fila, "fechaSalida");
+		long duracion;
+		float precio;
+		int plazasOfertadas;
+		try {
+			duracion = Long.parseLong(obligatorio(fila, "duracion"));
+			precio = Float.parseFloat(obligatorio(fila, "precio"));
+			plazasOfertadas = Integer.parseInt(obligatorio(fila, "plazasOfertadas"));
+		} catch (NumberFormatException e) {
+			throw new FilaNoValidaException("Los campos numéricos sólo puede contener números");
+		}
+
+		if (!Validator.isValidText(ruta, '-')) {
+			throw new FilaNoValidaException("La ruta debe cumplir el formato Origen-Destino");
+		}
+		if (!Validator.isValidNumber(plazasOfertadas)) {
+			throw new FilaNoValidaException("Las plazas ofertadas deben ser un valor entre 1 y 6");
+		}
+		if (!Validator.isValidText(propietario, ' ')) {
+			throw new FilaNoValidaException("El propietario debe contener al menos dos cadenas separadas por espacio en blanco y comiencen por mayúsculas");
+		}
+		if (!Validator.isValidNumber(precio)) {
+			throw new FilaNoValidaException("El precio debe ser un valor mayor a 0");
+		}
+		if (!Validator.isValidNumber(duracion)) {
+			throw new FilaNoValidaException("La duración debe ser un valor mayor a 0");
+		}
+		if (!Validator.isValidDateTime(fechaSalida)) {
+			throw new FilaNoValidaException("La fecha indicada no es válida");
+		}
+
+		EstadoViaje estado = EstadoViaje.ABIERTO;
+		String estadoViaje = fila.get("estadoViaje");
+		if (estadoViaje != null && !estadoViaje.isEmpty()) {
+			try {
+				estado = EstadoViaje.parse(estadoViaje);
+			} catch (InvalidEstadoViajeException e) {
+				throw new FilaNoValidaException(e.getMessage());
+			}
+		}
+
+		int codViaje;
+		String codigo = fila.get("codViaje");
+		if (codigo == null || codigo.isEmpty()) {
+			codViaje = generadorCodViaje.siguiente();
+		} else {
+			try {
+				codViaje = Integer.parseInt(codigo);
+			} catch (NumberFormatException e) {
+				throw new FilaNoValidaException("Los campos numéricos sólo puede contener números");
+			}
+		}
+
+		return new Viaje(codViaje, propietario, ruta, LocalDateTime.parse(fechaSalida, FORMATO_FECHA),
+				duracion, precio, plazasOfertadas, estado);
+	}
+
+	private Reserva parseReserva(Map<String, String> fila) throws FilaNoValidaException {
+		String codigoReserva = obligatorio(fila, "codigoReserva");
+		String usuario = obligatorio(fila, "usuario");
+		int plazasSolicitadas;
+		try {
+			plazasSolicitadas = Integer.parseInt(obligatorio(fila, "plazasSolicitadas"));
+		} catch (NumberFormatException e) {
+			throw new FilaNoValidaException("Los campos numéricos sólo puede contener números");
+		}
+
+		if (!codigoReserva.matches("\\d+-\\d+")) {
+			throw new FilaNoValidaException("El código de reserva debe tener el formato codViaje-numero");
+		}
+		if (!Validator.isValidText(usuario, ' ')) {
+			throw new FilaNoValidaException("El usuario debe contener al menos dos cadenas separadas por espacio en blanco y comiencen por mayúsculas");
+		}
+		if (!Validator.isValidNumber(plazasSolicitadas)) {
+			throw new FilaNoValidaException("Las plazas solicitadas deben ser un valor entre 1 y 6");
+		}
+
+		LocalDateTime fechaRealizacion = LocalDateTime.now();
+		String fecha = fila.get("fechaRealizacion");
+		if (fecha != null && !fecha.isEmpty()) {
+			if (!Validator.isValidDateTime(fecha)) {
+				throw new FilaNoValidaException("La fecha indicada no es válida");
+			}
+			fechaRealizacion = LocalDateTime.parse(fecha, FORMATO_FECHA);
+		}
+
+		try {
+			return new Reserva(codigoReserva, usuario, plazasSolicitadas, fechaRealizacion, null);
+		} catch (NumberFormatException e) {
+			throw new FilaNoValidaException("El código de reserva debe tener el formato codViaje-numero");
+		}
+	}
+
+	private static String obligatorio(Map<String, String> fila, String columna) throws FilaNoValidaException {
+		String valor = fila.get(columna);
+		if (valor == null || valor.isEmpty()) {
+			throw new FilaNoValidaException("Falta el campo " + columna);
+		}
+		return valor;
+	}
+}
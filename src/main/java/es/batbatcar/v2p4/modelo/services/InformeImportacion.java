@@ -0,0 +1,100 @@
+package es.batbatcar.v2p4.modelo.services;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Resultado de una importación masiva: filas leídas, importadas y rechazadas (con el motivo
+ * de cada rechazo) y velocidad de carga. Sólo se guardan los primeros @maxRechazos rechazos,
+ * aunque se cuentan todos.
+ */
+public class InformeImportacion {
+
+	private final String tabla;
+	private final int maxRechazos;
+	private final long inicio;
+	private final List<Rechazo> rechazos;
+	private int filasLeidas;
+	private int filasImportadas;
+	private int filasRechazadas;
+	private long duracionNanos;
+
+	public InformeImportacion(String tabla, int maxRechazos) {
+		this.tabla = tabla;
+		this.maxRechazos = maxRechazos;
+		this.inicio = System.nanoTime();
+		this.rechazos = new ArrayList<>();
+	}
+
+	public synchronized void leida() {
+		filasLeidas++;
+	}
+
+	public synchronized void importadas(int filas) {
+		filasImportadas += filas;
+	}
+
+	public synchronized void rechazar(int fila, String motivo) {
+		filasRechazadas++;
+		if (rechazos.size() < maxRechazos) {
+			rechazos.add(new Rechazo(fila, motivo));
+		}
+	}
+
+	public synchronized void terminar() {
+		duracionNanos = System.nanoTime() - inicio;
+	}
+
+	public String getTabla() {
+		return tabla;
+	}
+
+	public synchronized int getFilasLeidas() {
+		return filasLeidas;
+	}
+
+	public synchronized int getFilasImportadas() {
+		return filasImportadas;
+	}
+
+	public synchronized int getFilasRechazadas() {
+		return filasRechazadas;
+	}
+
+	public synchronized double getSegundos() {
+		return duracionNanos / 1e9;
+	}
+
+	public synchronized double getFilasPorSegundo() {
+		return duracionNanos == 0 ? 0 : filasImportadas / getSegundos();
+	}
+
+	public synchronized List<Rechazo> getRechazos() {
+		return Collections.unmodifiableList(new ArrayList<>(rechazos));
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s: %d filas leídas, %d importadas, %d rechazadas en %.2f s (%.0f filas/s)",
+				tabla, getFilasLeidas(), getFilasImportadas(), getFilasRechazadas(), getSegundos(), getFilasPorSegundo());
+	}
+
+	public static class Rechazo {
+		private final int fila;
+		private final String motivo;
+
+		public Rechazo(int fila, String motivo) {
+			this.fila = fila;
+			this.motivo = motivo;
+		}
+
+		public int getFila() {
+			return fila;
+		}
+
+		public String getMotivo() {
+			return motivo;
+		}
+	}
+}
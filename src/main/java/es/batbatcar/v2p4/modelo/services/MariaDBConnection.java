@@ -1,45 +1,115 @@
 package es.batbatcar.v2p4.modelo.services;
 
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+
+import es.batbatcar.v2p4.exceptions.DatabaseConnectionException;
+
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.SQLException;
 
+import javax.annotation.PreDestroy;
+import javax.sql.DataSource;
+
+/**
+ * Pool de conexiones a la base de datos.
+ *
+ * Cada llamada a {@link #getConnection()} presta una conexión del pool que debe cerrarse
+ * (try-with-resources) para devolverla. El pool valida las conexiones al prestarlas, descarta
+ * las ociosas y sustituye las que se hayan caído, por lo que la aplicación se recupera sola
+ * si se reinicia el servidor de base de datos.
+ */
 @Service
 public class MariaDBConnection {
 
-   private static Connection connection;
-   private String ip;
-   private String database;
-   private String userName;
-   private String password;
+   private final HikariDataSource dataSource;
+   private final MetricasPool metricas;
+
+   public MariaDBConnection(
+		   @Value("${spring.datasource.url}") String url,
+		   @Value("${spring.datasource.username}") String userName,
+		   @Value("${spring.datasource.password}") String password,
+		   @Value("${batbatcar.pool.min-idle:2}") int minIdle,
+		   @Value("${batbatcar.pool.max-size:10}") int maxSize,
+		   @Value("${batbatcar.pool.connection-timeout-ms:5000}") long connectionTimeout,
+		   @Value("${batbatcar.pool.validation-timeout-ms:2000}") long validationTimeout,
+		   @Value("${batbatcar.pool.idle-timeout-ms:300000}") long idleTimeout,
+		   @Value("${batbatcar.pool.max-lifetime-ms:1800000}") long maxLifetime,
+		   @Value("${batbatcar.pool.keepalive-ms:120000}") long keepalive,
+		   @Value("${batbatcar.jdbc.use-server-prep-stmts:true}") boolean useServerPrepStmts,
+		   @Value("${batbatcar.jdbc.prep-stmt-cache-size:250}") int prepStmtCacheSize) {
+
+	   this.metricas = new MetricasPool();
+
+	   HikariConfig config = new HikariConfig();
+	   config.setPoolName("batbatcar");
+	   config.setJdbcUrl(url);
+	   config.setUsername(userName);
+	   config.setPassword(password);
+	   config.setMinimumIdle(minIdle);
+	   config.setMaximumPoolSize(maxSize);
+	   config.setConnectionTimeout(connectionTimeout);
+	   config.setValidationTimeout(validationTimeout);
+	   config.setIdleTimeout(idleTimeout);
+	   config.setMaxLifetime(maxLifetime);
+	   config.setKeepaliveTime(keepalive);
+	   // No se detiene el arranque si la base de datos todavía no está disponible
+	   config.setInitializationFailTimeout(-1);
+	   config.setMetricsTrackerFactory(metricas);
 
-   public MariaDBConnection() {
+	   // Sentencias preparadas en el servidor y cacheadas por conexión: cada consulta se analiza
+	   // una sola vez por conexión y después sólo se envían los parámetros. Son opciones del driver
+	   // de MariaDB; otros drivers (la base de datos embebida de los benchmarks) las rechazarían
+	   if (url.startsWith("jdbc:mariadb:")) {
+		   config.addDataSourceProperty("useServerPrepStmts", useServerPrepStmts);
+		   config.addDataSourceProperty("cachePrepStmts", true);
+		   config.addDataSourceProperty("prepStmtCacheSize", prepStmtCacheSize);
+	   }
 
-	   // Modifica estos datos para que se adapte a tu desarrollo
-	   
-       this.ip = "localhost";
-       this.database = "batbatcar";
-       this.userName = "root";
-       this.password = "1234";
+	   this.dataSource = new HikariDataSource(config);
    }
-   
+
+   /**
+    * Obtiene una conexión del pool. Quien la pide es responsable de cerrarla.
+    * @return Connection
+    * @throws DatabaseConnectionException si no se obtiene una conexión en el tiempo configurado
+    */
    public Connection getConnection() {
-	   
-	   if (this.connection == null) {
-           try {
-               String dbURL = "jdbc:mariadb://" + ip + "/" + database;
-               Connection connection = DriverManager.getConnection(dbURL, userName, password);
-               this.connection = connection;
-               System.out.println("Conexion valida: " + connection.isValid(20));
+	   try {
+		   return dataSource.getConnection();
+	   } catch (SQLException e) {
+		   throw new DatabaseConnectionException(e.getMessage());
+	   }
+   }
 
-           } catch (SQLException e) {
-               throw new RuntimeException(e.getMessage());
-           }
-       }
+   public DataSource getDataSource() {
+	   return dataSource;
+   }
 
-       return this.connection;
+   /**
+    * Obtiene una foto del estado actual del pool
+    * @return EstadisticasPool
+    */
+   public EstadisticasPool getEstadisticas() {
+	   HikariPoolMXBean pool = dataSource.getHikariPoolMXBean();
+	   if (pool == null) {
+		   return new EstadisticasPool(0, 0, 0, 0, metricas);
+	   }
+
+	   return new EstadisticasPool(
+			   pool.getActiveConnections(),
+			   pool.getIdleConnections(),
+			   pool.getTotalConnections(),
+			   pool.getThreadsAwaitingConnection(),
+			   metricas);
+   }
 
+   @PreDestroy
+   public void close() {
+	   dataSource.close();
    }
 }
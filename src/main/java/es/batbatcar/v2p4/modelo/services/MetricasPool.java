@@ -0,0 +1,63 @@
+package es.batbatcar.v2p4.modelo.services;
+
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
+import com.zaxxer.hikari.metrics.PoolStats;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+
+/**
+ * Acumula los tiempos de espera y los timeouts que notifica el pool de conexiones
+ */
+public class MetricasPool implements MetricsTrackerFactory {
+
+	private final AtomicLong prestamos = new AtomicLong();
+	private final AtomicLong esperaTotalNanos = new AtomicLong();
+	private final LongAccumulator esperaMaximaNanos = new LongAccumulator(Long::max, 0);
+	private final AtomicLong timeouts = new AtomicLong();
+	private final AtomicLong conexionesCreadas = new AtomicLong();
+
+	@Override
+	public IMetricsTracker create(String poolName, PoolStats poolStats) {
+		return new IMetricsTracker() {
+
+			@Override
+			public void recordConnectionAcquiredNanos(long elapsedAcquiredNanos) {
+				prestamos.incrementAndGet();
+				esperaTotalNanos.addAndGet(elapsedAcquiredNanos);
+				esperaMaximaNanos.accumulate(elapsedAcquiredNanos);
+			}
+
+			@Override
+			public void recordConnectionTimeout() {
+				timeouts.incrementAndGet();
+			}
+
+			@Override
+			public void recordConnectionCreatedMillis(long connectionCreatedMillis) {
+				conexionesCreadas.incrementAndGet();
+			}
+		};
+	}
+
+	public long getPrestamos() {
+		return prestamos.get();
+	}
+
+	public long getEsperaTotalNanos() {
+		return esperaTotalNanos.get();
+	}
+
+	public long getEsperaMaximaNanos() {
+		return esperaMaximaNanos.get();
+	}
+
+	public long getTimeouts() {
+		return timeouts.get();
+	}
+
+	public long getConexionesCreadas() {
+		return conexionesCreadas.get();
+	}
+}
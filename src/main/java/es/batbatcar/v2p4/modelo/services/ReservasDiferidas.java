@@ -0,0 +1,680 @@
+package es.batbatcar.v2p4.modelo.services;
+
+import es.batbatcar.v2p4.exceptions.DatabaseConnectionException;
+import es.batbatcar.v2p4.exceptions.LoteRechazadoException;
+import es.batbatcar.v2p4.exceptions.ReservaNoGuardadaException;
+import es.batbatcar.v2p4.exceptions.ReservaNoValidaException;
+import es.batbatcar.v2p4.modelo.dao.cachedao.CachedReservaDAO;
+import es.batbatcar.v2p4.modelo.dao.sqldao.SQLReservaDAO;
+import es.batbatcar.v2p4.modelo.dto.Reserva;
+import es.batbatcar.v2p4.modelo.dto.viaje.Viaje;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+/**
+ * Escritura diferida (write-behind) de las reservas, activada con batbatcar.reservas.escritura-diferida.
+ *
+ * Las reservas se comprueban contra el estado en memoria de su viaje (plazas reservadas, usuarios
+ * y última reserva, cargado de la base de datos la primera vez), se anotan en un diario local y
+ * se confirman al usuario en cuanto el diario está en disco. Un hilo las inserta después en la base
+ * de datos por lotes de @tamLote, una transacción por lote, cada @intervaloMs milisegundos. Si la
+ * aplicación se cae, al arrancar se reenvían las del diario (las ya insertadas se ignoran, y las
+ * que no llegaron a estar en disco se quitan o se anulan en el diario al fallar).
+ *
+ * Las reservas pendientes tardan como mucho un intervalo en aparecer en los listados. Cualquier
+ * otra escritura sobre un viaje o sus reservas debe llamar antes a {@link #descartar(int)}, que
+ * escribe las pendientes de ese viaje y olvida su estado. Sólo es válido con una única instancia de
+ * la aplicación escribiendo en la base de datos.
+ *
+ * Un lote que falla por un error de conexión se reintenta entero. Si la base de datos no admite
+ * alguna de sus reservas (p.ej. un dato más largo que la columna), el lote se escribe de una en
+ * una y las que no admite se apartan: se anulan en el diario, se cuentan y se dejan en
+ * {@link #getRechazadas()} en lugar de reintentarse y bloquear a las demás.
+ */
+@Service
+public class ReservasDiferidas {
+
+	private static final Logger log = LoggerFactory.getLogger(ReservasDiferidas.class);
+
+	private static final String SEPARADOR = "\t";
+	// Primer campo de las líneas que anulan una reserva anotada cuyo force() ha fallado
+	private static final String ANULADA = "X";
+
+	private final boolean activa;
+	private final long intervaloMs;
+	private final int tamLote;
+	private final int maxPendientes;
+	private final Path rutaDiario;
+	private final AbridorDiario abridorDiario;
+	private final SQLReservaDAO sqlReservaDAO;
+	private final CachedReservaDAO cachedReservaDAO;
+	private final VersionesDatos versiones;
+	private final Clock reloj;
+
+	private final Map<Integer, EstadoViaje> estados = new ConcurrentHashMap<>();
+
+	// Protege las reservas pendientes, el diario y sus contadores
+	private final Object bloqueo = new Object();
+	private final Set<Reserva> pendientes = new LinkedHashSet<>();
+	// Pendientes que algún hilo está escribiendo: siguen en pendientes hasta que se confirman
+	private final Set<Reserva> enCurso = new HashSet<>();
+	// Reservas que la base de datos no admite: ya no están pendientes ni en el diario
+	private final List<Reserva> rechazadas = new ArrayList<>();
+	private FileChannel diario;
+	private long bytesEscritos;
+	private int sinEncolar;
+	private boolean diarioVacio = true;
+
+	// Sincronizaciones del diario agrupadas: un force() cubre todo lo escrito hasta ese momento
+	private final Object sincronizacion = new Object();
+	private volatile long bytesSincronizados;
+
+	private ScheduledExecutorService escritor;
+
+	private final Timer latenciaCommit;
+	private final Timer latenciaDiario;
+	private final DistributionSummary tamLotes;
+	private final Counter ignoradas;
+	private final Counter errores;
+	private final Counter rechazos;
+
+	@Autowired
+	public ReservasDiferidas(
+			SQLReservaDAO sqlReservaDAO,
+			CachedReservaDAO cachedReservaDAO,
+			VersionesDatos versiones,
+			Clock reloj,
+			MeterRegistry registry,
+			@Value("${batbatcar.reservas.escritura-diferida:false}") boolean activa,
+			@Value("${batbatcar.reservas.diferidas.intervalo-ms:50}") long intervaloMs,
+			@Value("${batbatcar.reservas.diferidas.tam-lote:200}") int tamLote,
+			@Value("${batbatcar.reservas.diferidas.max-pendientes:10000}") int maxPendientes,
+			@Value("${batbatcar.reservas.diferidas.diario:data/reservas-pendientes.log}") String rutaDiario) {
+		this(sqlReservaDAO, cachedReservaDAO, versiones, reloj, registry, activa, intervaloMs, tamLote, maxPendientes,
+				rutaDiario, ReservasDiferidas::abrirDiario);
+	}
+
+	/**
+	 * @param abridorDiario abre el canal en el que se anotan las reservas (en las pruebas, uno que falla)
+	 */
+	ReservasDiferidas(SQLReservaDAO sqlReservaDAO, CachedReservaDAO cachedReservaDAO, VersionesDatos versiones,
+			Clock reloj, MeterRegistry registry, boolean activa, long intervaloMs, int tamLote, int maxPendientes,
+			String rutaDiario, AbridorDiario abridorDiario) {
+		this.sqlReservaDAO = sqlReservaDAO;
+		this.cachedReservaDAO = cachedReservaDAO;
+		this.versiones = versiones;
+		this.reloj = reloj;
+		this.activa = activa;
+		this.intervaloMs = intervaloMs;
+		this.tamLote = tamLote;
+		this.maxPendientes = maxPendientes;
+		this.rutaDiario = Paths.get(rutaDiario);
+		this.abridorDiario = abridorDiario;
+
+		Gauge.builder("batbatcar.reservas.diferidas.pendientes", this, ReservasDiferidas::getNumPendientes)
+				.description("Reservas confirmadas que aún no se han escrito en la base de datos")
+				.register(registry);
+		this.latenciaCommit = Timer.builder("batbatcar.reservas.diferidas.commit")
+				.description("Tiempo de escritura y confirmación de cada lote")
+				.register(registry);
+		this.latenciaDiario = Timer.builder("batbatcar.reservas.diferidas.diario")
+				.description("Tiempo de espera hasta que la reserva está en el diario en disco")
+				.register(registry);
+		this.tamLotes = DistributionSummary.builder("batbatcar.reservas.diferidas.lote")
+				.description("Reservas por lote escrito")
+				.register(registry);
+		this.ignoradas = Counter.builder("batbatcar.reservas.diferidas.ignoradas")
+				.description("Reservas del diario que ya estaban en la base de datos")
+				.register(registry);
+		this.errores = Counter.builder("batbatcar.reservas.diferidas.errores")
+				.description("Lotes que no se han podido escribir y se reintentan, y fallos al vaciar o corregir el diario")
+				.register(registry);
+		this.rechazos = Counter.builder("batbatcar.reservas.diferidas.rechazadas")
+				.description("Reservas confirmadas que la base de datos no admite y no se reintentan")
+				.register(registry);
+	}
+
+	@PostConstruct
+	public void iniciar() throws IOException {
+		if (!activa) {
+			return;
+		}
+
+		if (rutaDiario.getParent() != null) {
+			Files.createDirectories(rutaDiario.getParent());
+		}
+		// Lo que quede en el diario es de una ejecución anterior que no llegó a escribirlo
+		if (Files.exists(rutaDiario)) {
+			// Una anulación sólo quita la reserva escrita antes que ella: el código se puede haber
+			// vuelto a usar después de un reinicio
+			Map<String, Reserva> anotadas = new LinkedHashMap<>();
+			try (BufferedReader lector = Files.newBufferedReader(rutaDiario, StandardCharsets.UTF_8)) {
+				String linea;
+				while ((linea = lector.readLine()) != null) {
+					if (linea.startsWith(ANULADA + SEPARADOR)) {
+						anotadas.remove(leerAnulada(linea));
+						diarioVacio = false;
+					} else if (!linea.isEmpty()) {
+						Reserva reserva = leer(linea);
+						anotadas.put(reserva.getCodigoReserva(), reserva);
+						diarioVacio = false;
+					}
+				}
+			}
+			pendientes.addAll(anotadas.values());
+		}
+		diario = abridorDiario.abrir(rutaDiario);
+
+		escritor = Executors.newSingleThreadScheduledExecutor(tarea -> {
+			Thread hilo = new Thread(tarea, "reservas-diferidas");
+			hilo.setDaemon(true);
+			return hilo;
+		});
+		escritor.scheduleWithFixedDelay(this::escribirPendientes, 0, intervaloMs, TimeUnit.MILLISECONDS);
+	}
+
+	@PreDestroy
+	public void detener() throws IOException {
+		if (!activa) {
+			return;
+		}
+		escritor.shutdown();
+		try {
+			escritor.awaitTermination(10, TimeUnit.SECONDS);
+			vaciar();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (DatabaseConnectionException e) {
+			// Lo pendiente sigue en el diario y se escribirá en el próximo arranque
+		} finally {
+			diario.close();
+		}
+	}
+
+	private static FileChannel abrirDiario(Path ruta) throws IOException {
+		return FileChannel.open(ruta, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+	}
+
+	@FunctionalInterface
+	interface AbridorDiario {
+		FileChannel abrir(Path ruta) throws IOException;
+	}
+
+	public boolean isActiva() {
+		return activa;
+	}
+
+	public int getNumPendientes() {
+		synchronized (bloqueo) {
+			return pendientes.size();
+		}
+	}
+
+	/**
+	 * Reservas confirmadas al usuario que la base de datos no ha admitido (desde el arranque)
+	 * @return
+	 */
+	public List<Reserva> getRechazadas() {
+		synchronized (bloqueo) {
+			return new ArrayList<>(rechazadas);
+		}
+	}
+
+	/**
+	 * Realiza una reserva en @viaje con las mismas comprobaciones que {@link SQLReservaDAO#reservar}.
+	 * Cuando vuelve, la reserva está en el diario pero puede que aún no esté en la base de datos
+	 * @param viaje
+	 * @param usuario
+	 * @param plazasSolicitadas
+	 * @return la reserva realizada
+	 * @throws ReservaNoValidaException
+	 */
+	public Reserva reservar(Viaje viaje, String usuario, int plazasSolicitadas) throws ReservaNoValidaException {
+		while (true) {
+			EstadoViaje estado = estados.computeIfAbsent(viaje.getCodViaje(), codViaje -> new EstadoViaje());
+			synchronized (estado) {
+				if (estado.descartado) {
+					// Otra escritura lo ha descartado mientras se esperaba: se vuelve a cargar
+					continue;
+				}
+				if (!estado.cargado) {
+					try {
+						cargar(estado, viaje);
+					} catch (DatabaseConnectionException e) {
+						throw new ReservaNoGuardadaException("Error al guardar la reserva");
+					}
+				}
+
+				if (viaje.getPropietario().equals(usuario)) {
+					throw new ReservaNoValidaException("Eres el propietario del viaje");
+				}
+				if (!viaje.estaDisponible() || viaje.haSalido(reloj)) {
+					throw new ReservaNoValidaException("El viaje está cerrado o cancelado");
+				}
+				if (estado.usuarios.contains(usuario)) {
+					throw new ReservaNoValidaException("Ya has realizado una reserva");
+				}
+				if (plazasSolicitadas > viaje.getPlazasOfertadas() - estado.plazasReservadas) {
+					throw new ReservaNoValidaException("No quedan suficientes plazas");
+				}
+
+				Reserva reserva = new Reserva(viaje.getCodViaje(), estado.ultimaReserva + 1, usuario, plazasSolicitadas, viaje);
+				// El número se gasta aunque falle: el diario puede tener una línea que anula este código
+				estado.ultimaReserva = reserva.getNumReserva();
+				anotar(reserva);
+				estado.plazasReservadas += plazasSolicitadas;
+				estado.usuarios.add(usuario);
+				return reserva;
+			}
+		}
+	}
+
+	/**
+	 * Carga de la base de datos el estado de un viaje, incluidas sus reservas aún pendientes
+	 */
+	private void cargar(EstadoViaje estado, Viaje viaje) {
+		// Primero las pendientes: una que se escriba mientras se lee la base de datos estará en
+		// alguna de las dos listas (las nuevas de este viaje no pueden llegar, se tiene su bloqueo)
+		List<Reserva> reservas = new ArrayList<>();
+		synchronized (bloqueo) {
+			for (Reserva reserva : pendientes) {
+				if (reserva.getCodigoViaje() == viaje.getCodViaje()) {
+					reservas.add(reserva);
+				}
+			}
+		}
+		int ultimaReserva = sqlReservaDAO.getUltimaReserva(viaje);
+		reservas.addAll(sqlReservaDAO.findAllByTravel(viaje));
+
+		Set<String> codigos = new HashSet<>();
+		for (Reserva reserva : reservas) {
+			if (codigos.add(reserva.getCodigoReserva())) {
+				estado.plazasReservadas += reserva.getPlazasSolicitadas();
+				estado.usuarios.add(reserva.getUsuario());
+				ultimaReserva = Math.max(ultimaReserva, reserva.getNumReserva());
+			}
+		}
+		estado.ultimaReserva = ultimaReserva;
+		estado.cargado = true;
+	}
+
+	/**
+	 * Escribe la reserva en el diario, espera a que esté en disco y la deja pendiente de escribir.
+	 * Si no llega al disco, la reserva se quita del diario (ver {@link #anular})
+	 */
+	private void anotar(Reserva reserva) throws ReservaNoValidaException {
+		byte[] linea = (escribir(reserva) + "\n").getBytes(StandardCharsets.UTF_8);
+		long desde = -1;
+		long hasta;
+		synchronized (bloqueo) {
+			if (pendientes.size() + sinEncolar >= maxPendientes) {
+				throw new ReservaNoGuardadaException("Hay demasiadas reservas pendientes de guardar, inténtalo más tarde");
+			}
+			try {
+				desde = diario.size();
+				ByteBuffer buffer = ByteBuffer.wrap(linea);
+				while (buffer.hasRemaining()) {
+					diario.write(buffer);
+				}
+			} catch (IOException e) {
+				// Puede haberse escrito parte de la línea, y el diario no se podría leer al arrancar
+				if (desde >= 0) {
+					truncar(desde);
+				}
+				throw new ReservaNoGuardadaException("Error al guardar la reserva");
+			}
+			bytesEscritos += linea.length;
+			hasta = bytesEscritos;
+			diarioVacio = false;
+			sinEncolar++;
+		}
+
+		boolean sincronizada = false;
+		try {
+			latenciaDiario.recordCallable(() -> {
+				sincronizar(hasta);
+				return null;
+			});
+			sincronizada = true;
+		} catch (Exception e) {
+			// Al usuario se le dice que no hay reserva: no debe quedar en el diario
+			anular(reserva, desde, linea.length);
+			throw new ReservaNoGuardadaException("Error al guardar la reserva");
+		} finally {
+			synchronized (bloqueo) {
+				sinEncolar--;
+				if (sincronizada) {
+					pendientes.add(reserva);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Quita del diario la reserva que se escribió a partir de @desde y no ha llegado al disco. Si
+	 * es lo último escrito se trunca el diario; si no, se añade una línea que la anula y que se
+	 * tiene en cuenta al reenviar el diario en el arranque
+	 */
+	private void anular(Reserva reserva, long desde, int longitud) {
+		// Con el bloqueo de las sincronizaciones no hay ningún force() en curso que pueda dar por
+		// sincronizados bytes que se van a truncar
+		synchronized (sincronizacion) {
+			synchronized (bloqueo) {
+				try {
+					if (diario.size() == desde + longitud) {
+						diario.truncate(desde);
+						bytesEscritos -= longitud;
+						bytesSincronizados = Math.min(bytesSincronizados, bytesEscritos);
+					} else {
+						escribirAnulacion(reserva);
+					}
+					diario.force(false);
+				} catch (IOException e) {
+					// Si el disco tampoco admite esto, la reserva se reenviará al arrancar
+					errores.increment();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Añade al diario la línea que anula @reserva. Se llama con los bloqueos tomados
+	 */
+	private void escribirAnulacion(Reserva reserva) throws IOException {
+		byte[] linea = (ANULADA + SEPARADOR + escribir(reserva) + "\n").getBytes(StandardCharsets.UTF_8);
+		ByteBuffer buffer = ByteBuffer.wrap(linea);
+		while (buffer.hasRemaining()) {
+			diario.write(buffer);
+		}
+		bytesEscritos += linea.length;
+	}
+
+	/**
+	 * Quita del diario lo escrito a partir de @desde, que no se ha contado en bytesEscritos. Se
+	 * llama con el bloqueo tomado
+	 */
+	private void truncar(long desde) {
+		try {
+			diario.truncate(desde);
+		} catch (IOException e) {
+			errores.increment();
+		}
+	}
+
+	private void sincronizar(long hasta) throws IOException {
+		if (bytesSincronizados >= hasta) {
+			return;
+		}
+		synchronized (sincronizacion) {
+			if (bytesSincronizados >= hasta) {
+				return;
+			}
+			long escritos;
+			synchronized (bloqueo) {
+				escritos = bytesEscritos;
+			}
+			diario.force(false);
+			bytesSincronizados = escritos;
+		}
+	}
+
+	private void escribirPendientes() {
+		try {
+			vaciar();
+		} catch (RuntimeException e) {
+			// Se reintenta en el siguiente intervalo (si la excepción se escapa, no se vuelve a programar)
+			errores.increment();
+		}
+	}
+
+	/**
+	 * Escribe en la base de datos todas las reservas pendientes
+	 * @throws DatabaseConnectionException si algún lote no se ha podido escribir (sigue pendiente)
+	 */
+	public void vaciar() {
+		if (!activa) {
+			return;
+		}
+		vaciar(reserva -> true);
+	}
+
+	/**
+	 * Escribe las reservas pendientes que cumplen @filtro, incluidas las que está escribiendo otro
+	 * hilo, a las que se espera. Varios hilos pueden vaciar a la vez: cada lote lo escribe uno solo
+	 */
+	private void vaciar(Predicate<Reserva> filtro) {
+		while (true) {
+			List<Reserva> lote = new ArrayList<>(tamLote);
+			synchronized (bloqueo) {
+				boolean esperar = false;
+				for (Reserva reserva : pendientes) {
+					if (lote.size() == tamLote) {
+						break;
+					}
+					if (filtro.test(reserva)) {
+						if (enCurso.contains(reserva)) {
+							esperar = true;
+						} else {
+							lote.add(reserva);
+						}
+					}
+				}
+				if (lote.isEmpty()) {
+					if (!esperar) {
+						vaciarDiario();
+						return;
+					}
+					// Si el otro hilo no llega a escribirlas, vuelven a estar libres y se escriben aquí
+					esperarEnCurso();
+					continue;
+				}
+				enCurso.addAll(lote);
+			}
+
+			try {
+				escribirLote(lote);
+			} finally {
+				synchronized (bloqueo) {
+					enCurso.removeAll(lote);
+					bloqueo.notifyAll();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Espera a que termine alguna escritura en curso. Se llama con el bloqueo tomado
+	 */
+	private void esperarEnCurso() {
+		try {
+			bloqueo.wait();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new DatabaseConnectionException("Interrumpido mientras se escribían las reservas pendientes");
+		}
+	}
+
+	private void escribirLote(List<Reserva> lote) {
+		long inicio = System.nanoTime();
+		try {
+			int insertadas = cachedReservaDAO.addAll(lote);
+			ignoradas.increment(lote.size() - insertadas);
+		} catch (LoteRechazadoException e) {
+			// Una reserva que la base de datos no admite no debe bloquear a las que van detrás
+			escribirUnaAUna(lote);
+		}
+		latenciaCommit.record(System.nanoTime() - inicio, TimeUnit.NANOSECONDS);
+		tamLotes.record(lote.size());
+
+		Set<Integer> viajes = new LinkedHashSet<>();
+		synchronized (bloqueo) {
+			for (Reserva reserva : lote) {
+				// Las rechazadas ya se han quitado
+				pendientes.remove(reserva);
+				viajes.add(reserva.getCodigoViaje());
+			}
+		}
+		for (int codViaje : viajes) {
+			versiones.cambioEnViaje(codViaje);
+		}
+	}
+
+	/**
+	 * Escribe las reservas de @lote de una en una, apartando las que la base de datos no admite.
+	 * Un error de conexión se propaga y el lote se reintenta (las ya escritas se ignorarán)
+	 */
+	private void escribirUnaAUna(List<Reserva> lote) {
+		for (Reserva reserva : lote) {
+			try {
+				if (cachedReservaDAO.addAll(List.of(reserva)) == 0) {
+					ignoradas.increment();
+				}
+			} catch (LoteRechazadoException e) {
+				rechazar(reserva, e);
+			}
+		}
+	}
+
+	/**
+	 * Aparta @reserva, que la base de datos no admite: se quita de las pendientes, se anula en el
+	 * diario para que no se reenvíe al arrancar y se olvida el estado de su viaje, que la contaba
+	 */
+	private void rechazar(Reserva reserva, LoteRechazadoException e) {
+		log.error("La base de datos no admite la reserva {} ({}), no se reintentará: {}",
+				reserva.getCodigoReserva(), escribir(reserva), e.getMessage());
+		rechazos.increment();
+		synchronized (sincronizacion) {
+			synchronized (bloqueo) {
+				pendientes.remove(reserva);
+				rechazadas.add(reserva);
+				try {
+					escribirAnulacion(reserva);
+					diario.force(false);
+				} catch (IOException ex) {
+					// Si no se anula, se volverá a intentar (y a rechazar) en el próximo arranque
+					errores.increment();
+				}
+			}
+		}
+		olvidar(reserva.getCodigoViaje());
+	}
+
+	/**
+	 * Vacía el diario si todo lo anotado está ya en la base de datos. Se llama con el bloqueo tomado
+	 */
+	private void vaciarDiario() {
+		if (diarioVacio || sinEncolar > 0 || !pendientes.isEmpty()) {
+			return;
+		}
+		try {
+			diario.truncate(0);
+			diario.force(false);
+			diarioVacio = true;
+		} catch (IOException e) {
+			// Si no se vacía, las reservas se reenviarán en el próximo arranque y se ignorarán
+			errores.increment();
+		}
+	}
+
+	/**
+	 * Escribe las reservas pendientes del viaje @codViaje (sólo esas: las de otros viajes las sigue
+	 * escribiendo el hilo de fondo) y olvida su estado en memoria. Se debe llamar antes (y después)
+	 * de cualquier otra escritura sobre el viaje o sus reservas
+	 * @param codViaje
+	 * @throws DatabaseConnectionException si no se han podido escribir (siguen pendientes)
+	 */
+	public void descartar(int codViaje) {
+		if (!activa) {
+			return;
+		}
+		olvidar(codViaje);
+		vaciar(reserva -> reserva.getCodigoViaje() == codViaje);
+	}
+
+	/**
+	 * Escribe las reservas pendientes y olvida el estado de todos los viajes (p.ej. antes y después
+	 * de una importación masiva)
+	 */
+	public void descartarTodo() {
+		if (!activa) {
+			return;
+		}
+		for (Integer codViaje : new ArrayList<>(estados.keySet())) {
+			olvidar(codViaje);
+		}
+		vaciar();
+	}
+
+	/**
+	 * Olvida el estado en memoria del viaje @codViaje: la próxima reserva lo vuelve a cargar
+	 */
+	private void olvidar(int codViaje) {
+		EstadoViaje estado = estados.remove(codViaje);
+		if (estado != null) {
+			synchronized (estado) {
+				estado.descartado = true;
+			}
+		}
+	}
+
+	private static String escribir(Reserva reserva) {
+		return reserva.getCodigoViaje() + SEPARADOR + reserva.getNumReserva() + SEPARADOR + reserva.getPlazasSolicitadas()
+				+ SEPARADOR + reserva.getFechaRealizacion() + SEPARADOR + reserva.getUsuario();
+	}
+
+	private static Reserva leer(String linea) {
+		String[] campos = linea.split(SEPARADOR, 5);
+		int codViaje = Integer.parseInt(campos[0]);
+		return new Reserva(codViaje, Integer.parseInt(campos[1]), campos[4], Integer.parseInt(campos[2]),
+				LocalDateTime.parse(campos[3]), null);
+	}
+
+	private static String leerAnulada(String linea) {
+		return leer(linea.substring(ANULADA.length() + SEPARADOR.length())).getCodigoReserva();
+	}
+
+	private static class EstadoViaje {
+		private boolean cargado;
+		private boolean descartado;
+		private int plazasReservadas;
+		private int ultimaReserva;
+		private final Set<String> usuarios = new HashSet<>();
+	}
+}
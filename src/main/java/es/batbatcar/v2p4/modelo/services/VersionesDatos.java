@@ -0,0 +1,84 @@
+package es.batbatcar.v2p4.modelo.services;
+
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Versiones de los datos para las peticiones condicionales (ETag).
+ *
+ * Hay una versión global, que cambia con cualquier escritura, y una por viaje, que cambia con
+ * las escrituras sobre el viaje o sus reservas. Las versiones empiezan en 0 en cada arranque, por
+ * eso las etiquetas incluyen además el instante de arranque: una etiqueta anterior a un reinicio
+ * nunca coincide.
+ *
+ * Las versiones viven en la memoria de esta instancia y sólo cambian con las escrituras que pasan
+ * por ella. Sólo es válido con una única instancia de la aplicación escribiendo en la base de
+ * datos (como {@link ReservasDiferidas}): si otra instancia o alguien desde fuera cambia los datos,
+ * esta seguiría respondiendo 304 y sirviendo fragmentos con la versión anterior.
+ */
+@Service
+public class VersionesDatos {
+
+	private final long arranque;
+	private final AtomicLong global;
+	private final Map<Integer, AtomicLong> porViaje;
+
+	// Se suma a la versión de todos los viajes cuando cambian datos sin saber de qué viajes son
+	private final AtomicLong generacion;
+
+	public VersionesDatos() {
+		this.arranque = System.currentTimeMillis();
+		this.global = new AtomicLong();
+		this.porViaje = new ConcurrentHashMap<>();
+		this.generacion = new AtomicLong();
+	}
+
+	/**
+	 * Anota un cambio en el viaje @codViaje (o en sus reservas)
+	 * @param codViaje
+	 */
+	public void cambioEnViaje(int codViaje) {
+		// La global cambia antes: quien vea la nueva versión del viaje ve también la nueva global
+		// (ver FragmentosViaje)
+		global.incrementAndGet();
+		porViaje.computeIfAbsent(codViaje, k -> new AtomicLong()).incrementAndGet();
+	}
+
+	/**
+	 * Anota un cambio que puede afectar a cualquier viaje (p.ej. una importación masiva)
+	 */
+	public void cambioEnTodo() {
+		global.incrementAndGet();
+		generacion.incrementAndGet();
+	}
+
+	/**
+	 * Versión global: si no ha cambiado entre dos instantes, no se ha escrito nada entre ellos
+	 * @return
+	 */
+	public long getVersionGlobal() {
+		return global.get();
+	}
+
+	/**
+	 * Etiqueta de los datos de todos los viajes (listados)
+	 * @return
+	 */
+	public String etiquetaGlobal() {
+		return "\"" + Long.toString(arranque, 36) + "-" + global.get() + "\"";
+	}
+
+	/**
+	 * Etiqueta de los datos del viaje @codViaje y sus reservas
+	 * @param codViaje
+	 * @return
+	 */
+	public String etiquetaViaje(int codViaje) {
+		AtomicLong version = porViaje.get(codViaje);
+		return "\"" + Long.toString(arranque, 36) + "-" + generacion.get() + "-" + codViaje + "-"
+				+ (version == null ? 0 : version.get()) + "\"";
+	}
+}
@@ -0,0 +1,89 @@
+package es.batbatcar.v2p4.utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class Ciudades {
+
+	// Otros nombres (normalizados) con los que se conoce a una ciudad -> nombre (normalizado) de la ciudad
+	private static final Map<String, String> ALIAS = new HashMap<>();
+	private static final Map<String, List<String>> ALIAS_POR_CIUDAD = new HashMap<>();
+
+	static {
+		alias("alicante", "alacant");
+		alias("castellon", "castello");
+		alias("castellon de la plana", "castello de la plana");
+		alias("elche", "elx");
+		alias("alcoy", "alcoi");
+		alias("jativa", "xativa");
+		alias("orihuela", "oriola");
+		alias("sagunto", "sagunt");
+		alias("villarreal", "vila-real");
+		alias("villajoyosa", "la vila joiosa");
+		alias("gerona", "girona");
+		alias("lerida", "lleida");
+		alias("la coruna", "a coruna");
+		alias("san sebastian", "donostia");
+	}
+
+	private static void alias(String ciudad, String otroNombre) {
+		ALIAS.put(otroNombre, ciudad);
+		ALIAS_POR_CIUDAD.computeIfAbsent(ciudad, k -> new ArrayList<>()).add(otroNombre);
+	}
+
+	/**
+	 * Normaliza el nombre de una ciudad para poder compararlo o usarlo como clave de un índice:
+	 * sin mayúsculas, sin acentos ni diéresis y con los espacios simplificados
+	 * (Castellón, castellon y CASTELLON  dan lo mismo)
+	 * @param ciudad
+	 * @return
+	 */
+	public static String normalizar(String ciudad) {
+		return Textos.normalizar(ciudad);
+	}
+
+	/**
+	 * Normaliza el nombre de una ciudad y, si es un alias (Alacant, Castelló...), lo sustituye
+	 * por el nombre con el que se indexa la ciudad
+	 * @param ciudad
+	 * @return
+	 */
+	public static String canonica(String ciudad) {
+		String normalizada = normalizar(ciudad);
+		return ALIAS.getOrDefault(normalizada, normalizada);
+	}
+
+	/**
+	 * Obtiene las claves normalizadas por las que se puede encontrar @ciudad: su nombre
+	 * canónico y todos sus alias
+	 * @param ciudad
+	 * @return
+	 */
+	public static List<String> claves(String ciudad) {
+		String canonica = canonica(ciudad);
+		List<String> alias = ALIAS_POR_CIUDAD.getOrDefault(canonica, Collections.emptyList());
+		List<String> claves = new ArrayList<>(alias.size() + 1);
+		claves.add(canonica);
+		claves.addAll(alias);
+		return claves;
+	}
+
+	/**
+	 * Indica si @ciudad, o alguno de sus alias, empieza por @prefijo sin distinguir mayúsculas ni acentos
+	 * @param ciudad
+	 * @param prefijo
+	 * @return
+	 */
+	public static boolean empiezaPor(String ciudad, String prefijo) {
+		String prefijoNormalizado = normalizar(prefijo);
+		for (String clave : claves(ciudad)) {
+			if (clave.startsWith(prefijoNormalizado)) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
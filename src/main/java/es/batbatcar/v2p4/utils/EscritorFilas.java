@@ -0,0 +1,120 @@
+package es.batbatcar.v2p4.utils;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+/**
+ * Escribe filas en CSV (con cabecera) o en NDJSON (un objeto JSON por línea) a medida que
+ * se reciben, sin acumularlas. Los valores pueden ser texto, números o null.
+ */
+public abstract class EscritorFilas implements Closeable {
+
+	private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+	protected final String[] columnas;
+
+	protected EscritorFilas(String[] columnas) {
+		this.columnas = columnas;
+	}
+
+	public static EscritorFilas abrir(OutputStream out, FormatoFilas formato, String... columnas) throws IOException {
+		if (formato == FormatoFilas.JSON) {
+			return new EscritorJson(out, columnas);
+		}
+		return new EscritorCsv(new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8)), columnas);
+	}
+
+	/**
+	 * Escribe una fila con un valor por columna, en el orden de las columnas
+	 * @param valores
+	 * @throws IOException
+	 */
+	public abstract void fila(Object... valores) throws IOException;
+
+	private static class EscritorCsv extends EscritorFilas {
+		private final Writer writer;
+
+		private EscritorCsv(Writer writer, String[] columnas) throws IOException {
+			super(columnas);
+			this.writer = writer;
+			fila((Object[]) columnas);
+		}
+
+		@Override
+		public void fila(Object... valores) throws IOException {
+			for (int i = 0; i < valores.length; i++) {
+				if (i > 0) {
+					writer.write(',');
+				}
+				if (valores[i] != null) {
+					escribirCampo(valores[i].toString());
+				}
+			}
+			writer.write('\n');
+		}
+
+		private void escribirCampo(String campo) throws IOException {
+			boolean comillas = campo.indexOf(',') >= 0 || campo.indexOf('"') >= 0
+					|| campo.indexOf('\n') >= 0 || campo.indexOf('\r') >= 0;
+			if (!comillas) {
+				writer.write(campo);
+				return;
+			}
+			writer.write('"');
+			writer.write(campo.replace("\"", "\"\""));
+			writer.write('"');
+		}
+
+		@Override
+		public void close() throws IOException {
+			writer.close();
+		}
+	}
+
+	private static class EscritorJson extends EscritorFilas {
+		private final JsonGenerator generator;
+
+		private EscritorJson(OutputStream out, String[] columnas) throws IOException {
+			super(columnas);
+			this.generator = JSON_FACTORY.createGenerator(out, JsonEncoding.UTF8);
+			// Un objeto por línea
+			this.generator.setRootValueSeparator(null);
+		}
+
+		@Override
+		public void fila(Object... valores) throws IOException {
+			generator.writeStartObject();
+			for (int i = 0; i < valores.length; i++) {
+				Object valor = valores[i];
+				generator.writeFieldName(columnas[i]);
+				if (valor == null) {
+					generator.writeNull();
+				} else if (valor instanceof Integer || valor instanceof Long) {
+					generator.writeNumber(((Number) valor).longValue());
+				} else if (valor instanceof Float) {
+					generator.writeNumber((Float) valor);
+				} else if (valor instanceof Number) {
+					generator.writeNumber(((Number) valor).doubleValue());
+				} else {
+					generator.writeString(valor.toString());
+				}
+			}
+			generator.writeEndObject();
+			generator.writeRaw('\n');
+		}
+
+		@Override
+		public void close() throws IOException {
+			generator.close();
+		}
+	}
+}
@@ -0,0 +1,22 @@
+package es.batbatcar.v2p4.utils;
+
+import java.util.Locale;
+
+/**
+ * Formatos de entrada y salida fila a fila: CSV con cabecera o JSON (un objeto por fila)
+ */
+public enum FormatoFilas {
+	CSV, JSON;
+
+	/**
+	 * Deduce el formato a partir de un tipo de contenido, un nombre de fichero o un parámetro
+	 * @param tipoONombre
+	 * @return JSON si menciona json, CSV en otro caso
+	 */
+	public static FormatoFilas of(String tipoONombre) {
+		if (tipoONombre != null && tipoONombre.toLowerCase(Locale.ROOT).contains("json")) {
+			return JSON;
+		}
+		return CSV;
+	}
+}
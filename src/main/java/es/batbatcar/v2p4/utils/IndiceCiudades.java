@@ -0,0 +1,219 @@
+package es.batbatcar.v2p4.utils;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Índice de ciudades por prefijo (trie) para las búsquedas por destino y el autocompletado.
+ *
+ * Cada ciudad se indexa por su nombre normalizado y por sus alias (ver {@link Ciudades}), de modo
+ * que "castell", "Castelló" o "alac" encuentran Castellón y Alicante. Para cada ciudad se guardan
+ * los códigos asociados y las formas exactas en que aparece escrita. Las lecturas no se bloquean
+ * entre sí; las escrituras son exclusivas.
+ */
+public class IndiceCiudades {
+
+	private final Nodo raiz = new Nodo();
+	private final Map<String, Ciudad> ciudades = new HashMap<>();
+	private final Map<Integer, String> ciudadPorCodigo = new HashMap<>();
+	private final ReadWriteLock bloqueo = new ReentrantReadWriteLock();
+
+	/**
+	 * Asocia @codigo a @ciudad. Si ya estaba asociado a otra ciudad, se quita de ella
+	 * @param codigo
+	 * @param ciudad tal como está escrita
+	 */
+	public void indexar(int codigo, String ciudad) {
+		bloqueo.writeLock().lock();
+		try {
+			String anterior = ciudadPorCodigo.put(codigo, ciudad);
+			if (anterior != null) {
+				desasociar(codigo, anterior);
+			}
+			String clave = Ciudades.canonica(ciudad);
+			Ciudad entrada = ciudades.get(clave);
+			if (entrada == null) {
+				entrada = new Ciudad(ciudad);
+				ciudades.put(clave, entrada);
+				for (String claveTrie : Ciudades.claves(ciudad)) {
+					raiz.buscarOCrear(claveTrie).ciudad = entrada;
+				}
+			}
+			entrada.codigos.add(codigo);
+			entrada.formas.merge(ciudad, 1, Integer::sum);
+		} finally {
+			bloqueo.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Quita @codigo del índice
+	 * @param codigo
+	 */
+	public void quitar(int codigo) {
+		bloqueo.writeLock().lock();
+		try {
+			String anterior = ciudadPorCodigo.remove(codigo);
+			if (anterior != null) {
+				desasociar(codigo, anterior);
+			}
+		} finally {
+			bloqueo.writeLock().unlock();
+		}
+	}
+
+	private void desasociar(int codigo, String ciudad) {
+		String clave = Ciudades.canonica(ciudad);
+		Ciudad entrada = ciudades.get(clave);
+		if (entrada == null) {
+			return;
+		}
+		entrada.codigos.remove(codigo);
+		entrada.formas.computeIfPresent(ciudad, (forma, veces) -> veces == 1 ? null : veces - 1);
+		if (entrada.codigos.isEmpty()) {
+			ciudades.remove(clave);
+			for (String claveTrie : Ciudades.claves(ciudad)) {
+				raiz.quitar(claveTrie, 0);
+			}
+		}
+	}
+
+	/**
+	 * Obtiene, ordenados, los códigos asociados a las ciudades que empiezan por @prefijo
+	 * @param prefijo
+	 * @return
+	 */
+	public NavigableSet<Integer> findCodigos(String prefijo) {
+		bloqueo.readLock().lock();
+		try {
+			NavigableSet<Integer> codigos = new TreeSet<>();
+			for (Ciudad ciudad : buscar(prefijo)) {
+				codigos.addAll(ciudad.codigos);
+			}
+			return codigos;
+		} finally {
+			bloqueo.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Obtiene las formas exactas en que están escritas las ciudades que empiezan por @prefijo
+	 * @param prefijo
+	 * @return
+	 */
+	public Set<String> findFormas(String prefijo) {
+		bloqueo.readLock().lock();
+		try {
+			Set<String> formas = new LinkedHashSet<>();
+			for (Ciudad ciudad : buscar(prefijo)) {
+				formas.addAll(ciudad.formas.keySet());
+			}
+			return formas;
+		} finally {
+			bloqueo.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Obtiene como mucho @max ciudades que empiezan por @prefijo, primero las que tienen más códigos
+	 * @param prefijo
+	 * @param max
+	 * @return
+	 */
+	public List<String> sugerir(String prefijo, int max) {
+		bloqueo.readLock().lock();
+		try {
+			List<Ciudad> encontradas = new ArrayList<>(buscar(prefijo));
+			encontradas.sort(Comparator.comparingInt((Ciudad ciudad) -> -ciudad.codigos.size())
+					.thenComparing(ciudad -> ciudad.nombre));
+			List<String> sugerencias = new ArrayList<>(Math.min(max, encontradas.size()));
+			for (Ciudad ciudad : encontradas.subList(0, Math.min(max, encontradas.size()))) {
+				sugerencias.add(ciudad.nombre);
+			}
+			return sugerencias;
+		} finally {
+			bloqueo.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Ciudades distintas del subárbol de @prefijo (una ciudad cuelga de varios nodos si tiene alias)
+	 */
+	private Set<Ciudad> buscar(String prefijo) {
+		Set<Ciudad> encontradas = new LinkedHashSet<>();
+		Nodo nodo = raiz.buscar(Ciudades.normalizar(prefijo));
+		if (nodo == null) {
+			return encontradas;
+		}
+		Deque<Nodo> pendientes = new ArrayDeque<>();
+		pendientes.push(nodo);
+		while (!pendientes.isEmpty()) {
+			Nodo actual = pendientes.pop();
+			if (actual.ciudad != null) {
+				encontradas.add(actual.ciudad);
+			}
+			pendientes.addAll(actual.hijos.values());
+		}
+		return encontradas;
+	}
+
+	private static class Ciudad {
+		// Nombre con el que se sugiere: la primera forma indexada
+		private final String nombre;
+		private final Set<Integer> codigos = new TreeSet<>();
+		private final Map<String, Integer> formas = new HashMap<>();
+
+		private Ciudad(String nombre) {
+			this.nombre = nombre;
+		}
+	}
+
+	private static class Nodo {
+		private final TreeMap<Character, Nodo> hijos = new TreeMap<>();
+		private Ciudad ciudad;
+
+		private Nodo buscar(String clave) {
+			Nodo nodo = this;
+			for (int i = 0; i < clave.length() && nodo != null; i++) {
+				nodo = nodo.hijos.get(clave.charAt(i));
+			}
+			return nodo;
+		}
+
+		private Nodo buscarOCrear(String clave) {
+			Nodo nodo = this;
+			for (int i = 0; i < clave.length(); i++) {
+				nodo = nodo.hijos.computeIfAbsent(clave.charAt(i), c -> new Nodo());
+			}
+			return nodo;
+		}
+
+		/**
+		 * Quita la ciudad de la clave y poda las ramas que quedan vacías
+		 * @return true si este nodo ha quedado vacío
+		 */
+		private boolean quitar(String clave, int posicion) {
+			if (posicion == clave.length()) {
+				ciudad = null;
+			} else {
+				Nodo hijo = hijos.get(clave.charAt(posicion));
+				if (hijo != null && hijo.quitar(clave, posicion + 1)) {
+					hijos.remove(clave.charAt(posicion));
+				}
+			}
+			return ciudad == null && hijos.isEmpty();
+		}
+	}
+}
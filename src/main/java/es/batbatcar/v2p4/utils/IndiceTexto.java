@@ -0,0 +1,211 @@
+package es.batbatcar.v2p4.utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Índice de trigramas para buscar subcadenas sin recorrer todos los elementos.
+ *
+ * Cada elemento se indexa por una clave, un grupo (p.ej. el viaje de una reserva) y uno o varios
+ * textos, que se guardan normalizados (ver {@link Textos}). Una búsqueda toma como candidatos los
+ * elementos del trigrama menos frecuente del texto buscado (o del grupo, si tiene menos) y sólo
+ * comprueba esos. Los textos de menos de tres caracteres no tienen trigramas: dentro de un grupo se
+ * buscan recorriéndolo y en todos los grupos no se buscan, porque habría que recorrer el índice entero.
+ * Las lecturas no se bloquean entre sí; las escrituras son exclusivas.
+ */
+public class IndiceTexto<K> {
+
+	private static final int N = 3;
+
+	/**
+	 * Longitud mínima (normalizada) de un texto para buscarlo en todos los grupos
+	 */
+	public static final int MIN_CARACTERES = N;
+
+	private final Map<String, Set<K>> porTrigrama = new HashMap<>();
+	private final Map<Integer, Set<K>> porGrupo = new HashMap<>();
+	private final Map<K, Documento> documentos = new HashMap<>();
+	private final ReadWriteLock bloqueo = new ReentrantReadWriteLock();
+
+	/**
+	 * Indexa (o reindexa) el elemento @clave del grupo @grupo con los textos @textos
+	 * @param clave
+	 * @param grupo
+	 * @param textos
+	 */
+	public void indexar(K clave, int grupo, String... textos) {
+		String[] normalizados = new String[textos.length];
+		for (int i = 0; i < textos.length; i++) {
+			normalizados[i] = Textos.normalizar(textos[i]);
+		}
+		Documento documento = new Documento(grupo, normalizados);
+
+		bloqueo.writeLock().lock();
+		try {
+			Documento anterior = documentos.put(clave, documento);
+			if (anterior != null) {
+				desindexar(clave, anterior);
+			}
+			porGrupo.computeIfAbsent(grupo, g -> new HashSet<>()).add(clave);
+			for (String trigrama : documento.trigramas()) {
+				porTrigrama.computeIfAbsent(trigrama, t -> new HashSet<>()).add(clave);
+			}
+		} finally {
+			bloqueo.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Quita @clave del índice
+	 * @param clave
+	 */
+	public void quitar(K clave) {
+		bloqueo.writeLock().lock();
+		try {
+			Documento anterior = documentos.remove(clave);
+			if (anterior != null) {
+				desindexar(clave, anterior);
+			}
+		} finally {
+			bloqueo.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Quita todos los elementos del grupo @grupo
+	 * @param grupo
+	 */
+	public void quitarGrupo(int grupo) {
+		bloqueo.writeLock().lock();
+		try {
+			Set<K> claves = porGrupo.get(grupo);
+			if (claves == null) {
+				return;
+			}
+			for (K clave : new ArrayList<>(claves)) {
+				desindexar(clave, documentos.remove(clave));
+			}
+		} finally {
+			bloqueo.writeLock().unlock();
+		}
+	}
+
+	private void desindexar(K clave, Documento documento) {
+		quitar(porGrupo, documento.grupo, clave);
+		for (String trigrama : documento.trigramas()) {
+			quitar(porTrigrama, trigrama, clave);
+		}
+	}
+
+	private static <C, K> void quitar(Map<C, Set<K>> indice, C valor, K clave) {
+		Set<K> claves = indice.get(valor);
+		if (claves != null) {
+			claves.remove(clave);
+			if (claves.isEmpty()) {
+				indice.remove(valor);
+			}
+		}
+	}
+
+	/**
+	 * Obtiene como mucho @max claves, de todos los grupos, con algún texto que contiene @texto. Se
+	 * deja de buscar al llegar a @max, así que no son necesariamente las primeras en ningún orden
+	 * @param texto de al menos MIN_CARACTERES caracteres; si es más corto no se encuentra nada
+	 * @param max
+	 * @return
+	 */
+	public Set<K> buscar(String texto, int max) {
+		return buscar(null, texto, max);
+	}
+
+	/**
+	 * Obtiene las claves del grupo @grupo (de todos si es null) con algún texto que contiene @texto
+	 * @param grupo
+	 * @param texto
+	 * @return
+	 */
+	public Set<K> buscar(Integer grupo, String texto) {
+		return buscar(grupo, texto, Integer.MAX_VALUE);
+	}
+
+	private Set<K> buscar(Integer grupo, String texto, int max) {
+		String buscado = Textos.normalizar(texto);
+		if (grupo == null && buscado.length() < N) {
+			return new LinkedHashSet<>();
+		}
+
+		bloqueo.readLock().lock();
+		try {
+			Set<K> candidatos = grupo == null ? documentos.keySet() : porGrupo.getOrDefault(grupo, Collections.emptySet());
+			for (int i = 0; i + N <= buscado.length(); i++) {
+				Set<K> conTrigrama = porTrigrama.get(buscado.substring(i, i + N));
+				if (conTrigrama == null) {
+					return new LinkedHashSet<>();
+				}
+				if (conTrigrama.size() < candidatos.size()) {
+					candidatos = conTrigrama;
+				}
+			}
+
+			Set<K> encontrados = new LinkedHashSet<>();
+			for (K clave : candidatos) {
+				if (encontrados.size() >= max) {
+					break;
+				}
+				Documento documento = documentos.get(clave);
+				if ((grupo == null || documento.grupo == grupo) && documento.contiene(buscado)) {
+					encontrados.add(clave);
+				}
+			}
+			return encontrados;
+		} finally {
+			bloqueo.readLock().unlock();
+		}
+	}
+
+	public int size() {
+		bloqueo.readLock().lock();
+		try {
+			return documentos.size();
+		} finally {
+			bloqueo.readLock().unlock();
+		}
+	}
+
+	private static class Documento {
+		private final int grupo;
+		private final String[] textos;
+
+		private Documento(int grupo, String[] textos) {
+			this.grupo = grupo;
+			this.textos = textos;
+		}
+
+		private boolean contiene(String buscado) {
+			for (String texto : textos) {
+				if (texto.contains(buscado)) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		private List<String> trigramas() {
+			List<String> trigramas = new ArrayList<>();
+			for (String texto : textos) {
+				for (int i = 0; i + N <= texto.length(); i++) {
+					trigramas.add(texto.substring(i, i + N));
+				}
+			}
+			return trigramas;
+		}
+	}
+}
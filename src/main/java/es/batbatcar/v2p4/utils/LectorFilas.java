@@ -0,0 +1,196 @@
+package es.batbatcar.v2p4.utils;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * Lee una entrada fila a fila sin cargarla entera en memoria. Cada fila se devuelve
+ * como un mapa columna -> valor en texto.
+ *
+ * CSV: la primera línea es la cabecera y los campos pueden ir entre comillas dobles
+ * (sin saltos de línea dentro de un campo).
+ * JSON: un array de objetos o una secuencia de objetos (uno por línea, NDJSON).
+ */
+public abstract class LectorFilas implements Iterator<Map<String, String>>, Closeable {
+
+	private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+	private Map<String, String> siguiente;
+	private int numFila;
+
+	public static LectorFilas abrir(InputStream in, FormatoFilas formato) throws IOException {
+		if (formato == FormatoFilas.JSON) {
+			return new LectorJson(in);
+		}
+		return new LectorCsv(new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8)));
+	}
+
+	/**
+	 * Lee la siguiente fila
+	 * @return la fila o null si no quedan
+	 * @throws IOException
+	 */
+	protected abstract Map<String, String> leer() throws IOException;
+
+	@Override
+	public boolean hasNext() {
+		if (siguiente == null) {
+			try {
+				siguiente = leer();
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+		return siguiente != null;
+	}
+
+	@Override
+	public Map<String, String> next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		Map<String, String> fila = siguiente;
+		siguiente = null;
+		numFila++;
+		return fila;
+	}
+
+	/**
+	 * Número (desde 1) de la última fila devuelta por next(), sin contar la cabecera
+	 * @return
+	 */
+	public int getNumFila() {
+		return numFila;
+	}
+
+	private static class LectorCsv extends LectorFilas {
+		private final BufferedReader reader;
+		private List<String> cabecera;
+
+		private LectorCsv(BufferedReader reader) {
+			this.reader = reader;
+		}
+
+		@Override
+		protected Map<String, String> leer() throws IOException {
+			if (cabecera == null) {
+				String linea = reader.readLine();
+				if (linea == null) {
+					return null;
+				}
+				cabecera = new ArrayList<>();
+				for (String columna : partir(linea)) {
+					cabecera.add(columna.trim());
+				}
+			}
+
+			String linea;
+			do {
+				linea = reader.readLine();
+				if (linea == null) {
+					return null;
+				}
+			} while (linea.isBlank());
+
+			List<String> valores = partir(linea);
+			Map<String, String> fila = new HashMap<>();
+			for (int i = 0; i < cabecera.size() && i < valores.size(); i++) {
+				fila.put(cabecera.get(i), valores.get(i).trim());
+			}
+			return fila;
+		}
+
+		private static List<String> partir(String linea) {
+			List<String> campos = new ArrayList<>();
+			StringBuilder campo = new StringBuilder();
+			boolean entreComillas = false;
+			for (int i = 0; i < linea.length(); i++) {
+				char c = linea.charAt(i);
+				if (entreComillas) {
+					if (c == '"' && i + 1 < linea.length() && linea.charAt(i + 1) == '"') {
+						campo.append('"');
+						i++;
+					} else if (c == '"') {
+						entreComillas = false;
+					} else {
+						campo.append(c);
+					}
+				} else if (c == '"') {
+					entreComillas = true;
+				} else if (c == ',') {
+					campos.add(campo.toString());
+					campo.setLength(0);
+				} else {
+					campo.append(c);
+				}
+			}
+			campos.add(campo.toString());
+			return campos;
+		}
+
+		@Override
+		public void close() throws IOException {
+			reader.close();
+		}
+	}
+
+	private static class LectorJson extends LectorFilas {
+		private final JsonParser parser;
+		private boolean enArray;
+		private boolean empezado;
+
+		private LectorJson(InputStream in) throws IOException {
+			this.parser = JSON_FACTORY.createParser(in);
+		}
+
+		@Override
+		protected Map<String, String> leer() throws IOException {
+			JsonToken token = parser.nextToken();
+			if (!empezado) {
+				empezado = true;
+				if (token == JsonToken.START_ARRAY) {
+					enArray = true;
+					token = parser.nextToken();
+				}
+			}
+			if (token == null || (enArray && token == JsonToken.END_ARRAY)) {
+				return null;
+			}
+			if (token != JsonToken.START_OBJECT) {
+				throw new IOException("Se esperaba un objeto JSON en " + parser.getCurrentLocation());
+			}
+
+			Map<String, String> fila = new HashMap<>();
+			while (parser.nextToken() == JsonToken.FIELD_NAME) {
+				String columna = parser.getCurrentName();
+				JsonToken valor = parser.nextToken();
+				if (valor.isStructStart()) {
+					parser.skipChildren();
+				} else if (valor != JsonToken.VALUE_NULL) {
+					fila.put(columna, parser.getValueAsString());
+				}
+			}
+			return fila;
+		}
+
+		@Override
+		public void close() throws IOException {
+			parser.close();
+		}
+	}
+}
@@ -0,0 +1,22 @@
+package es.batbatcar.v2p4.utils;
+
+import java.text.Normalizer;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+public class Textos {
+
+	private static final Pattern ACENTOS = Pattern.compile("\\p{M}+");
+	private static final Pattern ESPACIOS = Pattern.compile("\\s+");
+
+	/**
+	 * Normaliza un texto para compararlo o indexarlo: sin mayúsculas, sin acentos ni diéresis
+	 * y con los espacios simplificados
+	 * @param texto
+	 * @return
+	 */
+	public static String normalizar(String texto) {
+		String sinAcentos = ACENTOS.matcher(Normalizer.normalize(texto.trim(), Normalizer.Form.NFD)).replaceAll("");
+		return ESPACIOS.matcher(sinAcentos).replaceAll(" ").toLowerCase(Locale.ROOT);
+	}
+}
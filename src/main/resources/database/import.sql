@@ -34,7 +34,11 @@ CREATE TABLE `viajes` (
   `precio` decimal(10,0) DEFAULT NULL,
   `plazasOfertadas` int DEFAULT NULL,
   `estadoViaje` enum('ABIERTO','CERRADO','CANCELADO') DEFAULT NULL,
-  PRIMARY KEY (`codViaje`)
+  `ultimaReserva` int NOT NULL DEFAULT 0,
+  `destino` varchar(100) GENERATED ALWAYS AS (SUBSTRING_INDEX(`ruta`, '-', -1)) STORED,
+  PRIMARY KEY (`codViaje`),
+  KEY `viajes_destino_IDX` (`destino`),
+  KEY `viajes_estadoViaje_IDX` (`estadoViaje`)
 ) ENGINE=InnoDB AUTO_INCREMENT=6 DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_general_ci;
 /*!40101 SET character_set_client = @saved_cs_client */;
 
@@ -44,7 +48,7 @@ CREATE TABLE `viajes` (
 
 LOCK TABLES `viajes` WRITE;
 /*!40000 ALTER TABLE `viajes` DISABLE KEYS */;
-INSERT INTO `viajes` VALUES (1,'Roberto','Alicante-Ibi','2025-08-03 19:59:45',30,24,8,'ABIERTO'),(2,'Alex','Alcoi-Cocentaina','2025-05-03 12:00:00',5,5,10,'ABIERTO'),(3,'Luis','Alcoi-Valencia','2024-10-03 20:00:00',20,40,3,'CANCELADO'),(4,'Juan','Alicante-Valencia','2023-10-01 20:00:00',22,11,5,'CERRADO'),(5,'Paco','Valencia-Alcoi','2026-10-03 20:00:00',20,40,3,'ABIERTO');
+INSERT INTO `viajes` (`codViaje`, `propietario`, `ruta`, `fechaSalida`, `duracion`, `precio`, `plazasOfertadas`, `estadoViaje`, `ultimaReserva`) VALUES (1,'Roberto','Alicante-Ibi','2025-08-03 19:59:45',30,24,8,'ABIERTO',2),(2,'Alex','Alcoi-Cocentaina','2025-05-03 12:00:00',5,5,10,'ABIERTO',2),(3,'Luis','Alcoi-Valencia','2024-10-03 20:00:00',20,40,3,'CANCELADO',0),(4,'Juan','Alicante-Valencia','2023-10-01 20:00:00',22,11,5,'CERRADO',0),(5,'Paco','Valencia-Alcoi','2026-10-03 20:00:00',20,40,3,'ABIERTO',0);
 /*!40000 ALTER TABLE `viajes` ENABLE KEYS */;
 UNLOCK TABLES;
 
@@ -61,8 +65,11 @@ CREATE TABLE `reservas` (
   `plazasSolicitadas` int DEFAULT NULL,
   `fechaRealizacion` datetime DEFAULT NULL,
   `viaje` int NOT NULL,
+  `numReserva` int GENERATED ALWAYS AS (CAST(SUBSTRING_INDEX(`codigoReserva`, '-', -1) AS UNSIGNED)) STORED,
   PRIMARY KEY (`codigoReserva`),
-  KEY `reservas_FK` (`viaje`),
+  KEY `reservas_viaje_num_IDX` (`viaje`, `numReserva`),
+  KEY `reservas_viaje_usuario_IDX` (`viaje`, `usuario`),
+  KEY `reservas_usuario_IDX` (`usuario`),
   CONSTRAINT `reservas_FK` FOREIGN KEY (`viaje`) REFERENCES `viajes` (`codViaje`) ON DELETE CASCADE ON UPDATE CASCADE
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_general_ci;
 /*!40101 SET character_set_client = @saved_cs_client */;
@@ -73,10 +80,32 @@ CREATE TABLE `reservas` (
 
 LOCK TABLES `reservas` WRITE;
 /*!40000 ALTER TABLE `reservas` DISABLE KEYS */;
-INSERT INTO `reservas` VALUES ('1-1','Antonio',4,'2022-04-03 23:56:06',1),('1-2','Alex',3,'2022-01-12 12:12:22',1),('2-1','Roberto',5,'2022-04-03 23:56:06',2),('2-2','Roberto',5,'2022-04-03 23:56:06',2);
+INSERT INTO `reservas` (`codigoReserva`, `usuario`, `plazasSolicitadas`, `fechaRealizacion`, `viaje`) VALUES ('1-1','Antonio',4,'2022-04-03 23:56:06',1),('1-2','Alex',3,'2022-01-12 12:12:22',1),('2-1','Roberto',5,'2022-04-03 23:56:06',2),('2-2','Roberto',5,'2022-04-03 23:56:06',2);
 /*!40000 ALTER TABLE `reservas` ENABLE KEYS */;
 UNLOCK TABLES;
 
+--
+-- Table structure for table `secuencias`
+--
+
+DROP TABLE IF EXISTS `secuencias`;
+/*!40101 SET @saved_cs_client     = @@character_set_client */;
+/*!50503 SET character_set_client = utf8mb4 */;
+CREATE TABLE `secuencias` (
+  `nombre` varchar(50) NOT NULL,
+  `valor` int NOT NULL,
+  PRIMARY KEY (`nombre`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_general_ci;
+/*!40101 SET character_set_client = @saved_cs_client */;
+
+--
+-- Dumping data for table `secuencias`
+--
+
+LOCK TABLES `secuencias` WRITE, `viajes` READ;
+INSERT INTO `secuencias` (`nombre`, `valor`) SELECT 'viajes', COALESCE(MAX(`codViaje`), 0) FROM `viajes`;
+UNLOCK TABLES;
+
 /*!40103 SET TIME_ZONE=@OLD_TIME_ZONE */;
 
 /*!40101 SET SQL_MODE=@OLD_SQL_MODE */;
@@ -0,0 +1,63 @@
+package es.batbatcar.v2p4.controllers;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Con un hilo por tarea (como los hilos virtuales) sólo se admiten @hilos + @cola tareas a la vez
+ */
+class EjecutorApiTest {
+
+	private ExecutorService hiloPorTarea;
+	private EjecutorApi ejecutorApi;
+
+	@BeforeEach
+	void setUp() {
+		hiloPorTarea = Executors.newCachedThreadPool();
+		ejecutorApi = new EjecutorApi(hiloPorTarea, 1, 1);
+	}
+
+	@AfterEach
+	void tearDown() {
+		hiloPorTarea.shutdownNow();
+	}
+
+	@Test
+	void seRechazanLasTareasQueSuperanElLimite() throws Exception {
+		CountDownLatch continuar = new CountDownLatch(1);
+		CompletableFuture<Integer> primera = ejecutorApi.ejecutar(() -> continuar.await(5, TimeUnit.SECONDS) ? 1 : 0);
+		CompletableFuture<Integer> segunda = ejecutorApi.ejecutar(() -> continuar.await(5, TimeUnit.SECONDS) ? 2 : 0);
+
+		assertThrows(RejectedExecutionException.class, () -> ejecutorApi.ejecutar(() -> 3));
+
+		continuar.countDown();
+		assertEquals(1, primera.get(5, TimeUnit.SECONDS));
+		assertEquals(2, segunda.get(5, TimeUnit.SECONDS));
+		// Al terminar se liberan sus plazas
+		assertEquals(3, ejecutorApi.ejecutar(() -> 3).get(5, TimeUnit.SECONDS));
+	}
+
+	@Test
+	void unaTareaQueFallaTambienLiberaSuPlaza() throws Exception {
+		for (int i = 0; i < 5; i++) {
+			CompletableFuture<Object> fallida = ejecutorApi.ejecutar(() -> {
+				throw new Exception("fallo");
+			});
+			CompletionException e = assertThrows(CompletionException.class, fallida::join);
+			assertEquals("fallo", e.getCause().getMessage());
+		}
+		assertEquals(1, ejecutorApi.ejecutar(() -> 1).get(5, TimeUnit.SECONDS));
+	}
+}
@@ -0,0 +1,60 @@
+package es.batbatcar.v2p4.modelo.dao;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import es.batbatcar.v2p4.modelo.dao.cachedao.CachedReservaDAO;
+import es.batbatcar.v2p4.modelo.dao.sqldao.SQLReservaDAO;
+import es.batbatcar.v2p4.modelo.dto.Reserva;
+import es.batbatcar.v2p4.modelo.dto.viaje.EstadoViaje;
+import es.batbatcar.v2p4.modelo.dto.viaje.Viaje;
+
+class CachedReservaDAOTest {
+
+	private SQLReservaDAO sqlReservaDAO;
+	private CachedReservaDAO reservaDAO;
+	private Viaje viaje;
+
+	@BeforeEach
+	void setUp() {
+		sqlReservaDAO = mock(SQLReservaDAO.class);
+		reservaDAO = new CachedReservaDAO(sqlReservaDAO, 100, 60);
+		viaje = new Viaje(1, "propietario", "Alcoy-Valencia", LocalDateTime.now().plusDays(1), 60);
+	}
+
+	@Test
+	void modificarLaReservaDevueltaNoCambiaLaCache() throws Exception {
+		when(sqlReservaDAO.findById("1-1")).thenReturn(new Reserva("1-1", "usuario", 2, viaje));
+
+		Reserva reserva = reservaDAO.findById("1-1");
+		reserva.setPlazasSolicitadas(5);
+		reserva.getViaje().cancelar(Clock.systemDefaultZone());
+
+		Reserva deNuevo = reservaDAO.findById("1-1");
+		assertEquals(2, deNuevo.getPlazasSolicitadas());
+		assertEquals(EstadoViaje.ABIERTO, deNuevo.getViaje().getEstado());
+		verify(sqlReservaDAO, times(1)).findById("1-1");
+	}
+
+	@Test
+	void modificarLasReservasDelViajeDevueltasNoCambiaLaCache() {
+		when(sqlReservaDAO.findAllByTravel(viaje)).thenReturn(new ArrayList<>(List.of(new Reserva("1-1", "usuario", 2, viaje))));
+
+		reservaDAO.findAllByTravel(viaje).get(0).setPropietario("otro");
+
+		assertEquals("usuario", reservaDAO.findAllByTravel(viaje).get(0).getUsuario());
+		assertEquals("usuario", reservaDAO.findByUserInTravel("usuario", viaje).getUsuario());
+		verify(sqlReservaDAO, times(1)).findAllByTravel(viaje);
+	}
+}
@@ -0,0 +1,75 @@
+package es.batbatcar.v2p4.modelo.dao;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import es.batbatcar.v2p4.modelo.dao.cachedao.CachedViajeDAO;
+import es.batbatcar.v2p4.modelo.dao.sqldao.SQLViajeDAO;
+import es.batbatcar.v2p4.modelo.dto.viaje.EstadoViaje;
+import es.batbatcar.v2p4.modelo.dto.viaje.Viaje;
+
+class CachedViajeDAOTest {
+
+	private static final LocalDateTime SALIDA = LocalDateTime.now().plusDays(1);
+
+	private SQLViajeDAO sqlViajeDAO;
+	private CachedViajeDAO viajeDAO;
+
+	@BeforeEach
+	void setUp() {
+		sqlViajeDAO = mock(SQLViajeDAO.class);
+		viajeDAO = new CachedViajeDAO(sqlViajeDAO, null, 100, 60);
+	}
+
+	@Test
+	void unaLecturaAnteriorAUnaEscrituraNoQuedaEnLaCache() throws Exception {
+		CountDownLatch leyendo = new CountDownLatch(1);
+		CountDownLatch continuar = new CountDownLatch(1);
+		Viaje anterior = new Viaje(1, "propietario", "Alcoy-Valencia", SALIDA, 60);
+		Viaje nuevo = new Viaje(1, "propietario", "Alcoy-Gandia", SALIDA, 60);
+		when(sqlViajeDAO.findById(1)).thenAnswer(llamada -> {
+			leyendo.countDown();
+			continuar.await();
+			return anterior;
+		}).thenReturn(nuevo);
+
+		// La lectura se queda a medias con los datos anteriores a la escritura
+		CompletableFuture<Viaje> lectura = CompletableFuture.supplyAsync(() -> viajeDAO.findById(1));
+		leyendo.await(5, TimeUnit.SECONDS);
+		Thread escritor = new Thread(() -> {
+			try {
+				viajeDAO.update(nuevo);
+			} catch (Exception e) {
+				throw new IllegalStateException(e);
+			}
+		});
+		escritor.start();
+		while (escritor.getState() == Thread.State.RUNNABLE || escritor.getState() == Thread.State.NEW) {
+			Thread.onSpinWait();
+		}
+		continuar.countDown();
+		escritor.join(5000);
+
+		assertEquals("Alcoy-Valencia", lectura.get(5, TimeUnit.SECONDS).getRuta());
+		assertEquals("Alcoy-Gandia", viajeDAO.findById(1).getRuta());
+	}
+
+	@Test
+	void modificarElViajeDevueltoNoCambiaLaCache() throws Exception {
+		when(sqlViajeDAO.findById(1)).thenReturn(new Viaje(1, "propietario", "Alcoy-Valencia", SALIDA, 60));
+
+		viajeDAO.findById(1).cancelar(Clock.systemDefaultZone());
+
+		assertEquals(EstadoViaje.ABIERTO, viajeDAO.findById(1).getEstado());
+	}
+}
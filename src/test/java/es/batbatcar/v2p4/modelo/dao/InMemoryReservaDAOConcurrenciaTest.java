@@ -0,0 +1,132 @@
+package es.batbatcar.v2p4.modelo.dao;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import es.batbatcar.v2p4.exceptions.ReservaNoValidaException;
+import es.batbatcar.v2p4.exceptions.ReservaNotFoundException;
+import es.batbatcar.v2p4.modelo.dao.inmemorydao.InMemoryReservaDAO;
+import es.batbatcar.v2p4.modelo.dao.inmemorydao.InMemoryViajeDAO;
+import es.batbatcar.v2p4.modelo.dto.Reserva;
+import es.batbatcar.v2p4.modelo.dto.viaje.Viaje;
+
+/**
+ * Varios hilos reservan, anulan y listan a la vez las reservas de un mismo viaje en los DAO
+ * en memoria: nunca se reservan más plazas de las ofertadas ni se repite un código de reserva
+ */
+class InMemoryReservaDAOConcurrenciaTest {
+
+	private static final int HILOS = 16;
+	private static final int OPERACIONES_POR_HILO = 2000;
+	private static final int USUARIOS = 40;
+	private static final int PLAZAS = 10;
+
+	private InMemoryReservaDAO reservaDAO;
+	private InMemoryViajeDAO viajeDAO;
+	private ExecutorService hilos;
+	private Viaje viaje;
+
+	@BeforeEach
+	void setUp() throws Exception {
+		reservaDAO = new InMemoryReservaDAO();
+		viajeDAO = new InMemoryViajeDAO();
+		ReflectionTestUtils.setField(viajeDAO, "reservaDAO", reservaDAO);
+		viajeDAO.add(new Viaje(100, "propietario", "Alcoy-Valencia", LocalDateTime.now().plusDays(1), 60, 5f, PLAZAS));
+		viaje = viajeDAO.getById(100);
+		hilos = Executors.newFixedThreadPool(HILOS);
+	}
+
+	@AfterEach
+	void tearDown() throws InterruptedException {
+		hilos.shutdownNow();
+		hilos.awaitTermination(10, TimeUnit.SECONDS);
+	}
+
+	@Test
+	void reservasConcurrentesNoSuperanLasPlazasNiRepitenCodigo() throws Exception {
+		Set<String> codigosEmitidos = ConcurrentHashMap.newKeySet();
+		Set<String> codigosRepetidos = ConcurrentHashMap.newKeySet();
+		CountDownLatch salida = new CountDownLatch(1);
+
+		List<Future<?>> tareas = new ArrayList<>();
+		for (int h = 0; h < HILOS; h++) {
+			tareas.add(hilos.submit(() -> {
+				salida.await();
+				ThreadLocalRandom aleatorio = ThreadLocalRandom.current();
+				for (int i = 0; i < OPERACIONES_POR_HILO; i++) {
+					String usuario = "usuario" + aleatorio.nextInt(USUARIOS);
+					int operacion = aleatorio.nextInt(3);
+					if (operacion == 0) {
+						try {
+							Reserva reserva = reservaDAO.reservar(viaje, usuario, 1 + aleatorio.nextInt(3));
+							if (!codigosEmitidos.add(reserva.getCodigoReserva())) {
+								codigosRepetidos.add(reserva.getCodigoReserva());
+							}
+						} catch (ReservaNoValidaException e) {
+							// Sin plazas o el usuario ya tiene reserva: es lo esperado con tanta competencia
+						}
+					} else if (operacion == 1) {
+						Reserva reserva = reservaDAO.findByUserInTravel(usuario, viaje);
+						if (reserva != null) {
+							try {
+								reservaDAO.remove(reserva);
+							} catch (ReservaNotFoundException e) {
+								// Otro hilo la ha anulado antes
+							}
+						}
+					} else {
+						// El listado se recorre sin bloqueo y puede mezclar reservas anteriores y
+						// posteriores a una anulación: las plazas se comprueban con el contador
+						comprobarCodigos(reservaDAO.findAllByTravel(viaje));
+						int plazas = reservaDAO.getNumPlazasReservadasEnViaje(viaje);
+						assertTrue(plazas <= PLAZAS, "Se han reservado " + plazas + " plazas de " + PLAZAS);
+					}
+				}
+				return null;
+			}));
+		}
+		salida.countDown();
+		for (Future<?> tarea : tareas) {
+			tarea.get(60, TimeUnit.SECONDS);
+		}
+
+		assertTrue(codigosRepetidos.isEmpty(), "Códigos de reserva repetidos: " + codigosRepetidos);
+
+		List<Reserva> finales = reservaDAO.findAllByTravel(viaje);
+		comprobarCodigos(finales);
+		int plazasReservadas = 0;
+		Set<String> usuarios = new HashSet<>();
+		for (Reserva reserva : finales) {
+			plazasReservadas += reserva.getPlazasSolicitadas();
+			assertTrue(usuarios.add(reserva.getUsuario()), "Usuario con dos reservas: " + reserva.getUsuario());
+		}
+		assertTrue(plazasReservadas <= PLAZAS, "Se han reservado " + plazasReservadas + " plazas de " + PLAZAS);
+		assertEquals(plazasReservadas, reservaDAO.getNumPlazasReservadasEnViaje(viaje));
+	}
+
+	private void comprobarCodigos(List<Reserva> reservas) {
+		Set<String> codigos = new HashSet<>();
+		for (Reserva reserva : reservas) {
+			assertEquals(viaje.getCodViaje(), reserva.getCodigoViaje());
+			assertTrue(codigos.add(reserva.getCodigoReserva()), "Código repetido en el listado: " + reserva.getCodigoReserva());
+		}
+	}
+}
@@ -0,0 +1,68 @@
+package es.batbatcar.v2p4.modelo.dao;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import es.batbatcar.v2p4.exceptions.ReservaNoValidaException;
+import es.batbatcar.v2p4.modelo.dao.inmemorydao.InMemoryReservaDAO;
+import es.batbatcar.v2p4.modelo.dto.Reserva;
+import es.batbatcar.v2p4.modelo.dto.Slice;
+import es.batbatcar.v2p4.modelo.dto.SliceRequest;
+import es.batbatcar.v2p4.modelo.dto.viaje.Viaje;
+
+class InMemoryReservaDAOTest {
+
+	private static final LocalDateTime AHORA = LocalDateTime.of(2030, 5, 1, 12, 0);
+	private static final Clock RELOJ = Clock.fixed(AHORA.toInstant(ZoneOffset.UTC), ZoneOffset.UTC);
+
+	@Test
+	void noSeReservaEnUnViajeAbiertoQueYaHaSalido() {
+		InMemoryReservaDAO reservaDAO = new InMemoryReservaDAO(RELOJ);
+		Viaje salido = new Viaje(100, "propietario", "Alcoy-Valencia", AHORA.minusMinutes(1), 60, 5f, 4);
+
+		assertThrows(ReservaNoValidaException.class, () -> reservaDAO.reservar(salido, "usuario", 1));
+		assertEquals(0, reservaDAO.getNumPlazasReservadasEnViaje(salido));
+	}
+
+	@Test
+	void seReservaEnUnViajeQueTodaviaNoHaSalido() throws Exception {
+		InMemoryReservaDAO reservaDAO = new InMemoryReservaDAO(RELOJ);
+		Viaje viaje = new Viaje(100, "propietario", "Alcoy-Valencia", AHORA.plusMinutes(1), 60, 5f, 4);
+
+		assertEquals("100-1", reservaDAO.reservar(viaje, "usuario", 2).getCodigoReserva());
+		assertEquals(2, reservaDAO.getNumPlazasReservadasEnViaje(viaje));
+	}
+
+	@Test
+	void lasPaginasSiguenElOrdenNumericoDeLasReservas() throws Exception {
+		InMemoryReservaDAO reservaDAO = new InMemoryReservaDAO(RELOJ);
+		Viaje viaje = new Viaje(100, "propietario", "Alcoy-Valencia", AHORA.plusDays(1), 60, 5f, 20);
+		for (int i = 1; i <= 12; i++) {
+			reservaDAO.reservar(viaje, "usuario" + i, 1);
+		}
+
+		Slice<Reserva> primera = reservaDAO.findAllByTravel(viaje, new SliceRequest(null, null, 5));
+		Slice<Reserva> segunda = reservaDAO.findAllByTravel(viaje, new SliceRequest(primera.getCursorSiguiente(), null, 5));
+		Slice<Reserva> anterior = reservaDAO.findAllByTravel(viaje, new SliceRequest(null, segunda.getCursorAnterior(), 5));
+
+		assertEquals(List.of("100-1", "100-2", "100-3", "100-4", "100-5"), codigos(primera));
+		assertEquals(List.of("100-6", "100-7", "100-8", "100-9", "100-10"), codigos(segunda));
+		assertEquals(codigos(primera), codigos(anterior));
+	}
+
+	private static List<String> codigos(Slice<Reserva> pagina) {
+		List<String> codigos = new ArrayList<>();
+		for (Reserva reserva : pagina.getContenido()) {
+			codigos.add(reserva.getCodigoReserva());
+		}
+		return codigos;
+	}
+}
@@ -0,0 +1,61 @@
+package es.batbatcar.v2p4.modelo.dao;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.LocalDateTime;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import es.batbatcar.v2p4.exceptions.PlazasCanNotBeReducedException;
+import es.batbatcar.v2p4.modelo.dao.inmemorydao.InMemoryReservaDAO;
+import es.batbatcar.v2p4.modelo.dao.inmemorydao.InMemoryViajeDAO;
+import es.batbatcar.v2p4.modelo.dto.viaje.EstadoViaje;
+import es.batbatcar.v2p4.modelo.dto.viaje.Viaje;
+
+class InMemoryViajeDAOTest {
+
+	private InMemoryViajeDAO viajeDAO;
+
+	@BeforeEach
+	void setUp() throws Exception {
+		viajeDAO = new InMemoryViajeDAO();
+		ReflectionTestUtils.setField(viajeDAO, "reservaDAO", new InMemoryReservaDAO());
+		viajeDAO.add(new Viaje(100, "propietario", "Alcoy-Xativa", LocalDateTime.now().plusDays(1), 60, 5f, 4));
+	}
+
+	@Test
+	void updateQueReducePlazasNoDesindexaElViaje() throws Exception {
+		Viaje original = viajeDAO.getById(100);
+		Viaje conMenosPlazas = new Viaje(100, "propietario", "Alcoy-Gandia", original.getFechaSalida(), 60, 5f, 2);
+
+		assertThrows(PlazasCanNotBeReducedException.class, () -> viajeDAO.update(conMenosPlazas));
+
+		assertEquals(4, viajeDAO.getById(100).getPlazasOfertadas());
+		assertEquals("Alcoy-Xativa", viajeDAO.getById(100).getRuta());
+		assertTrue(viajeDAO.findAll("Xativa").contains(original));
+		assertTrue(viajeDAO.findAll(EstadoViaje.ABIERTO).contains(original));
+	}
+
+	@Test
+	void updateSustituyeElViajeYReindexa() throws Exception {
+		Viaje original = viajeDAO.getById(100);
+		Viaje cambiado = new Viaje(100, "propietario", "Alcoy-Gandia", original.getFechaSalida(), 60, 5f, 6, EstadoViaje.CANCELADO);
+
+		viajeDAO.update(cambiado);
+
+		Viaje guardado = viajeDAO.getById(100);
+		assertNotSame(original, guardado);
+		assertEquals("Alcoy-Xativa", original.getRuta());
+		assertEquals(6, guardado.getPlazasOfertadas());
+		assertTrue(viajeDAO.findAll("Gandia").contains(guardado));
+		assertTrue(viajeDAO.findAll("Xativa").isEmpty());
+		assertTrue(viajeDAO.findAll(EstadoViaje.CANCELADO).contains(guardado));
+		assertFalse(viajeDAO.findAll(EstadoViaje.ABIERTO).contains(guardado));
+	}
+}
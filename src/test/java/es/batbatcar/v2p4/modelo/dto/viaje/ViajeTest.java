@@ -0,0 +1,42 @@
+package es.batbatcar.v2p4.modelo.dto.viaje;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+import org.junit.jupiter.api.Test;
+
+import es.batbatcar.v2p4.exceptions.ViajeNotCancelableException;
+
+class ViajeTest {
+
+	private static final LocalDateTime AHORA = LocalDateTime.of(2030, 5, 1, 12, 0);
+	private static final Clock RELOJ = Clock.fixed(AHORA.toInstant(ZoneOffset.UTC), ZoneOffset.UTC);
+
+	@Test
+	void noSeCancelaUnViajeAbiertoQueYaHaSalido() {
+		Viaje viaje = new Viaje(1, "propietario", "Alcoy-Valencia", AHORA.minusMinutes(1), 60);
+
+		assertThrows(ViajeNotCancelableException.class, () -> viaje.cancelar(RELOJ));
+		assertEquals(EstadoViaje.ABIERTO, viaje.getEstado());
+	}
+
+	@Test
+	void seCancelaUnViajeAbiertoQueNoHaSalido() throws Exception {
+		Viaje viaje = new Viaje(1, "propietario", "Alcoy-Valencia", AHORA.plusMinutes(1), 60);
+
+		viaje.cancelar(RELOJ);
+
+		assertEquals(EstadoViaje.CANCELADO, viaje.getEstado());
+	}
+
+	@Test
+	void noSeCancelaUnViajeCerrado() {
+		Viaje viaje = new Viaje(1, "propietario", "Alcoy-Valencia", AHORA.plusMinutes(1), 60, 5f, 4, EstadoViaje.CERRADO);
+
+		assertThrows(ViajeNotCancelableException.class, () -> viaje.cancelar(RELOJ));
+	}
+}
@@ -0,0 +1,179 @@
+package es.batbatcar.v2p4.modelo.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import es.batbatcar.v2p4.modelo.dao.cachedao.CachedViajeDAO;
+import es.batbatcar.v2p4.modelo.dto.viaje.EstadoViaje;
+import es.batbatcar.v2p4.modelo.dto.viaje.Viaje;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * El cierre de los viajes se prueba con un reloj que sólo avanza cuando lo mueve la prueba.
+ * Salvo en la última prueba no se inicia el planificador, y los viajes se cierran llamando a
+ * cerrarSalidos
+ */
+class CicloVidaViajesTest {
+
+	private static final LocalDateTime INICIO = LocalDateTime.of(2030, 5, 1, 12, 0);
+
+	private RelojMovible reloj;
+	private CachedViajeDAO viajeDAO;
+	private VersionesDatos versiones;
+	private CicloVidaViajes cicloVida;
+
+	@BeforeEach
+	void setUp() {
+		reloj = new RelojMovible(INICIO);
+		viajeDAO = mock(CachedViajeDAO.class);
+		when(viajeDAO.cerrar(anyCollection(), any())).thenAnswer(llamada -> ((List<?>) llamada.getArgument(0)).size());
+		versiones = new VersionesDatos();
+		cicloVida = new CicloVidaViajes(viajeDAO, versiones, reloj, new SimpleMeterRegistry(), true, 60000);
+	}
+
+	@AfterEach
+	void tearDown() {
+		cicloVida.detener();
+	}
+
+	@Test
+	void cierraLosViajesSegunSalenPorOrdenDeSalida() {
+		cicloVida.registrar(viaje(1, INICIO.plusMinutes(20)));
+		cicloVida.registrar(viaje(2, INICIO.plusMinutes(10)));
+		String etiquetaAntes = versiones.etiquetaViaje(2);
+
+		assertEquals(0, cicloVida.cerrarSalidos());
+		verify(viajeDAO, never()).cerrar(anyCollection(), any());
+
+		reloj.avanzar(Duration.ofMinutes(15));
+		assertEquals(1, cicloVida.cerrarSalidos());
+		verify(viajeDAO).cerrar(List.of(2), reloj.ahora());
+		assertNotEquals(etiquetaAntes, versiones.etiquetaViaje(2));
+		assertEquals(1, cicloVida.getNumProgramados());
+
+		reloj.avanzar(Duration.ofMinutes(10));
+		assertEquals(1, cicloVida.cerrarSalidos());
+		verify(viajeDAO).cerrar(List.of(1), reloj.ahora());
+		assertEquals(0, cicloVida.getNumProgramados());
+	}
+
+	@Test
+	void unViajeQueCambiaDeFechaSeCierraConLaNueva() {
+		cicloVida.registrar(viaje(1, INICIO.plusMinutes(10)));
+		cicloVida.registrar(viaje(1, INICIO.plusMinutes(30)));
+		assertEquals(1, cicloVida.getNumProgramados());
+
+		reloj.avanzar(Duration.ofMinutes(15));
+		assertEquals(0, cicloVida.cerrarSalidos());
+
+		reloj.avanzar(Duration.ofMinutes(20));
+		assertEquals(1, cicloVida.cerrarSalidos());
+		verify(viajeDAO).cerrar(List.of(1), reloj.ahora());
+		assertEquals(0, cicloVida.cerrarSalidos());
+	}
+
+	@Test
+	void unViajeCanceladoSeQuitaDeLaCola() {
+		Viaje viaje = viaje(1, INICIO.plusMinutes(10));
+		cicloVida.registrar(viaje);
+		cicloVida.registrar(new Viaje(1, "propietario", "Alcoy-Valencia", viaje.getFechaSalida(), 60, 5f, 4, EstadoViaje.CANCELADO));
+		assertEquals(0, cicloVida.getNumProgramados());
+
+		reloj.avanzar(Duration.ofMinutes(15));
+		assertEquals(0, cicloVida.cerrarSalidos());
+		verify(viajeDAO, never()).cerrar(anyCollection(), any());
+	}
+
+	@Test
+	void siFallaElCierreSeVuelvenAProgramar() {
+		cicloVida.registrar(viaje(1, INICIO.plusMinutes(10)));
+		reloj.avanzar(Duration.ofMinutes(15));
+		when(viajeDAO.cerrar(anyCollection(), any())).thenThrow(new IllegalStateException("sin conexión"));
+
+		try {
+			cicloVida.cerrarSalidos();
+		} catch (IllegalStateException e) {
+			// Se propaga para que el planificador reintente
+		}
+		assertEquals(1, cicloVida.getNumProgramados());
+	}
+
+	@Test
+	void elPlanificadorCierraLosViajesCuandoSalen() {
+		when(viajeDAO.findSalidasAbiertos()).thenReturn(Map.of(1, INICIO.plusMinutes(10)));
+		cicloVida.iniciar();
+		esperarProgramados(1);
+
+		// Registrar un viaje que sale antes de la próxima comprobación la adelanta: con el reloj
+		// ya pasadas ambas salidas se cierran los dos en una sola sentencia
+		reloj.avanzar(Duration.ofMinutes(15));
+		cicloVida.registrar(viaje(2, INICIO.plusSeconds(30)));
+
+		verify(viajeDAO, timeout(5000)).cerrar(eq(List.of(2, 1)), any());
+		esperarProgramados(0);
+	}
+
+	private static Viaje viaje(int codViaje, LocalDateTime salida) {
+		return new Viaje(codViaje, "propietario", "Alcoy-Valencia", salida, 60, 5f, 4);
+	}
+
+	private void esperarProgramados(int esperados) {
+		long limite = System.currentTimeMillis() + 5000;
+		while (cicloVida.getNumProgramados() != esperados && System.currentTimeMillis() < limite) {
+			Thread.onSpinWait();
+		}
+		assertEquals(esperados, cicloVida.getNumProgramados());
+	}
+
+	private static class RelojMovible extends Clock {
+		private volatile Instant instante;
+
+		private RelojMovible(LocalDateTime inicio) {
+			this.instante = inicio.toInstant(ZoneOffset.UTC);
+		}
+
+		private void avanzar(Duration duracion) {
+			instante = instante.plus(duracion);
+		}
+
+		private LocalDateTime ahora() {
+			return LocalDateTime.now(this);
+		}
+
+		@Override
+		public ZoneId getZone() {
+			return ZoneOffset.UTC;
+		}
+
+		@Override
+		public Clock withZone(ZoneId zone) {
+			return this;
+		}
+
+		@Override
+		public Instant instant() {
+			return instante;
+		}
+	}
+}
@@ -0,0 +1,154 @@
+package es.batbatcar.v2p4.modelo.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import es.batbatcar.v2p4.exceptions.DatabaseConnectionException;
+import es.batbatcar.v2p4.modelo.dao.cachedao.CachedReservaDAO;
+import es.batbatcar.v2p4.modelo.dao.cachedao.CachedViajeDAO;
+import es.batbatcar.v2p4.modelo.dao.sqldao.SQLCargaMasivaDAO;
+import es.batbatcar.v2p4.modelo.dao.sqldao.SQLGeneradorCodViaje;
+import es.batbatcar.v2p4.modelo.dto.Reserva;
+import es.batbatcar.v2p4.modelo.dto.viaje.EstadoViaje;
+import es.batbatcar.v2p4.modelo.dto.viaje.Viaje;
+import es.batbatcar.v2p4.utils.FormatoFilas;
+
+/**
+ * Las filas se validan antes de llegar a la carga, y las cachés se invalidan aunque la carga falle
+ */
+class ImportacionServiceTest {
+
+	@Mock
+	private SQLCargaMasivaDAO cargaMasivaDAO;
+	@Mock
+	private SQLGeneradorCodViaje generadorCodViaje;
+	@Mock
+	private CachedViajeDAO cachedViajeDAO;
+	@Mock
+	private CachedReservaDAO cachedReservaDAO;
+	@Mock
+	private VersionesDatos versiones;
+	@Mock
+	private ReservasDiferidas reservasDiferidas;
+	@Mock
+	private CicloVidaViajes cicloVidaViajes;
+	@Mock
+	private SQLCargaMasivaDAO.Carga<Viaje> cargaViajes;
+	@Mock
+	private SQLCargaMasivaDAO.Carga<Reserva> cargaReservas;
+
+	@InjectMocks
+	private ImportacionService importacionService;
+
+	@BeforeEach
+	void setUp() {
+		MockitoAnnotations.openMocks(this);
+		ReflectionTestUtils.setField(importacionService, "maxRechazos", 10);
+		when(cargaMasivaDAO.cargarViajes(any())).thenReturn(cargaViajes);
+		when(cargaMasivaDAO.cargarReservas(any())).thenReturn(cargaReservas);
+	}
+
+	@Test
+	void seImportanLosViajesValidosYSeRechazanLosDemas() throws IOException {
+		when(generadorCodViaje.siguiente()).thenReturn(42);
+		String csv = "codViaje,propietario,ruta,fechaSalida,duracion,precio,plazasOfertadas,estadoViaje\n"
+				+ "7,Ana Gil,Alcoy-Valencia,2030-05-01 12:00,60,5.5,4,\n"
+				+ "8,Ana Gil,Alcoy,2030-05-01 12:00,60,5.5,4,\n"
+				+ ",Luis Pla,Alcoy-Gandia,2030-05-02 08:30,45,3,2,CERRADO\n"
+				+ "9,Luis Pla,Alcoy-Gandia,2030-05-02 08:30,45,tres,2,\n";
+
+		InformeImportacion informe = importacionService.importarViajes(entrada(csv), FormatoFilas.CSV);
+
+		ArgumentCaptor<Viaje> viajes = ArgumentCaptor.forClass(Viaje.class);
+		verify(cargaViajes).add(eq(1), viajes.capture());
+		verify(cargaViajes).add(eq(3), viajes.capture());
+		verify(cargaViajes).close();
+		assertEquals(7, viajes.getAllValues().get(0).getCodViaje());
+		// Sin codViaje se usa el generador
+		assertEquals(42, viajes.getAllValues().get(1).getCodViaje());
+		assertEquals(EstadoViaje.CERRADO, viajes.getAllValues().get(1).getEstado());
+
+		assertEquals(4, informe.getFilasLeidas());
+		assertEquals(2, informe.getFilasRechazadas());
+		assertEquals(2, informe.getRechazos().get(0).getFila());
+		assertEquals("La ruta debe cumplir el formato Origen-Destino", informe.getRechazos().get(0).getMotivo());
+		assertEquals(4, informe.getRechazos().get(1).getFila());
+		verify(generadorCodViaje).descartarBloque();
+		verify(cachedViajeDAO).invalidarDestinos();
+		verify(versiones).cambioEnTodo();
+	}
+
+	@Test
+	void lasReservasDiferidasSeEscribenAntesDeImportar() throws IOException {
+		String json = "[{\"codigoReserva\": \"7-1\", \"usuario\": \"Ana Gil\", \"plazasSolicitadas\": 2,"
+				+ " \"fechaRealizacion\": \"2030-04-01 10:00\"},"
+				+ " {\"codigoReserva\": \"siete\", \"usuario\": \"Ana Gil\", \"plazasSolicitadas\": 2},"
+				+ " {\"codigoReserva\": \"7-3\", \"usuario\": \"Ana Gil\"}]";
+
+		InformeImportacion informe = importacionService.importarReservas(entrada(json), FormatoFilas.JSON);
+
+		InOrder orden = inOrder(reservasDiferidas, cargaMasivaDAO, cachedReservaDAO);
+		orden.verify(reservasDiferidas).descartarTodo();
+		orden.verify(cargaMasivaDAO).cargarReservas(informe);
+		orden.verify(cachedReservaDAO).invalidarTodo();
+		ArgumentCaptor<Reserva> reserva = ArgumentCaptor.forClass(Reserva.class);
+		verify(cargaReservas).add(eq(1), reserva.capture());
+		assertEquals(7, reserva.getValue().getCodigoViaje());
+		assertEquals(2, reserva.getValue().getPlazasSolicitadas());
+
+		assertEquals(3, informe.getFilasLeidas());
+		assertEquals(2, informe.getFilasRechazadas());
+		assertEquals("El código de reserva debe tener el formato codViaje-numero", informe.getRechazos().get(0).getMotivo());
+		assertEquals("Falta el campo plazasSolicitadas", informe.getRechazos().get(1).getMotivo());
+	}
+
+	@Test
+	void siLaCargaFallaSeInvalidanIgualmenteLasCaches() {
+		doThrow(new DatabaseConnectionException("sin conexión")).when(cargaReservas).add(anyInt(), any());
+		String csv = "codigoReserva,usuario,plazasSolicitadas\n7-1,Ana Gil,2\n7-2,Ana Gil,1\n";
+
+		assertThrows(DatabaseConnectionException.class,
+				() -> importacionService.importarReservas(entrada(csv), FormatoFilas.CSV));
+
+		verify(cargaReservas).add(eq(1), any());
+		verify(cargaReservas, never()).add(eq(2), any());
+		verify(cargaReservas).close();
+		verify(cachedReservaDAO).invalidarTodo();
+		verify(versiones).cambioEnTodo();
+	}
+
+	@Test
+	void unaEntradaMalFormadaSeDevuelveComoIOException() {
+		assertThrows(IOException.class,
+				() -> importacionService.importarViajes(entrada("{\"codViaje\": "), FormatoFilas.JSON));
+		verify(cargaViajes).close();
+		verify(cicloVidaViajes).recargar();
+	}
+
+	private static InputStream entrada(String contenido) {
+		return new ByteArrayInputStream(contenido.getBytes(StandardCharsets.UTF_8));
+	}
+}
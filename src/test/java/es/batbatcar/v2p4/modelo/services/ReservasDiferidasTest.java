@@ -0,0 +1,253 @@
+package es.batbatcar.v2p4.modelo.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import es.batbatcar.v2p4.exceptions.DatabaseConnectionException;
+import es.batbatcar.v2p4.exceptions.LoteRechazadoException;
+import es.batbatcar.v2p4.exceptions.ReservaNoValidaException;
+import es.batbatcar.v2p4.modelo.dao.cachedao.CachedReservaDAO;
+import es.batbatcar.v2p4.modelo.dao.sqldao.SQLReservaDAO;
+import es.batbatcar.v2p4.modelo.dto.Reserva;
+import es.batbatcar.v2p4.modelo.dto.viaje.Viaje;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * El diario de la escritura diferida: qué se reenvía al arrancar y qué se escribe al vaciar.
+ * Sólo se usan los métodos públicos; el canal del diario se pasa al construir
+ */
+class ReservasDiferidasTest {
+
+	private Path rutaDiario;
+	private ReservasDiferidas diferidas;
+	private Viaje viaje;
+	private volatile boolean fallarForce;
+	private final List<FileChannel> canalesAbiertos = new ArrayList<>();
+
+	@BeforeEach
+	void setUp() throws IOException {
+		rutaDiario = Files.createTempFile("reservas-pendientes", ".log");
+		viaje = new Viaje(100, "propietario", "Alcoy-Valencia", LocalDateTime.now().plusDays(1), 60, 5f, 4);
+	}
+
+	@AfterEach
+	void tearDown() throws IOException {
+		try {
+			diferidas.detener();
+		} catch (DatabaseConnectionException e) {
+			// El último vaciado tampoco llega a la base de datos
+		}
+		for (FileChannel canal : canalesAbiertos) {
+			canal.close();
+		}
+		Files.deleteIfExists(rutaDiario);
+	}
+
+	@Test
+	void unaReservaQueNoLlegaAlDiscoSeQuitaDelDiario() throws Exception {
+		Files.delete(rutaDiario);
+		diferidas = crear(sinConexion(), this::abrirDiarioQueFalla);
+
+		Reserva confirmada = diferidas.reservar(viaje, "usuario1", 1);
+		List<String> antes = Files.readAllLines(rutaDiario);
+
+		fallarForce = true;
+		assertThrows(ReservaNoValidaException.class, () -> diferidas.reservar(viaje, "usuario2", 1));
+
+		assertEquals(antes, Files.readAllLines(rutaDiario));
+		assertEquals(1, diferidas.getNumPendientes());
+		// Al arrancar de nuevo sólo se reenvía la reserva confirmada
+		assertEquals(List.of(confirmada.getCodigoReserva()), reenviadasAlArrancar());
+	}
+
+	@Test
+	void alArrancarNoSeReenvianLasReservasAnuladas() throws Exception {
+		LocalDateTime fecha = LocalDateTime.of(2030, 5, 1, 12, 0);
+		Files.write(rutaDiario, List.of(
+				linea(1, "usuario1", fecha),
+				linea(2, "usuario2", fecha),
+				"X\t" + linea(2, "usuario2", fecha),
+				// Después de un reinicio el código anulado se ha vuelto a usar
+				linea(2, "usuario3", fecha)), StandardCharsets.UTF_8);
+		CachedReservaDAO cachedReservaDAO = aceptaTodas();
+
+		diferidas = crear(cachedReservaDAO);
+		assertEquals(2, diferidas.getNumPendientes());
+		diferidas.vaciar();
+
+		List<Reserva> escritas = escritas(cachedReservaDAO);
+		assertEquals(2, escritas.size());
+		assertEquals("usuario1", escritas.get(0).getUsuario());
+		assertEquals("usuario3", escritas.get(1).getUsuario());
+		assertEquals(0, diferidas.getNumPendientes());
+	}
+
+	@Test
+	void unaReservaQueLaBaseDeDatosNoAdmiteNoBloqueaLasDemas() throws Exception {
+		LocalDateTime fecha = LocalDateTime.of(2030, 5, 1, 12, 0);
+		Files.write(rutaDiario, List.of(
+				linea(1, "usuario1", fecha),
+				linea(2, "u".repeat(101), fecha),
+				linea(3, "usuario3", fecha)), StandardCharsets.UTF_8);
+		CachedReservaDAO cachedReservaDAO = mock(CachedReservaDAO.class);
+		when(cachedReservaDAO.addAll(anyList())).thenAnswer(llamada -> {
+			List<Reserva> lote = llamada.getArgument(0);
+			for (Reserva reserva : lote) {
+				if (reserva.getUsuario().length() > 100) {
+					throw new LoteRechazadoException("Data too long for column 'usuario'");
+				}
+			}
+			return lote.size();
+		});
+
+		diferidas = crear(cachedReservaDAO);
+		diferidas.vaciar();
+
+		assertEquals(0, diferidas.getNumPendientes());
+		assertEquals(1, diferidas.getRechazadas().size());
+		assertEquals("100-2", diferidas.getRechazadas().get(0).getCodigoReserva());
+		verify(cachedReservaDAO).addAll(List.of(new Reserva("100-1")));
+		verify(cachedReservaDAO).addAll(List.of(new Reserva("100-3")));
+		// Todo está escrito o apartado: el diario se ha vaciado y no se reenviará nada al arrancar
+		assertEquals(0, Files.size(rutaDiario));
+	}
+
+	@Test
+	void descartarUnViajeSoloEscribeSusReservas() throws Exception {
+		LocalDateTime fecha = LocalDateTime.of(2030, 5, 1, 12, 0);
+		Files.write(rutaDiario, List.of(
+				linea(1, "usuario1", fecha),
+				"200\t1\t1\t" + fecha + "\tusuario2"), StandardCharsets.UTF_8);
+		// Las reservas del viaje 200 no se pueden escribir: no deben impedir escribir las del 100
+		CachedReservaDAO cachedReservaDAO = mock(CachedReservaDAO.class);
+		when(cachedReservaDAO.addAll(anyList())).thenAnswer(llamada -> {
+			List<Reserva> lote = llamada.getArgument(0);
+			for (Reserva reserva : lote) {
+				if (reserva.getCodigoViaje() == 200) {
+					throw new DatabaseConnectionException("sin conexión");
+				}
+			}
+			return lote.size();
+		});
+
+		diferidas = crear(cachedReservaDAO);
+		diferidas.descartar(100);
+
+		assertEquals(1, diferidas.getNumPendientes());
+		verify(cachedReservaDAO, atLeastOnce()).addAll(List.of(new Reserva("100-1")));
+		assertThrows(DatabaseConnectionException.class, () -> diferidas.descartar(200));
+		assertEquals(1, diferidas.getNumPendientes());
+	}
+
+	private ReservasDiferidas crear(CachedReservaDAO cachedReservaDAO) throws IOException {
+		return crear(cachedReservaDAO, ruta -> FileChannel.open(ruta, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.APPEND));
+	}
+
+	private ReservasDiferidas crear(CachedReservaDAO cachedReservaDAO, ReservasDiferidas.AbridorDiario abridorDiario)
+			throws IOException {
+		SQLReservaDAO sqlReservaDAO = mock(SQLReservaDAO.class);
+		when(sqlReservaDAO.findAllByTravel(any(Viaje.class))).thenReturn(new ArrayList<>());
+		ReservasDiferidas diferidas = new ReservasDiferidas(sqlReservaDAO, cachedReservaDAO, new VersionesDatos(),
+				Clock.systemDefaultZone(), new SimpleMeterRegistry(), true, 60000, 200, 10000, rutaDiario.toString(),
+				abridorDiario);
+		diferidas.iniciar();
+		return diferidas;
+	}
+
+	/**
+	 * Para y vuelve a arrancar con una base de datos que lo acepta todo
+	 * @return códigos de las reservas del diario que se escriben tras arrancar
+	 */
+	private List<String> reenviadasAlArrancar() throws IOException {
+		diferidas.detener();
+		CachedReservaDAO cachedReservaDAO = aceptaTodas();
+		diferidas = crear(cachedReservaDAO);
+		diferidas.vaciar();
+		List<String> codigos = new ArrayList<>();
+		for (Reserva reserva : escritas(cachedReservaDAO)) {
+			codigos.add(reserva.getCodigoReserva());
+		}
+		return codigos;
+	}
+
+	/**
+	 * Canal del diario que escribe en el fichero, pero cuyo force() falla si fallarForce
+	 */
+	private FileChannel abrirDiarioQueFalla(Path ruta) throws IOException {
+		FileChannel canal = FileChannel.open(ruta, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+		canalesAbiertos.add(canal);
+		FileChannel diario = mock(FileChannel.class, withSettings().useConstructor());
+		when(diario.size()).thenAnswer(llamada -> canal.size());
+		when(diario.write(any(ByteBuffer.class))).thenAnswer(llamada -> canal.write(llamada.getArgument(0, ByteBuffer.class)));
+		when(diario.truncate(anyLong())).thenAnswer(llamada -> {
+			canal.truncate(llamada.getArgument(0));
+			return diario;
+		});
+		doAnswer(llamada -> {
+			if (fallarForce) {
+				throw new IOException("disco lleno");
+			}
+			canal.force(llamada.getArgument(0));
+			return null;
+		}).when(diario).force(anyBoolean());
+		return diario;
+	}
+
+	private static CachedReservaDAO sinConexion() {
+		CachedReservaDAO cachedReservaDAO = mock(CachedReservaDAO.class);
+		when(cachedReservaDAO.addAll(anyList())).thenThrow(new DatabaseConnectionException("sin conexión"));
+		return cachedReservaDAO;
+	}
+
+	private static CachedReservaDAO aceptaTodas() {
+		CachedReservaDAO cachedReservaDAO = mock(CachedReservaDAO.class);
+		when(cachedReservaDAO.addAll(anyList())).thenAnswer(llamada -> llamada.getArgument(0, List.class).size());
+		return cachedReservaDAO;
+	}
+
+	/**
+	 * Reservas que se han pasado a addAll, en orden
+	 */
+	@SuppressWarnings("unchecked")
+	private static List<Reserva> escritas(CachedReservaDAO cachedReservaDAO) {
+		ArgumentCaptor<List<Reserva>> lotes = ArgumentCaptor.forClass(List.class);
+		verify(cachedReservaDAO, atLeastOnce()).addAll(lotes.capture());
+		List<Reserva> escritas = new ArrayList<>();
+		for (List<Reserva> lote : lotes.getAllValues()) {
+			escritas.addAll(lote);
+		}
+		return escritas;
+	}
+
+	private static String linea(int numReserva, String usuario, LocalDateTime fecha) {
+		return "100\t" + numReserva + "\t1\t" + fecha + "\t" + usuario;
+	}
+}
@@ -0,0 +1,72 @@
+package es.batbatcar.v2p4.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class IndiceCiudadesTest {
+
+	private IndiceCiudades indice;
+
+	@BeforeEach
+	void setUp() {
+		indice = new IndiceCiudades();
+		indice.indexar(1, "Castellón");
+		indice.indexar(2, "Castello");
+		indice.indexar(3, "Alicante");
+		indice.indexar(4, "Alcoy");
+		indice.indexar(5, "Valencia");
+	}
+
+	@Test
+	void seEncuentraPorPrefijoSinDistinguirMayusculasNiAcentos() {
+		assertEquals(Set.of(1, 2), indice.findCodigos("CASTELLÓ"));
+		assertEquals(Set.of(1, 2), indice.findCodigos("castell"));
+		assertEquals(Set.of(3, 4), indice.findCodigos("al"));
+		assertTrue(indice.findCodigos("madrid").isEmpty());
+	}
+
+	@Test
+	void seEncuentraPorLosAlias() {
+		assertEquals(Set.of(3), indice.findCodigos("Alacant"));
+		assertEquals(Set.of(4), indice.findCodigos("alcoi"));
+		// Las formas son las que están escritas en los viajes, no el alias buscado
+		assertEquals(Set.of("Alicante"), indice.findFormas("alac"));
+		assertEquals(Set.of("Castellón", "Castello"), indice.findFormas("castelló"));
+	}
+
+	@Test
+	void sugierePrimeroLasCiudadesConMasViajes() {
+		indice.indexar(6, "Alcoi");
+
+		assertEquals(List.of("Alcoy", "Alicante"), indice.sugerir("al", 10));
+		assertEquals(List.of("Alcoy"), indice.sugerir("al", 1));
+		// Castellón y Castello son la misma ciudad: se sugiere con la primera forma indexada
+		assertEquals(List.of("Castellón"), indice.sugerir("cas", 10));
+	}
+
+	@Test
+	void alReindexarUnCodigoSeQuitaDeSuCiudadAnterior() {
+		indice.indexar(5, "Valéncia");
+		assertEquals(Set.of("Valéncia"), indice.findFormas("valencia"));
+
+		indice.indexar(5, "Xàtiva");
+		assertTrue(indice.findCodigos("valencia").isEmpty());
+		assertEquals(Set.of(5), indice.findCodigos("jativa"));
+	}
+
+	@Test
+	void alQuitarElUltimoCodigoDesapareceLaCiudad() {
+		indice.quitar(1);
+		assertEquals(Set.of("Castello"), indice.findFormas("castellon"));
+
+		indice.quitar(2);
+		assertTrue(indice.findFormas("castellon").isEmpty());
+		assertTrue(indice.sugerir("cas", 10).isEmpty());
+	}
+}
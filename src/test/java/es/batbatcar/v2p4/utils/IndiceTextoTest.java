@@ -0,0 +1,78 @@
+package es.batbatcar.v2p4.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Set;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class IndiceTextoTest {
+
+	private IndiceTexto<String> indice;
+
+	@BeforeEach
+	void setUp() {
+		indice = new IndiceTexto<>();
+		indice.indexar("1-1", 1, "José Pérez", "1-1");
+		indice.indexar("1-2", 1, "Ana Gil", "1-2");
+		indice.indexar("2-1", 2, "Anabel Pérez", "2-1");
+	}
+
+	@Test
+	void buscaSinDistinguirMayusculasNiAcentos() {
+		assertEquals(Set.of("1-1", "2-1"), indice.buscar("PEREZ", 10));
+		assertEquals(Set.of("1-1"), indice.buscar("jose", 10));
+		assertEquals(Set.of("1-2", "2-1"), indice.buscar("  ana  ", 10));
+		assertTrue(indice.buscar("Pedro", 10).isEmpty());
+	}
+
+	@Test
+	void buscaEnLosTextosDeUnGrupo() {
+		assertEquals(Set.of("1-1"), indice.buscar(1, "pérez"));
+		assertEquals(Set.of("2-1"), indice.buscar(2, "2-1"));
+		assertTrue(indice.buscar(3, "pérez").isEmpty());
+	}
+
+	@Test
+	void losTextosCortosSoloSeBuscanDentroDeUnGrupo() {
+		assertEquals(Set.of("1-2"), indice.buscar(1, "gi"));
+		assertEquals(Set.of("1-1", "1-2"), indice.buscar(1, ""));
+		assertTrue(indice.buscar("gi", 10).isEmpty());
+		assertTrue(indice.buscar("", 10).isEmpty());
+	}
+
+	@Test
+	void dejaDeBuscarAlLlegarAlMaximo() {
+		for (int i = 3; i <= 50; i++) {
+			indice.indexar("1-" + i, 1, "Usuario Pérez", "1-" + i);
+		}
+
+		Set<String> encontrados = indice.buscar("perez", 5);
+		assertEquals(5, encontrados.size());
+		for (String clave : encontrados) {
+			assertTrue(indice.buscar(null, "perez").contains(clave));
+		}
+		assertEquals(50, indice.buscar(null, "perez").size());
+	}
+
+	@Test
+	void alReindexarSeOlvidanLosTextosAnteriores() {
+		indice.indexar("1-2", 1, "Luis Pla", "1-2");
+
+		assertTrue(indice.buscar("ana gil", 10).isEmpty());
+		assertEquals(Set.of("1-2"), indice.buscar("pla", 10));
+		assertEquals(3, indice.size());
+	}
+
+	@Test
+	void quitarUnGrupoQuitaSusElementos() {
+		indice.quitarGrupo(1);
+
+		assertEquals(Set.of("2-1"), indice.buscar("perez", 10));
+		assertTrue(indice.buscar(1, "").isEmpty());
+		indice.quitar("2-1");
+		assertEquals(0, indice.size());
+	}
+}
@@ -0,0 +1,98 @@
+package es.batbatcar.v2p4.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+class LectorFilasTest {
+
+	@Test
+	void csvConComillasYLineasEnBlanco() throws IOException {
+		String csv = "codigoReserva, usuario ,plazasSolicitadas\n"
+				+ "1-1,\"Ana Gil, hija\",2\n"
+				+ "\n"
+				+ "1-2,\"Luis \"\"Lucho\"\" Pla\", 1 \n";
+
+		try (LectorFilas lector = abrir(csv, FormatoFilas.CSV)) {
+			Map<String, String> primera = lector.next();
+			assertEquals(1, lector.getNumFila());
+			assertEquals(Map.of("codigoReserva", "1-1", "usuario", "Ana Gil, hija", "plazasSolicitadas", "2"), primera);
+
+			Map<String, String> segunda = lector.next();
+			assertEquals(2, lector.getNumFila());
+			assertEquals("Luis \"Lucho\" Pla", segunda.get("usuario"));
+			assertEquals("1", segunda.get("plazasSolicitadas"));
+			assertFalse(lector.hasNext());
+		}
+	}
+
+	@Test
+	void csvConMenosCamposQueLaCabecera() throws IOException {
+		try (LectorFilas lector = abrir("codigoReserva,usuario,fechaRealizacion\n1-1,Ana Gil\n", FormatoFilas.CSV)) {
+			assertEquals(Map.of("codigoReserva", "1-1", "usuario", "Ana Gil"), lector.next());
+		}
+	}
+
+	@Test
+	void csvVacioNoTieneFilas() throws IOException {
+		try (LectorFilas lector = abrir("", FormatoFilas.CSV)) {
+			assertFalse(lector.hasNext());
+		}
+		try (LectorFilas lector = abrir("codigoReserva,usuario\n", FormatoFilas.CSV)) {
+			assertFalse(lector.hasNext());
+		}
+	}
+
+	@Test
+	void jsonEnArray() throws IOException {
+		String json = "[{\"codViaje\": 7, \"ruta\": \"Alcoy-Valencia\", \"precio\": 5.5, \"estadoViaje\": null,"
+				+ " \"extra\": {\"a\": [1, 2]}}, {\"codViaje\": 8}]";
+
+		try (LectorFilas lector = abrir(json, FormatoFilas.JSON)) {
+			List<Map<String, String>> filas = leerTodas(lector);
+			assertEquals(2, filas.size());
+			// Los valores nulos y los anidados no se devuelven
+			assertEquals(Map.of("codViaje", "7", "ruta", "Alcoy-Valencia", "precio", "5.5"), filas.get(0));
+			assertEquals(Map.of("codViaje", "8"), filas.get(1));
+			assertEquals(2, lector.getNumFila());
+		}
+	}
+
+	@Test
+	void jsonUnObjetoPorLinea() throws IOException {
+		String json = "{\"codigoReserva\": \"1-1\"}\n{\"codigoReserva\": \"1-2\"}\n";
+
+		try (LectorFilas lector = abrir(json, FormatoFilas.JSON)) {
+			List<Map<String, String>> filas = leerTodas(lector);
+			assertEquals(List.of(Map.of("codigoReserva", "1-1"), Map.of("codigoReserva", "1-2")), filas);
+		}
+	}
+
+	@Test
+	void jsonQueNoEsUnObjetoNoSePuedeLeer() throws IOException {
+		try (LectorFilas lector = abrir("[1, 2]", FormatoFilas.JSON)) {
+			UncheckedIOException e = assertThrows(UncheckedIOException.class, lector::hasNext);
+			assertEquals(IOException.class, e.getCause().getClass());
+		}
+	}
+
+	private static LectorFilas abrir(String contenido, FormatoFilas formato) throws IOException {
+		return LectorFilas.abrir(new ByteArrayInputStream(contenido.getBytes(StandardCharsets.UTF_8)), formato);
+	}
+
+	private static List<Map<String, String>> leerTodas(LectorFilas lector) {
+		List<Map<String, String>> filas = new ArrayList<>();
+		lector.forEachRemaining(filas::add);
+		return filas;
+	}
+}